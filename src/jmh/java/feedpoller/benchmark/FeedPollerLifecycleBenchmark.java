@@ -0,0 +1,63 @@
+package feedpoller.benchmark;
+
+import feedpoller.FeedPoller;
+import feedpoller.domain.EndpointConfig;
+import feedpoller.domain.PollingResult;
+import feedpoller.handler.NewFeedHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds, starts and shuts down a poller before any endpoint is due.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmark.properties")
+public class FeedPollerLifecycleBenchmark {
+    @Param({"10", "10000"})
+    public int endpoints;
+
+    private List<EndpointConfig> endpointConfigs;
+
+    @Setup
+    public void setUp() {
+        endpointConfigs = new ArrayList<>();
+        for (int i = 0; i < endpoints; i++) {
+            endpointConfigs.add(new EndpointConfig("feed-" + i, "http://localhost/feed/" + i, 60000L));
+        }
+    }
+
+    @Benchmark
+    public List<PollingResult> startAndShutdown() {
+        FeedPoller feedPoller = new FeedPoller.FeedPollerBuilder()
+                .withFetchEngine(new InMemoryFetchEngine(0))
+                .withEndpointConfigs(endpointConfigs)
+                .withNewFeedHandler(new NewFeedHandler() {
+                    @Override
+                    public String receiveNewFeed(String page) {
+                        return page;
+                    }
+                })
+                .withInitialDelay(60000L)
+                .build();
+
+        feedPoller.start();
+        return feedPoller.shutdown();
+    }
+}
@@ -0,0 +1,36 @@
+package feedpoller.benchmark;
+
+import feedpoller.fetch.FetchEngine;
+import feedpoller.fetch.FetchRequest;
+import feedpoller.fetch.FetchResponse;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Answers every request with the same page, so a benchmark measures the poller rather than the network.
+ */
+class InMemoryFetchEngine implements FetchEngine {
+    private final byte[] page;
+
+    InMemoryFetchEngine(int pageSize) {
+        this.page = page(pageSize);
+    }
+
+    static byte[] page(int size) {
+        byte[] page = new byte[size];
+        Arrays.fill(page, (byte) 'a');
+        return page;
+    }
+
+    @Override
+    public CompletableFuture<FetchResponse> fetch(FetchRequest request) {
+        return CompletableFuture.completedFuture(new FetchResponse(200, new ByteArrayInputStream(page), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,64 @@
+package feedpoller.benchmark;
+
+import feedpoller.fetch.FetchResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a page into a String, as a NewFeedHandler gets it, against streaming through it, as a StreamingFeedHandler can.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmark.properties")
+public class PageMaterializationBenchmark {
+    @Param({"1024", "65536", "1048576"})
+    public int pageSize;
+
+    private byte[] page;
+    private final byte[] buffer = new byte[8192];
+
+    @Setup
+    public void setUp() {
+        page = InMemoryFetchEngine.page(pageSize);
+    }
+
+    private FetchResponse response() {
+        return new FetchResponse(200, new ByteArrayInputStream(page), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String readBody() throws IOException {
+        return response().readBody();
+    }
+
+    @Benchmark
+    public long streamBody() throws IOException {
+        long total = 0;
+        try (FetchResponse response = response()) {
+            InputStream body = response.getBody();
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                total += read;
+            }
+        }
+        return total;
+    }
+}
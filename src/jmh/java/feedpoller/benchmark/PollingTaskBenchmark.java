@@ -0,0 +1,55 @@
+package feedpoller.benchmark;
+
+import feedpoller.PollingTask;
+import feedpoller.handler.DefaultPollingExceptionHandler;
+import feedpoller.handler.NewFeedHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.ws.rs.core.MediaType;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls of one endpoint whose pages come from memory, so the cost is the task itself: building the request, decoding and handing over the page.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmark.properties")
+public class PollingTaskBenchmark {
+    @Param({"1024", "65536"})
+    public int pageSize;
+
+    private PollingTask task;
+
+    @Setup
+    public void setUp() {
+        NewFeedHandler handler = new NewFeedHandler() {
+            @Override
+            public String receiveNewFeed(String page) {
+                // stays on the same page, so every run polls the same uri
+                return "http://localhost/feed";
+            }
+        };
+
+        task = new PollingTask(new InMemoryFetchEngine(pageSize), handler, "benchmark", "http://localhost/feed", MediaType.TEXT_PLAIN,
+                new DefaultPollingExceptionHandler());
+    }
+
+    @Benchmark
+    public String run() {
+        task.run();
+        return task.getNextUri();
+    }
+}
@@ -0,0 +1,47 @@
+package feedpoller.benchmark;
+
+import feedpoller.scheduler.TimingWheelScheduler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules every endpoint and waits until each has run once. Polls do nothing, so the time is spent in the wheel and the worker pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmark.properties")
+public class SchedulerBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int endpoints;
+
+    @Benchmark
+    public void scheduleAndRunOnce() throws InterruptedException {
+        TimingWheelScheduler scheduler = new TimingWheelScheduler(Executors.newFixedThreadPool(10), 1L);
+        CountDownLatch ran = new CountDownLatch(endpoints);
+
+        try {
+            for (int i = 0; i < endpoints; i++) {
+                scheduler.scheduleAtFixedRate(ran::countDown, 0, 1, TimeUnit.HOURS);
+            }
+            ran.await();
+        } finally {
+            scheduler.shutdownNow();
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -1,100 +1,668 @@
 package feedpoller;
 
 import com.sun.jersey.api.client.Client;
+import feedpoller.checkpoint.CheckpointStore;
 import feedpoller.domain.EndpointConfig;
+import feedpoller.domain.EndpointMode;
 import feedpoller.domain.PollingResult;
+import feedpoller.fetch.CoalescingFetchEngine;
+import feedpoller.fetch.FetchEngine;
+import feedpoller.fetch.HostLimitedFetchEngine;
+import feedpoller.fetch.HostLimits;
+import feedpoller.fetch.JerseyFetchEngine;
+import feedpoller.handler.BatchFeedHandler;
 import feedpoller.handler.DefaultPollingExceptionHandler;
 import feedpoller.handler.NewFeedHandler;
+import feedpoller.handler.NewFeedHandlerAdapter;
+import feedpoller.handler.NextUriPredictor;
 import feedpoller.handler.PollingExceptionHandler;
+import feedpoller.handler.StreamingFeedHandler;
+import feedpoller.metrics.EndpointMetrics;
+import feedpoller.metrics.MetricsRegistry;
+import feedpoller.scheduler.AdaptiveInterval;
+import feedpoller.scheduler.CircuitBreaker;
+import feedpoller.scheduler.ControlTask;
+import feedpoller.scheduler.PhaseSpreading;
+import feedpoller.scheduler.ScheduledPoll;
+import feedpoller.scheduler.TimingWheelScheduler;
+import feedpoller.shard.CoordinationStore;
+import feedpoller.trigger.TriggerListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 public class FeedPoller {
     private static final Logger LOG = LoggerFactory.getLogger(FeedPoller.class);
 
     private Client client;
+    private FetchEngine fetchEngine;
     private List<EndpointConfig> endpointConfigs;
     private NewFeedHandler newFeedHandler;
+    private StreamingFeedHandler streamingFeedHandler;
+    private BatchFeedHandler batchFeedHandler;
     private long initialDelay;
     private long shutdownTimeout;
     private PollingExceptionHandler pollingExceptionHandler;
     private String acceptType;
+    private int workerPoolSize;
+    private long tickDuration;
+    private boolean virtualThreads;
+    private boolean conditionalGet;
+    private boolean compression;
+    private double intervalBackoffFactor;
+    private NextUriPredictor nextUriPredictor;
+    private int handlerPoolSize;
+    private int handleQueueCapacity;
+    private int maxBatchSize;
+    private long maxBatchDelay;
+    private CheckpointStore checkpointStore;
+    private String jmxName;
+    private HostLimits hostLimits;
+    private Map<String, HostLimits> hostLimitsByAuthority;
+    private boolean phaseSpreading;
+    private double jitter;
+    private int circuitFailureThreshold;
+    private long circuitBaseBackoff;
+    private long circuitMaxBackoff;
+    private boolean hostCircuitBreakers;
+    private boolean requestCoalescing;
+    private long coalescedResponseTtl;
+    private boolean contentDigest;
+    private CoordinationStore coordinationStore;
+    private String nodeId;
+    private long leaseTtl;
+    private int maxConcurrentPolls;
+    private long triggerDebounce;
+    private InetSocketAddress triggerAddress;
 
-    private List<PollingTask> tasks;
-    private ScheduledExecutorService service;
+    // guarded by this, in the order endpoints were added
+    private Map<String, PollingTask> tasks;
+    private Map<String, ScheduledPoll> scheduledPolls;
+    private Map<String, CircuitBreaker> circuitBreakersByHost;
+    // nanoTime at which the last triggered poll of each endpoint is due
+    private Map<String, Long> triggeredPolls;
+    private boolean running;
+    private ExecutorService workers;
+    // streams skip host slots and coalescing, long-polls skip coalescing, see EndpointMode
+    private FetchEngine streamFetchEngine;
+    private FetchEngine longPollFetchEngine;
+    private ExecutorService streamReaders;
+    private TimingWheelScheduler scheduler;
+    private HandleStage handleStage;
+    private PageBatcher pageBatcher;
+    private MetricsRegistry metrics;
+    private ShardCoordinator shardCoordinator;
+    private TriggerListener triggerListener;
 
     private FeedPoller(FeedPollerBuilder builder) {
         this.client = builder.client;
+        this.fetchEngine = builder.fetchEngine;
         this.endpointConfigs = builder.endpointConfigs;
         this.newFeedHandler = builder.newFeedHandler;
+        this.streamingFeedHandler = builder.newFeedHandler != null ? new NewFeedHandlerAdapter(newFeedHandler) : builder.streamingFeedHandler;
+        this.batchFeedHandler = builder.batchFeedHandler;
         this.pollingExceptionHandler = builder.pollingExceptionHandler;
         this.initialDelay = builder.initialDelay;
         this.shutdownTimeout = builder.shutdownTimeout;
         this.acceptType = builder.accept;
+        this.workerPoolSize = builder.workerPoolSize;
+        this.tickDuration = builder.tickDuration;
+        this.virtualThreads = builder.virtualThreads;
+        this.conditionalGet = builder.conditionalGet;
+        this.compression = builder.compression;
+        this.intervalBackoffFactor = builder.intervalBackoffFactor;
+        this.nextUriPredictor = builder.nextUriPredictor;
+        this.handlerPoolSize = builder.handlerPoolSize;
+        this.handleQueueCapacity = builder.handleQueueCapacity;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.maxBatchDelay = builder.maxBatchDelay;
+        this.checkpointStore = builder.checkpointStore;
+        this.jmxName = builder.jmxName;
+        this.hostLimits = builder.hostLimits;
+        this.hostLimitsByAuthority = builder.hostLimitsByAuthority;
+        this.phaseSpreading = builder.phaseSpreading;
+        this.jitter = builder.jitter;
+        this.circuitFailureThreshold = builder.circuitFailureThreshold;
+        this.circuitBaseBackoff = builder.circuitBaseBackoff;
+        this.circuitMaxBackoff = builder.circuitMaxBackoff;
+        this.hostCircuitBreakers = builder.hostCircuitBreakers;
+        this.requestCoalescing = builder.requestCoalescing;
+        this.coalescedResponseTtl = builder.coalescedResponseTtl;
+        this.contentDigest = builder.contentDigest;
+        this.coordinationStore = builder.coordinationStore;
+        this.nodeId = builder.nodeId;
+        this.leaseTtl = builder.leaseTtl;
+        this.maxConcurrentPolls = builder.maxConcurrentPolls;
+        this.triggerDebounce = builder.triggerDebounce;
+        this.triggerAddress = builder.triggerAddress;
 
-        service = Executors.newScheduledThreadPool(endpointConfigs.size());
-        tasks = new ArrayList<>();
+        workers = createWorkers();
+        streamFetchEngine = fetchEngine;
+        if (hostLimits != null || !hostLimitsByAuthority.isEmpty()) {
+            HostLimitedFetchEngine hostLimited = new HostLimitedFetchEngine(fetchEngine, hostLimits, hostLimitsByAuthority, workers);
+            // a stream would keep its host slot for as long as it is open, but each connect still takes a token
+            streamFetchEngine = hostLimited.paceOnly();
+            fetchEngine = hostLimited;
+        }
+        // a coalesced response is buffered to its end, which a held or open response only reaches late or never
+        longPollFetchEngine = fetchEngine;
+        if (requestCoalescing) {
+            // outermost, so a shared request takes one slot and one token of its host
+            fetchEngine = new CoalescingFetchEngine(fetchEngine, coalescedResponseTtl, workers);
+        }
+        scheduler = new TimingWheelScheduler(workers, tickDuration, TimingWheelScheduler.DEFAULT_TICKS_PER_WHEEL, maxConcurrentPolls);
+        // handlers are usually bound by CPU, so they keep a fixed pool even when fetching runs on virtual threads
+        ExecutorService handlers = Executors.newFixedThreadPool(handlerPoolSize);
+        handleStage = new HandleStage(handlers, handleQueueCapacity);
+        if (batchFeedHandler != null) {
+            pageBatcher = new PageBatcher(batchFeedHandler, maxBatchSize, maxBatchDelay, handlers);
+        }
+        tasks = new LinkedHashMap<>();
+        scheduledPolls = new HashMap<>();
+        circuitBreakersByHost = new HashMap<>();
+        triggeredPolls = new HashMap<>();
+        metrics = new MetricsRegistry();
+        if (coordinationStore != null) {
+            shardCoordinator = new ShardCoordinator(this, endpointConfigs, coordinationStore, nodeId, leaseTtl);
+        }
+    }
+
+    private ExecutorService createWorkers() {
+        if (virtualThreads) {
+            // every poll gets its own virtual thread, so blocking reads park instead of holding a carrier thread
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("feedpoller-poll-", 0).factory());
+        }
+
+        return Executors.newFixedThreadPool(workerPoolSize);
+    }
+
+    private Map<String, String> loadCheckpoints() {
+        if (checkpointStore == null) {
+            return Collections.emptyMap();
+        }
+
+        try {
+            return checkpointStore.load();
+        } catch (IOException e) {
+            throw new Error("Checkpoints are not readable", e);
+        }
+    }
+
+    public synchronized void start() {
+        if (shardCoordinator != null) {
+            // endpoints are added once their leases are taken, the first run waits until start returns
+            scheduler.scheduleAtFixedRate(shardCoordinator, 0L, shardCoordinator.getPeriod(), TimeUnit.MILLISECONDS);
+        } else {
+            Map<String, String> checkpoints = loadCheckpoints();
+
+            for (EndpointConfig endpointConfig : endpointConfigs) {
+                PollingTask task = createTask(endpointConfig, checkpoints);
+                schedule(task, initialDelay + phaseOf(task, 0L), endpointConfig.getPeriodInMilliseconds());
+            }
+        }
+
+        if (pageBatcher != null) {
+            // checks a few times per delay, so no page waits much longer than the delay
+            long period = Math.max(tickDuration, maxBatchDelay / 4);
+            scheduler.scheduleAtFixedRate((ControlTask) pageBatcher::flushIfDue, period, period, TimeUnit.MILLISECONDS);
+        }
+
+        if (jmxName != null) {
+            metrics.registerMBeans(jmxName);
+        }
+
+        running = true;
+
+        if (triggerAddress != null) {
+            startTriggerListener();
+        }
+    }
+
+    private void startTriggerListener() {
+        try {
+            triggerListener = new TriggerListener(triggerAddress, this::triggerEndpoint);
+        } catch (IOException e) {
+            throw new Error("Trigger listener is not able to listen on " + triggerAddress, e);
+        }
+        triggerListener.start();
+    }
+
+    private PollingTask createTask(EndpointConfig endpointConfig, Map<String, String> checkpoints) {
+        String start = checkpoints.getOrDefault(endpointConfig.getKey(), endpointConfig.getStart());
+        if (!start.equals(endpointConfig.getStart())) {
+            LOG.info("Poller [{}] resumes from its checkpoint {}.", endpointConfig.getKey(), start);
+        }
+
+        EndpointMetrics endpointMetrics = metrics.forEndpoint(endpointConfig.getKey(), endpointConfig.getPriority());
+        PollingTask task = new PollingTask(fetchEngine, streamingFeedHandler, endpointConfig.getKey(), start, acceptType, pollingExceptionHandler, endpointMetrics);
+        task.setFetchExecutor(workers);
+        task.setHandleStage(handleStage);
+        task.setPageBatcher(pageBatcher);
+        task.setCheckpointStore(checkpointStore);
+        task.setConditionalGet(conditionalGet);
+        task.setCompression(compression);
+        task.setContentDigest(contentDigest);
+        task.setNextUriPredictor(nextUriPredictor);
+        task.setJitter(jitter);
+        if (circuitFailureThreshold > 0) {
+            task.setCircuitBreaker(newCircuitBreaker());
+            if (hostCircuitBreakers) {
+                task.setHostCircuitBreaker(hostCircuitBreakerOf(start));
+            }
+        }
+        tune(task, endpointConfig);
+
+        tasks.put(endpointConfig.getKey(), task);
+        return task;
     }
 
-    public void start() {
-        for (EndpointConfig endpointConfig : endpointConfigs) {
-            PollingTask task = new PollingTask(client, newFeedHandler, endpointConfig.getKey(), endpointConfig.getStart(), acceptType, pollingExceptionHandler);
+    private CircuitBreaker newCircuitBreaker() {
+        return new CircuitBreaker(circuitFailureThreshold, circuitBaseBackoff, circuitMaxBackoff);
+    }
 
-            service.scheduleAtFixedRate(task, initialDelay, endpointConfig.getPeriodInMilliseconds(), TimeUnit.MILLISECONDS);
+    /**
+     * @return Breaker shared by every endpoint whose start uri has the same authority, null if the uri has none
+     */
+    private CircuitBreaker hostCircuitBreakerOf(String uri) {
+        String authority;
+        try {
+            authority = URI.create(uri).getRawAuthority();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        return authority == null ? null : circuitBreakersByHost.computeIfAbsent(authority.toLowerCase(Locale.ROOT), host -> newCircuitBreaker());
+    }
 
-            tasks.add(task);
+    private void tune(PollingTask task, EndpointConfig endpointConfig) {
+        task.setMaxBurstPages(endpointConfig.getMaxBurstPages());
+        task.setBurstBudget(endpointConfig.getBurstBudgetInMilliseconds());
+        task.setPriority(endpointConfig.getPriority());
+        task.setDeadline(endpointConfig.getDeadlineInMilliseconds());
+        task.setMode(endpointConfig.getMode());
+        task.setFetchEngine(fetchEngineOf(endpointConfig.getMode()));
+        if (endpointConfig.getMode() == EndpointMode.STREAM) {
+            task.setStreamExecutor(streamReaders());
         }
+        task.setInterval(new AdaptiveInterval(endpointConfig.getPeriodInMilliseconds(), endpointConfig.getMinPeriodInMilliseconds(), endpointConfig.getMaxPeriodInMilliseconds(), intervalBackoffFactor));
+    }
+
+    private FetchEngine fetchEngineOf(EndpointMode mode) {
+        switch (mode) {
+            case STREAM:
+                return streamFetchEngine;
+            case LONG_POLL:
+                return longPollFetchEngine;
+            default:
+                return fetchEngine;
+        }
+    }
+
+    private ExecutorService streamReaders() {
+        if (streamReaders == null) {
+            // created with the first stream, every stream is read on a virtual thread of its own
+            streamReaders = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("feedpoller-stream-", 0).factory());
+        }
+        return streamReaders;
+    }
+
+    /**
+     * @param unspread Delay to use when phases are not spread
+     * @return Phase of the task within its current period if phases are spread
+     */
+    private long phaseOf(PollingTask task, long unspread) {
+        return phaseSpreading ? PhaseSpreading.phaseOf(task.getKey(), task.getInterval().getCurrent()) : unspread;
+    }
+
+    private void schedule(PollingTask task, long delay, long period) {
+        scheduledPolls.put(task.getKey(), scheduler.scheduleAtFixedRate(task, delay, period, TimeUnit.MILLISECONDS));
+    }
+
+    private void cancel(PollingTask task) {
+        ScheduledPoll scheduledPoll = scheduledPolls.remove(task.getKey());
+        if (scheduledPoll != null) {
+            scheduledPoll.cancel();
+        }
+    }
+
+    private PollingTask taskOf(String key) {
+        if (!running) {
+            throw new IllegalStateException("FeedPoller is not running");
+        }
+
+        PollingTask task = tasks.get(key);
+        if (task == null) {
+            throw new IllegalArgumentException("No endpoint " + key + " is polled");
+        }
+        return task;
+    }
+
+    /**
+     * Starts polling another endpoint, from its checkpoint if there is one, after the initial delay.
+     */
+    public synchronized PollingResult addEndpoint(EndpointConfig endpointConfig) {
+        return addEndpoint(endpointConfig, null);
+    }
+
+    /**
+     * @param position Uri to start from instead of the checkpoint, null to use the checkpoint
+     */
+    synchronized PollingResult addEndpoint(EndpointConfig endpointConfig, String position) {
+        if (!running) {
+            throw new IllegalStateException("FeedPoller is not running");
+        }
+
+        if (tasks.containsKey(endpointConfig.getKey())) {
+            throw new IllegalArgumentException("Endpoint " + endpointConfig.getKey() + " is already polled");
+        }
+
+        checkEndpointConfig(endpointConfig);
+
+        Map<String, String> checkpoints = position != null ? Collections.singletonMap(endpointConfig.getKey(), position) : loadCheckpoints();
+        PollingTask task = createTask(endpointConfig, checkpoints);
+        schedule(task, initialDelay + phaseOf(task, 0L), endpointConfig.getPeriodInMilliseconds());
+        LOG.info("Poller [{}] is added.", endpointConfig.getKey());
+
+        return resultOf(task);
+    }
+
+    /**
+     * Stops polling an endpoint. A page already being read is still handled, and its checkpoint is kept.
+     */
+    public synchronized PollingResult removeEndpoint(String key) {
+        PollingTask task = taskOf(key);
+
+        task.stop();
+        cancel(task);
+        tasks.remove(key);
+        triggeredPolls.remove(key);
+        metrics.remove(key);
+        LOG.info("Poller [{}] is removed.", key);
+
+        return resultOf(task);
+    }
+
+    /**
+     * Skips the endpoint until it is resumed. A burst in progress ends after the current page.
+     */
+    public synchronized PollingResult pauseEndpoint(String key) {
+        PollingTask task = taskOf(key);
+
+        if (!task.isPaused()) {
+            task.pause();
+            cancel(task);
+            LOG.info("Poller [{}] is paused at {}.", key, task.getNextUri());
+        }
+
+        return resultOf(task);
+    }
+
+    /**
+     * Polls a paused endpoint again, first after its current period.
+     */
+    public synchronized PollingResult resumeEndpoint(String key) {
+        PollingTask task = taskOf(key);
+
+        if (task.isPaused()) {
+            task.resume();
+            long period = task.getInterval().getCurrent();
+            schedule(task, phaseOf(task, period), period);
+            LOG.info("Poller [{}] is resumed at {}.", key, task.getNextUri());
+        }
+
+        return resultOf(task);
+    }
+
+    /**
+     * Applies the periods, burst limits, priority, deadline and mode of the config to a polled endpoint. Its position is kept, so {@link EndpointConfig#getStart()} is ignored.
+     * Its metrics stay in the priority class it was added with. An open stream is closed if the mode moves away from it.
+     * The next poll is due one new period from now.
+     */
+    public synchronized PollingResult retuneEndpoint(EndpointConfig endpointConfig) {
+        PollingTask task = taskOf(endpointConfig.getKey());
+
+        checkEndpointConfig(endpointConfig);
+
+        tune(task, endpointConfig);
+        if (!task.isPaused()) {
+            cancel(task);
+            schedule(task, phaseOf(task, endpointConfig.getPeriodInMilliseconds()), endpointConfig.getPeriodInMilliseconds());
+        }
+        LOG.info("Poller [{}] is retuned to a period of {} milliseconds.", endpointConfig.getKey(), endpointConfig.getPeriodInMilliseconds());
+
+        return resultOf(task);
+    }
+
+    /**
+     * Polls the endpoint right away, e.g. when a webhook says it has changed. Triggers within the debounce time of the last
+     * triggered poll are coalesced into one more poll at its end. The regular period starts over from the triggered poll.
+     * A paused endpoint ignores triggers.
+     */
+    public synchronized PollingResult triggerEndpoint(String key) {
+        PollingTask task = taskOf(key);
+        task.getMetrics().onTrigger();
+
+        if (task.isPaused()) {
+            return resultOf(task);
+        }
+
+        long now = System.nanoTime();
+        Long last = triggeredPolls.get(key);
+        if (last != null && last - now > 0) {
+            // the poll that is already due reads the change as well
+            task.getMetrics().onCoalescedTrigger();
+            return resultOf(task);
+        }
+
+        long delay = last == null ? 0 : Math.max(0, last + TimeUnit.MILLISECONDS.toNanos(triggerDebounce) - now);
+        triggeredPolls.put(key, now + delay);
+
+        // the run in progress may have read the feed before the change
+        boolean polling = task.isRunning();
+        if (polling) {
+            task.pollAgain();
+        }
+        if (delay > 0 || !polling) {
+            cancel(task);
+            schedule(task, TimeUnit.NANOSECONDS.toMillis(delay), task.getInterval().getCurrent());
+        }
+        LOG.debug("Poller [{}] is triggered and polls in {} milliseconds.", key, TimeUnit.NANOSECONDS.toMillis(delay));
+
+        return resultOf(task);
+    }
+
+    /**
+     * @return Position of the endpoint so far
+     */
+    public synchronized PollingResult getResult(String key) {
+        return resultOf(taskOf(key));
+    }
+
+    private static PollingResult resultOf(PollingTask task) {
+        return new PollingResult(task.getKey(), task.getInitialUri(), task.getNextUri(), task.getReceivedBytes(), task.getDecodedBytes());
+    }
+
+    /**
+     * @return Metrics of every endpoint and their aggregate, updated while polling
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
     }
 
     public List<PollingResult> shutdown() {
         List<PollingResult> results = new ArrayList<>();
         LOG.info("FeedPoller is stated to gracefully shut down all tasks. (timeout {} milliseconds)", shutdownTimeout);
-        service.shutdown();
+        if (triggerListener != null) {
+            triggerListener.stop();
+        }
+        if (shardCoordinator != null) {
+            shardCoordinator.stop();
+        }
+        synchronized (this) {
+            running = false;
+            for (PollingTask task : tasks.values()) {
+                task.stop();
+            }
+            if (streamReaders != null) {
+                // stopped tasks have closed their streams, so their readers end
+                streamReaders.shutdown();
+            }
+        }
+        scheduler.shutdown();
 
         try {
-            if (!service.awaitTermination(shutdownTimeout, TimeUnit.MILLISECONDS)) {
+            if (!scheduler.awaitTermination(shutdownTimeout, TimeUnit.MILLISECONDS)) {
                 LOG.warn("FeedPoller is forced to shutdown.");
-                service.shutdownNow();
+                scheduler.shutdownNow();
 
-                if (!service.awaitTermination(60, TimeUnit.SECONDS)) {
+                if (!scheduler.awaitTermination(60, TimeUnit.SECONDS)) {
                     LOG.warn("FeedPoller is not able to terminate.");
                 }
             }
+
+            // only now, so pages fetched by polls that were still running are handled rather than dropped
+            handleStage.shutdown();
+
+            if (pageBatcher != null) {
+                // pages still waiting for their batch are handed over rather than read again after restart
+                pageBatcher.flush();
+            }
+
+            if (!handleStage.awaitTermination(shutdownTimeout, TimeUnit.MILLISECONDS)) {
+                LOG.warn("FeedPoller is forced to stop handlers.");
+                handleStage.shutdownNow();
+            }
         } catch (InterruptedException e) {
             LOG.error("FeedPoller get interrupted and will be forced to shutdown all tasks.\n", e);
-            service.shutdownNow();
+            scheduler.shutdownNow();
+            handleStage.shutdownNow();
             // preserve interrupt status
             Thread.currentThread().interrupt();
         } finally {
-            for (PollingTask task : tasks) {
-                PollingResult result = new PollingResult(task.getKey(), task.getInitialUri(), task.getNextUri());
-                results.add(result);
+            flushCheckpoints();
+            metrics.unregisterMBeans();
+
+            synchronized (this) {
+                for (PollingTask task : tasks.values()) {
+                    results.add(resultOf(task));
+                }
+            }
+
+            if (shardCoordinator != null) {
+                Map<String, String> positions = new HashMap<>();
+                for (PollingResult result : results) {
+                    positions.put(result.getKey(), result.getLastUnreadUri());
+                }
+                shardCoordinator.leave(positions);
             }
             return results;
         }
     }
 
+    private void flushCheckpoints() {
+        if (checkpointStore == null) {
+            return;
+        }
+
+        try {
+            checkpointStore.flush();
+        } catch (IOException e) {
+            LOG.warn("FeedPoller is not able to flush checkpoints.", e);
+        }
+    }
+
+    private static void checkEndpointConfig(EndpointConfig endpointConfig) {
+        if (endpointConfig.getMinPeriodInMilliseconds() < 1
+                || endpointConfig.getMinPeriodInMilliseconds() > endpointConfig.getPeriodInMilliseconds()
+                || endpointConfig.getPeriodInMilliseconds() > endpointConfig.getMaxPeriodInMilliseconds()) {
+            throw new Error("Period of endpoint " + endpointConfig.getKey() + " must be between its min and max periods");
+        }
+
+        if (endpointConfig.getMaxBurstPages() < 1 || endpointConfig.getBurstBudgetInMilliseconds() < 0) {
+            throw new Error("Burst of endpoint " + endpointConfig.getKey() + " must allow at least 1 page and a non-negative budget");
+        }
+
+        if (endpointConfig.getPriority() == null || endpointConfig.getDeadlineInMilliseconds() < 0) {
+            throw new Error("Endpoint " + endpointConfig.getKey() + " needs a priority and a non-negative deadline");
+        }
+
+        if (endpointConfig.getMode() == null) {
+            throw new Error("Endpoint " + endpointConfig.getKey() + " needs a mode");
+        }
+    }
+
     public static class FeedPollerBuilder {
         private Client client;
+        private FetchEngine fetchEngine;
         private List<EndpointConfig> endpointConfigs;
         private NewFeedHandler newFeedHandler;
+        private StreamingFeedHandler streamingFeedHandler;
+        private BatchFeedHandler batchFeedHandler;
         private long initialDelay;
         private long shutdownTimeout = 60000L;
         private PollingExceptionHandler pollingExceptionHandler;
         private String accept;
+        private int workerPoolSize = 10;
+        private long tickDuration = 10L;
+        private boolean virtualThreads;
+        private boolean conditionalGet = true;
+        private boolean compression;
+        private double intervalBackoffFactor = 2.0;
+        private NextUriPredictor nextUriPredictor;
+        private int handlerPoolSize = 10;
+        private int handleQueueCapacity = 100;
+        private int maxBatchSize = 100;
+        private long maxBatchDelay = 1000L;
+        private CheckpointStore checkpointStore;
+        private String jmxName;
+        private HostLimits hostLimits;
+        private Map<String, HostLimits> hostLimitsByAuthority = new HashMap<>();
+        private boolean phaseSpreading;
+        private double jitter;
+        private int circuitFailureThreshold;
+        private long circuitBaseBackoff;
+        private long circuitMaxBackoff;
+        private boolean hostCircuitBreakers;
+        private boolean requestCoalescing;
+        private long coalescedResponseTtl;
+        private boolean contentDigest;
+        private CoordinationStore coordinationStore;
+        private String nodeId;
+        private long leaseTtl;
+        private int maxConcurrentPolls;
+        private long triggerDebounce = 1000L;
+        private InetSocketAddress triggerAddress;
 
         public FeedPollerBuilder withClient(Client client) {
             this.client = client;
             return this;
         }
 
+        /**
+         * Replaces the Jersey client as transport, e.g. with a non-blocking {@link feedpoller.fetch.AsyncHttpFetchEngine}.
+         * The engine is shared by all endpoints and is not closed by {@link FeedPoller#shutdown()}.
+         */
+        public FeedPollerBuilder withFetchEngine(FetchEngine fetchEngine) {
+            this.fetchEngine = fetchEngine;
+            return this;
+        }
+
         public FeedPollerBuilder withEndpointConfigs(List<EndpointConfig> endpointConfigs) {
             this.endpointConfigs = endpointConfigs;
             return this;
@@ -110,6 +678,14 @@ public class FeedPoller {
             return this;
         }
 
+        /**
+         * Receives every page as a stream instead of a String. Replaces {@link #withNewFeedHandler(NewFeedHandler)}.
+         */
+        public FeedPollerBuilder withStreamingFeedHandler(StreamingFeedHandler streamingFeedHandler) {
+            this.streamingFeedHandler = streamingFeedHandler;
+            return this;
+        }
+
         public FeedPollerBuilder withPollingExceptionHandler(PollingExceptionHandler pollingExceptionHandler) {
             this.pollingExceptionHandler = pollingExceptionHandler;
             return this;
@@ -125,23 +701,338 @@ public class FeedPoller {
             return this;
         }
 
+        public FeedPollerBuilder withWorkerPoolSize(int workerPoolSize) {
+            this.workerPoolSize = workerPoolSize;
+            return this;
+        }
+
+        /**
+         * Hands pages to the handler in batches, which may mix endpoints. Replaces {@link #withNewFeedHandler(NewFeedHandler)}.
+         * See {@link #withMaxBatchSize(int)} and {@link #withMaxBatchDelay(long)}.
+         */
+        public FeedPollerBuilder withBatchFeedHandler(BatchFeedHandler batchFeedHandler) {
+            this.batchFeedHandler = batchFeedHandler;
+            return this;
+        }
+
+        /**
+         * Pages that flush a batch at once. It cannot exceed the handle queue capacity, since every waiting page holds a slot.
+         */
+        public FeedPollerBuilder withMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Time in milliseconds the oldest page of a batch waits before the batch is flushed anyway.
+         */
+        public FeedPollerBuilder withMaxBatchDelay(long maxBatchDelayInMilliseconds) {
+            this.maxBatchDelay = maxBatchDelayInMilliseconds;
+            return this;
+        }
+
+        /**
+         * Records every advance in the store, and starts each endpoint from its recorded position instead of {@link EndpointConfig#getStart()}.
+         * The store is flushed on shutdown but closed by its owner.
+         */
+        public FeedPollerBuilder withCheckpointStore(CheckpointStore checkpointStore) {
+            this.checkpointStore = checkpointStore;
+            return this;
+        }
+
+        /**
+         * Exposes metrics over JMX under {@code feedpoller:poller=<name>} while the poller runs.
+         */
+        public FeedPollerBuilder withJmxName(String jmxName) {
+            this.jmxName = jmxName;
+            return this;
+        }
+
+        /**
+         * Threads that run handlers, apart from the workers that fetch pages.
+         */
+        public FeedPollerBuilder withHandlerPoolSize(int handlerPoolSize) {
+            this.handlerPoolSize = handlerPoolSize;
+            return this;
+        }
+
+        /**
+         * Pages fetched but not yet handled, across all endpoints. Once it is reached, fetching waits for handlers to catch up.
+         */
+        public FeedPollerBuilder withHandleQueueCapacity(int handleQueueCapacity) {
+            this.handleQueueCapacity = handleQueueCapacity;
+            return this;
+        }
+
+        /**
+         * Caps concurrent requests and paces the request rate of every host, shared by all endpoints on it.
+         * Requests over the limits are deferred, not dropped. See {@link HostLimitedFetchEngine}.
+         */
+        public FeedPollerBuilder withHostLimits(HostLimits hostLimits) {
+            this.hostLimits = hostLimits;
+            return this;
+        }
+
+        /**
+         * Limits of one host, by authority such as {@code api.github.com} or {@code localhost:8080}. They replace {@link #withHostLimits(HostLimits)} for that host.
+         */
+        public FeedPollerBuilder withHostLimits(String authority, HostLimits hostLimits) {
+            this.hostLimitsByAuthority.put(authority.toLowerCase(Locale.ROOT), hostLimits);
+            return this;
+        }
+
+        /**
+         * Starts each endpoint at a phase within its period derived from its key, after the initial delay, so endpoints
+         * with equal periods do not poll on the same tick. The phase is the same on every start.
+         */
+        public FeedPollerBuilder withPhaseSpreading(boolean phaseSpreading) {
+            this.phaseSpreading = phaseSpreading;
+            return this;
+        }
+
+        /**
+         * Moves every period by a random fraction of up to {@code jitter} either way, e.g. 0.1 for 10%.
+         */
+        public FeedPollerBuilder withJitter(double jitter) {
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * Stops polling an endpoint after {@code failureThreshold} failed fetches in a row. It is probed again after
+         * {@code baseBackoff}, and the backoff doubles on every failed probe up to {@code maxBackoff}. Off by default.
+         */
+        public FeedPollerBuilder withCircuitBreaker(int failureThreshold, long baseBackoffInMilliseconds, long maxBackoffInMilliseconds) {
+            this.circuitFailureThreshold = failureThreshold;
+            this.circuitBaseBackoff = baseBackoffInMilliseconds;
+            this.circuitMaxBackoff = maxBackoffInMilliseconds;
+            return this;
+        }
+
+        /**
+         * Adds a breaker per host on top of the one per endpoint, with the same settings. Failures of any endpoint on the
+         * host count towards it, and only one of them probes the host while it is open. Requires {@link #withCircuitBreaker(int, long, long)}.
+         */
+        public FeedPollerBuilder withHostCircuitBreakers(boolean hostCircuitBreakers) {
+            this.hostCircuitBreakers = hostCircuitBreakers;
+            return this;
+        }
+
+        /**
+         * Lets endpoints that read the same uri at the same time share one request. Shared bodies are read into memory
+         * and every endpoint gets a copy. See {@link CoalescingFetchEngine}.
+         */
+        public FeedPollerBuilder withRequestCoalescing(boolean requestCoalescing) {
+            this.requestCoalescing = requestCoalescing;
+            return this;
+        }
+
+        /**
+         * Time in milliseconds a shared response is also reused after it arrived, 0 by default. Requires {@link #withRequestCoalescing(boolean)}.
+         */
+        public FeedPollerBuilder withCoalescedResponseTtl(long coalescedResponseTtlInMilliseconds) {
+            this.coalescedResponseTtl = coalescedResponseTtlInMilliseconds;
+            return this;
+        }
+
+        /**
+         * Hashes every page and skips the handler when a page is the same as the last one handled for its uri, as if it were empty.
+         * Helps with upstreams that send no validators. Pages are read into memory before the handler sees them.
+         */
+        public FeedPollerBuilder withContentDigest(boolean contentDigest) {
+            this.contentDigest = contentDigest;
+            return this;
+        }
+
+        /**
+         * Shares the endpoints with every other node using the same store. Each endpoint is polled by one node at a time,
+         * picked by consistent hashing over the live nodes and held by a lease of {@code leaseTtl} milliseconds that is renewed
+         * every third of it. The lease records the position, so an endpoint moving to another node resumes where it was,
+         * and a page being read while it moves may be read again. See {@link ShardCoordinator}.
+         * Every node must be built with the same endpoints and a node id of its own.
+         */
+        public FeedPollerBuilder withSharding(CoordinationStore coordinationStore, String nodeId, long leaseTtlInMilliseconds) {
+            this.coordinationStore = coordinationStore;
+            this.nodeId = nodeId;
+            this.leaseTtl = leaseTtlInMilliseconds;
+            return this;
+        }
+
+        /**
+         * Caps the polls in progress. Due polls beyond the cap wait in order of their {@link feedpoller.domain.Priority}
+         * and then of their deadline, earliest first, so critical endpoints go first when the poller is saturated.
+         * Off by default, when every due poll is handed to the workers at once.
+         */
+        public FeedPollerBuilder withMaxConcurrentPolls(int maxConcurrentPolls) {
+            this.maxConcurrentPolls = maxConcurrentPolls;
+            return this;
+        }
+
+        /**
+         * Listens for change notifications on {@code POST /trigger/<key>} and polls that endpoint right away as {@link FeedPoller#triggerEndpoint(String)} does.
+         * Bind it to a private address, as it does not authenticate callers. See {@link TriggerListener}.
+         */
+        public FeedPollerBuilder withTriggerListener(InetSocketAddress address) {
+            this.triggerAddress = address;
+            return this;
+        }
+
+        /**
+         * Time in milliseconds after a triggered poll within which further triggers of the endpoint are coalesced into one poll, 1000 by default.
+         */
+        public FeedPollerBuilder withTriggerDebounce(long triggerDebounceInMilliseconds) {
+            this.triggerDebounce = triggerDebounceInMilliseconds;
+            return this;
+        }
+
+        public FeedPollerBuilder withTickDuration(long tickDurationInMilliseconds) {
+            this.tickDuration = tickDurationInMilliseconds;
+            return this;
+        }
+
+        /**
+         * Runs every poll on its own virtual thread. The worker pool size is ignored in this mode.
+         */
+        public FeedPollerBuilder withVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        /**
+         * Sends ETag and Last-Modified of the last page back as If-None-Match and If-Modified-Since when the same uri is read again.
+         * A 304 response skips the handler. Enabled by default.
+         */
+        public FeedPollerBuilder withConditionalGet(boolean conditionalGet) {
+            this.conditionalGet = conditionalGet;
+            return this;
+        }
+
+        /**
+         * Asks for gzip or deflate encoded pages with Accept-Encoding. Pages are decoded while the handler reads them,
+         * and {@link PollingResult} reports the bytes received and decoded per endpoint.
+         */
+        public FeedPollerBuilder withCompression(boolean compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * Factor by which an adaptive period grows on an empty poll and shrinks on a new page. Only endpoints whose
+         * min and max periods differ adapt.
+         */
+        public FeedPollerBuilder withIntervalBackoffFactor(double intervalBackoffFactor) {
+            this.intervalBackoffFactor = intervalBackoffFactor;
+            return this;
+        }
+
+        /**
+         * Fetches the predicted next page while the current one is handled. Only pages of a burst are prefetched
+         * (see {@link EndpointConfig#getMaxBurstPages()}), and a prefetched page is dropped if the handler returns another uri.
+         * A handler that knows its next uri up front can implement {@link NextUriPredictor} and be passed here,
+         * numbered pages can use {@link feedpoller.handler.PaginationPredictor}.
+         */
+        public FeedPollerBuilder withPrefetch(NextUriPredictor nextUriPredictor) {
+            this.nextUriPredictor = nextUriPredictor;
+            return this;
+        }
+
         public FeedPoller build() {
             if (client == null) {
                 client = new Client();
             }
 
+            if (fetchEngine == null) {
+                fetchEngine = new JerseyFetchEngine(client);
+            }
+
             if (endpointConfigs == null || endpointConfigs.size() < 1) {
                 throw new Error("No endpoint found for poller");
             }
 
-            if (newFeedHandler == null) {
+            int handlers = (newFeedHandler == null ? 0 : 1) + (streamingFeedHandler == null ? 0 : 1) + (batchFeedHandler == null ? 0 : 1);
+            if (handlers == 0) {
                 throw new Error("No NewFeedHandler is found for poller");
             }
 
+            if (handlers > 1) {
+                throw new Error("Only one of NewFeedHandler, StreamingFeedHandler and BatchFeedHandler can be used by poller");
+            }
+
             if (pollingExceptionHandler == null) {
                 pollingExceptionHandler = new DefaultPollingExceptionHandler();
             }
 
+            Set<String> keys = new HashSet<>();
+            for (EndpointConfig endpointConfig : endpointConfigs) {
+                checkEndpointConfig(endpointConfig);
+
+                if (!keys.add(endpointConfig.getKey())) {
+                    throw new Error("Endpoint key " + endpointConfig.getKey() + " is used more than once");
+                }
+            }
+
+            if (intervalBackoffFactor < 1) {
+                throw new Error("Interval backoff factor must be at least 1");
+            }
+
+            if (workerPoolSize < 1) {
+                throw new Error("Worker pool size must be at least 1");
+            }
+
+            if (handlerPoolSize < 1) {
+                throw new Error("Handler pool size must be at least 1");
+            }
+
+            if (handleQueueCapacity < 1) {
+                throw new Error("Handle queue capacity must be at least 1");
+            }
+
+            if (maxBatchSize < 1 || maxBatchSize > handleQueueCapacity || maxBatchDelay < 1) {
+                throw new Error("Max batch size must be between 1 and the handle queue capacity, and max batch delay at least 1 millisecond");
+            }
+
+            List<HostLimits> allHostLimits = new ArrayList<>(hostLimitsByAuthority.values());
+            if (hostLimits != null) {
+                allHostLimits.add(hostLimits);
+            }
+            for (HostLimits limits : allHostLimits) {
+                if (limits.getMaxConcurrency() < 1 || !(limits.getRequestsPerSecond() > 0) || limits.getBurst() < 1) {
+                    throw new Error("Host limits must allow at least 1 concurrent request, a positive rate and a burst of at least 1");
+                }
+            }
+
+            if (circuitFailureThreshold < 0 || (circuitFailureThreshold > 0 && (circuitBaseBackoff < 1 || circuitBaseBackoff > circuitMaxBackoff))) {
+                throw new Error("Circuit breaker needs a base backoff of at least 1 millisecond that does not exceed its max backoff");
+            }
+
+            if (hostCircuitBreakers && circuitFailureThreshold == 0) {
+                throw new Error("Host circuit breakers require a circuit breaker");
+            }
+
+            if (coalescedResponseTtl < 0 || (coalescedResponseTtl > 0 && !requestCoalescing)) {
+                throw new Error("Coalesced response ttl must not be negative and requires request coalescing");
+            }
+
+            if (jitter < 0 || jitter >= 1) {
+                throw new Error("Jitter must be at least 0 and less than 1");
+            }
+
+            if (coordinationStore != null && (nodeId == null || nodeId.isEmpty() || leaseTtl < 3 * tickDuration)) {
+                throw new Error("Sharding needs a node id and a lease ttl of at least 3 ticks");
+            }
+
+            if (triggerDebounce < 0) {
+                throw new Error("Trigger debounce must not be negative");
+            }
+
+            if (maxConcurrentPolls < 0) {
+                throw new Error("Max concurrent polls must not be negative");
+            }
+
+            if (tickDuration < 1) {
+                throw new Error("Tick duration must be at least 1 millisecond");
+            }
+
             if (accept == null) {
                 accept = MediaType.TEXT_PLAIN;
             }
@@ -0,0 +1,112 @@
+package feedpoller;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs handlers on their own pool, apart from the workers that fetch pages.
+ * <p>
+ * The stage holds a bounded number of pages: a fetched page reserves a slot before its handler runs, and the slot is freed once the page is handled.
+ * While every slot is taken, pages wait for one without holding a thread. Their endpoints fetch nothing more meanwhile, so slow handlers pause
+ * fetching without bounding how many requests are in flight, and at most one open response per endpoint waits for a slot.
+ */
+public class HandleStage {
+    private final ExecutorService handlers;
+    private final int capacity;
+
+    // guarded by this
+    private final Queue<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+    private int reserved;
+
+    public HandleStage(ExecutorService handlers, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+
+        this.handlers = handlers;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return A stage that completes once a slot is reserved
+     */
+    public CompletableFuture<Void> reserve() {
+        synchronized (this) {
+            if (reserved < capacity) {
+                reserved++;
+                return CompletableFuture.completedFuture(null);
+            }
+
+            CompletableFuture<Void> slot = new CompletableFuture<>();
+            waiting.add(slot);
+            return slot;
+        }
+    }
+
+    /**
+     * @return Whether a slot is reserved. It never waits.
+     */
+    public synchronized boolean tryReserve() {
+        if (reserved < capacity) {
+            reserved++;
+            return true;
+        }
+        return false;
+    }
+
+    public void release() {
+        CompletableFuture<Void> next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                reserved--;
+                return;
+            }
+        }
+
+        // the slot moves to the next waiter, outside the lock since it runs whatever waits on it
+        next.complete(null);
+    }
+
+    /**
+     * Runs the handler of a page that holds a slot, and frees the slot once the stage returned by the handler completes.
+     *
+     * @return A stage that completes exceptionally with {@link RejectedExecutionException} if the stage is shut down
+     */
+    public <T> CompletableFuture<T> submit(Supplier<? extends CompletionStage<T>> handler) {
+        try {
+            return CompletableFuture.supplyAsync(handler, handlers)
+                    .<T>thenCompose(handled -> handled)
+                    .whenComplete((result, failure) -> release());
+        } catch (RejectedExecutionException e) {
+            release();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public synchronized int getReserved() {
+        return reserved;
+    }
+
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    public void shutdown() {
+        handlers.shutdown();
+    }
+
+    public void shutdownNow() {
+        handlers.shutdownNow();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return handlers.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,146 @@
+package feedpoller;
+
+import feedpoller.domain.FeedPage;
+import feedpoller.handler.BatchFeedHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects pages from all endpoints and hands them to a {@link BatchFeedHandler} together, once {@code maxBatchSize} pages
+ * are waiting or the oldest one has waited {@code maxBatchDelay} milliseconds.
+ * <p>
+ * A full batch is handled by the thread that adds its last page. A batch that is due by time is handled on the given executor.
+ */
+public class PageBatcher {
+    private final BatchFeedHandler batchFeedHandler;
+    private final int maxBatchSize;
+    private final long maxBatchDelay;
+    private final Executor executor;
+
+    // guarded by this
+    private List<Pending> pending = new ArrayList<>();
+    private long oldest;
+
+    public PageBatcher(BatchFeedHandler batchFeedHandler, int maxBatchSize, long maxBatchDelayInMilliseconds, Executor executor) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be greater than 0");
+        }
+
+        this.batchFeedHandler = batchFeedHandler;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelay = TimeUnit.MILLISECONDS.toNanos(maxBatchDelayInMilliseconds);
+        this.executor = executor;
+    }
+
+    /**
+     * @return Next uri of the page once its batch is handled
+     */
+    public CompletableFuture<String> add(FeedPage page) {
+        Pending added = new Pending(page);
+
+        List<Pending> full = null;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                oldest = System.nanoTime();
+            }
+            pending.add(added);
+
+            if (pending.size() >= maxBatchSize) {
+                full = take();
+            }
+        }
+
+        if (full != null) {
+            flush(full);
+        }
+        return added.nextUri;
+    }
+
+    /**
+     * Hands over the waiting pages if the oldest one is due. It is called periodically.
+     */
+    public void flushIfDue() {
+        final List<Pending> due;
+        synchronized (this) {
+            if (pending.isEmpty() || System.nanoTime() - oldest < maxBatchDelay) {
+                return;
+            }
+            due = take();
+        }
+
+        try {
+            executor.execute(() -> flush(due));
+        } catch (RejectedExecutionException e) {
+            fail(due, e);
+        }
+    }
+
+    /**
+     * Hands over every waiting page on the calling thread.
+     */
+    public void flush() {
+        List<Pending> all;
+        synchronized (this) {
+            all = take();
+        }
+
+        if (!all.isEmpty()) {
+            flush(all);
+        }
+    }
+
+    public synchronized int getPending() {
+        return pending.size();
+    }
+
+    private List<Pending> take() {
+        List<Pending> taken = pending;
+        pending = new ArrayList<>();
+        return taken;
+    }
+
+    private void flush(List<Pending> batch) {
+        List<FeedPage> pages = new ArrayList<>(batch.size());
+        for (Pending entry : batch) {
+            pages.add(entry.page);
+        }
+
+        List<String> nextUris;
+        try {
+            nextUris = batchFeedHandler.receiveNewFeeds(pages);
+        } catch (Exception e) {
+            fail(batch, e);
+            return;
+        }
+
+        if (nextUris == null || nextUris.size() != batch.size()) {
+            fail(batch, new IllegalStateException("BatchFeedHandler returns " + (nextUris == null ? 0 : nextUris.size())
+                    + " next uris for " + batch.size() + " pages"));
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).nextUri.complete(nextUris.get(i));
+        }
+    }
+
+    private static void fail(List<Pending> batch, Exception e) {
+        for (Pending entry : batch) {
+            entry.nextUri.completeExceptionally(e);
+        }
+    }
+
+    private static class Pending {
+        private final FeedPage page;
+        private final CompletableFuture<String> nextUri = new CompletableFuture<>();
+
+        Pending(FeedPage page) {
+            this.page = page;
+        }
+    }
+}
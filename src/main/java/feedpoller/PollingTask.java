@@ -1,18 +1,66 @@
 package feedpoller;
 
 import com.sun.jersey.api.client.Client;
+import feedpoller.checkpoint.CheckpointStore;
 import feedpoller.domain.EmptyFeedException;
+import feedpoller.domain.EndpointMode;
+import feedpoller.domain.FeedPage;
+import feedpoller.domain.Priority;
+import feedpoller.fetch.ContentDecoding;
+import feedpoller.fetch.ContentDigest;
+import feedpoller.fetch.EventStreamReader;
+import feedpoller.fetch.FetchEngine;
+import feedpoller.fetch.FetchRequest;
+import feedpoller.fetch.FetchResponse;
+import feedpoller.fetch.JerseyFetchEngine;
+import feedpoller.fetch.Validators;
 import feedpoller.handler.NewFeedHandler;
+import feedpoller.handler.NewFeedHandlerAdapter;
+import feedpoller.handler.NextUriPredictor;
 import feedpoller.handler.PollingExceptionHandler;
+import feedpoller.handler.StreamingFeedHandler;
+import feedpoller.metrics.EndpointMetrics;
+import feedpoller.scheduler.AdaptiveInterval;
+import feedpoller.scheduler.AdaptiveTask;
+import feedpoller.scheduler.DeadlineTask;
+import feedpoller.scheduler.AsyncTask;
+import feedpoller.scheduler.CircuitBreaker;
+import feedpoller.scheduler.LagAwareTask;
+import feedpoller.scheduler.PhaseSpreading;
 import lombok.Getter;
+import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class PollingTask implements Runnable {
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PollingTask implements AsyncTask, AdaptiveTask, LagAwareTask, DeadlineTask {
     private static final Logger LOG = LoggerFactory.getLogger(PollingTask.class);
 
-    private Client client;
-    private NewFeedHandler newFeedHandler;
+    public static final long DEFAULT_RECONNECT_DELAY = 3000L;
+    public static final long DEFAULT_MAX_RECONNECT_DELAY = 60000L;
+    // keeps the doubled delay from overflowing
+    private static final int MAX_RECONNECT_DOUBLINGS = 20;
+
+    /**
+     * Engine the endpoint is read with, which may change with its mode.
+     */
+    @Setter
+    private volatile FetchEngine fetchEngine;
+    private StreamingFeedHandler feedHandler;
     private PollingExceptionHandler pollingExceptionHandler;
     private String acceptType;
 
@@ -21,38 +69,901 @@ public class PollingTask implements Runnable {
     @Getter
     private String InitialUri;
     @Getter
-    private String nextUri;
+    private volatile String nextUri;
+
+    /**
+     * Workers that fetch pages. A burst goes back to them after each page is handled, and speculative fetches are started on them.
+     */
+    @Setter
+    private Executor fetchExecutor;
+
+    /**
+     * Threads that read open streams, one per stream, so a stream never holds one of the workers. Without it streams are read on the workers.
+     */
+    @Setter
+    private Executor streamExecutor;
+
+    /**
+     * Handles pages on a pool of its own and bounds the pages in flight. Without it the handler runs wherever the fetch completes.
+     */
+    @Setter
+    private HandleStage handleStage;
+
+    /**
+     * Sends the validators of the last page read from {@code nextUri} back as a conditional GET.
+     */
+    @Setter
+    private boolean conditionalGet;
+
+    private volatile Validators validators;
+
+    /**
+     * Hashes every page and treats a page whose body equals the last one handled for the same uri as empty,
+     * without calling the handler. Pages are read into memory to be hashed before the handler sees them.
+     */
+    @Setter
+    private boolean contentDigest;
+
+    private volatile ContentDigest lastDigest;
+
+    /**
+     * Asks for gzip or deflate encoded pages. Pages are decoded while the handler reads them.
+     */
+    @Setter
+    private boolean compression;
+
+    /**
+     * Hands pages to a {@link feedpoller.handler.BatchFeedHandler} instead of {@code feedHandler}. The page waits for its batch before the feed moves on.
+     */
+    @Setter
+    private PageBatcher pageBatcher;
+
+    /**
+     * Records every advance of {@code nextUri}, so the feed resumes there after a restart.
+     */
+    @Setter
+    private CheckpointStore checkpointStore;
+
+    @Setter
+    @Getter
+    private AdaptiveInterval interval;
+
+    @Setter
+    @Getter
+    private EndpointMetrics metrics;
+
+    /**
+     * Stops fetching while the endpoint keeps failing. Only fetch failures count, not handler failures.
+     */
+    @Setter
+    private CircuitBreaker circuitBreaker;
+
+    /**
+     * Breaker shared by every endpoint on the same host, so one dead host is probed once rather than by every endpoint.
+     */
+    @Setter
+    private CircuitBreaker hostCircuitBreaker;
+
+    /**
+     * Fraction of the period each run is moved by at random, 0 for none.
+     */
+    @Setter
+    private double jitter;
+
+    /**
+     * Pages read back to back in one run while the handler keeps advancing {@code nextUri}. 1 disables draining.
+     */
+    @Setter
+    private int maxBurstPages = 1;
+
+    /**
+     * Time one burst may take in milliseconds, 0 for no limit.
+     */
+    @Setter
+    private long burstBudget;
+
+    /**
+     * Class the endpoint is dispatched in when polls pile up. Late polls of a bulk endpoint are skipped.
+     */
+    @Setter
+    @Getter
+    private volatile Priority priority = Priority.NORMAL;
+
+    /**
+     * Time in milliseconds after a poll is due by which it must start, 0 for none.
+     */
+    @Setter
+    @Getter
+    private volatile long deadline;
+
+    /**
+     * How the endpoint is read. A long-poll or stream connects again right after it ends, or one period after it fails.
+     */
+    @Getter
+    private volatile EndpointMode mode = EndpointMode.POLL;
+
+    /**
+     * Time in milliseconds a long-poll or stream waits to connect again after it ended sooner than that without news.
+     * It doubles with every such end in a row, up to {@code maxReconnectDelay}.
+     */
+    @Setter
+    private long reconnectDelay = DEFAULT_RECONNECT_DELAY;
+
+    @Setter
+    private long maxReconnectDelay = DEFAULT_MAX_RECONNECT_DELAY;
+
+    // connections in a row that ended quickly without news, only touched between runs
+    private int quickEnds;
+    private volatile long runStarted;
+    private volatile boolean newFeedInRun;
+
+    // id of the last server-sent event handled, sent back when the stream is opened again
+    private volatile String lastEventId;
+    // reconnect delay in milliseconds asked for by the server, -1 if none
+    private volatile long retry = -1L;
+    private volatile FetchResponse liveStream;
+    private volatile boolean failed;
+
+    private volatile boolean stopped;
+    private volatile boolean paused;
+
+    // a run rescheduled while the previous one is still going skips instead of overlapping
+    private final AtomicBoolean running = new AtomicBoolean();
+    // set by a trigger that arrives while a run is in progress, so another run follows at once
+    private volatile boolean pollAgain;
+
+    /**
+     * Predicts the next page during a burst, so it is fetched while the current page is still being fetched and handled.
+     */
+    @Setter
+    private NextUriPredictor nextUriPredictor;
+
+    // only touched by the run in progress
+    private Prefetch prefetched;
+
+    private final AtomicLong prefetchHits = new AtomicLong();
+    private final AtomicLong prefetchMisses = new AtomicLong();
+
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final AtomicLong decodedBytes = new AtomicLong();
 
     public PollingTask(Client client, NewFeedHandler newFeedHandler, String key, String InitialUri, String acceptType, PollingExceptionHandler pollingExceptionHandler) {
-        this.client = client;
-        this.newFeedHandler = newFeedHandler;
+        this(new JerseyFetchEngine(client), newFeedHandler, key, InitialUri, acceptType, pollingExceptionHandler);
+    }
+
+    public PollingTask(FetchEngine fetchEngine, NewFeedHandler newFeedHandler, String key, String InitialUri, String acceptType, PollingExceptionHandler pollingExceptionHandler) {
+        this(fetchEngine, new NewFeedHandlerAdapter(newFeedHandler), key, InitialUri, acceptType, pollingExceptionHandler);
+    }
+
+    public PollingTask(FetchEngine fetchEngine, StreamingFeedHandler feedHandler, String key, String InitialUri, String acceptType, PollingExceptionHandler pollingExceptionHandler) {
+        this(fetchEngine, feedHandler, key, InitialUri, acceptType, pollingExceptionHandler, new EndpointMetrics(key));
+    }
+
+    /**
+     * @param metrics Metrics the task reports to, e.g. from a {@link feedpoller.metrics.MetricsRegistry}
+     */
+    public PollingTask(FetchEngine fetchEngine, StreamingFeedHandler feedHandler, String key, String InitialUri, String acceptType, PollingExceptionHandler pollingExceptionHandler,
+                       EndpointMetrics metrics) {
+        this.fetchEngine = fetchEngine;
+        this.feedHandler = feedHandler;
         this.key = key;
         this.InitialUri = InitialUri;
         this.acceptType = acceptType;
         this.pollingExceptionHandler = pollingExceptionHandler;
 
         this.nextUri = InitialUri;
+        this.metrics = metrics;
     }
 
-    private void poll() throws Exception {
-        LOG.info("Poller [{}] is reading feeds from {}.", key, nextUri);
+    private CompletableFuture<FetchResponse> fetch(String uri) {
+        LOG.info("Poller [{}] is reading feeds from {}.", key, uri);
 
-        String page = client.resource(nextUri).accept(acceptType).get(String.class);
+        Map<String, String> headers = new HashMap<>();
+        Validators current = validators;
+        if (conditionalGet && current != null && current.appliesTo(uri)) {
+            headers.putAll(current.toConditionalHeaders());
+        }
+        if (compression) {
+            headers.put(ContentDecoding.ACCEPT_ENCODING, ContentDecoding.SUPPORTED_ENCODINGS);
+        }
+
+        String accept = acceptType;
+        if (mode == EndpointMode.STREAM) {
+            accept = EventStreamReader.EVENT_STREAM + ", " + acceptType;
+            if (lastEventId != null) {
+                headers.put(EventStreamReader.LAST_EVENT_ID, lastEventId);
+            }
+        }
 
         try {
-            nextUri = newFeedHandler.receiveNewFeed(page);
-        } catch (EmptyFeedException e) {
-            LOG.warn("Poller [{}] receives an empty feed from {}. The feed will be read again next time.", key, nextUri);
+            return fetchEngine.fetch(new FetchRequest(uri, accept, headers));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * @return Whether the handler moved {@code nextUri} to another page
+     */
+    private CompletableFuture<Boolean> receive(String uri, FetchResponse response) throws Exception {
+        try (FetchResponse page = ContentDecoding.decode(response, receivedBytes, decodedBytes)) {
+            if (page.isNotModified()) {
+                LOG.info("Poller [{}] finds {} not modified. The feed will be read again next time.", key, uri);
+                onEmptyFeed();
+                return CompletableFuture.completedFuture(false);
+            }
+
+            FetchResponse body = page;
+            ContentDigest received = null;
+            if (contentDigest) {
+                ContentDigest.Digested digested = ContentDigest.read(uri, page);
+                if (digested.getDigest().matches(lastDigest)) {
+                    LOG.info("Poller [{}] finds {} unchanged. The feed will be read again next time.", key, uri);
+                    onEmptyFeed();
+                    return CompletableFuture.completedFuture(false);
+                }
+
+                body = digested.getResponse();
+                received = digested.getDigest();
+            }
+
+            final ContentDigest delivered = received;
+            final Validators validated = conditionalGet ? Validators.of(uri, page) : null;
+
+            if (pageBatcher != null) {
+                return pageBatcher.add(new FeedPage(key, uri, body.readBody())).thenApply(next -> advance(uri, next, validated, delivered));
+            }
+
+            String next;
+            try {
+                next = feedHandler.receiveNewFeed(body.getBody(), body.getCharset());
+            } catch (EmptyFeedException e) {
+                next = null;
+            }
+            return CompletableFuture.completedFuture(advance(uri, next, validated, delivered));
+        }
+    }
+
+    /**
+     * @param next Uri returned by the handler, null for an empty feed
+     */
+    private boolean advance(String uri, String next, Validators received, ContentDigest digest) {
+        if (next == null) {
+            LOG.warn("Poller [{}] receives an empty feed from {}. The feed will be read again next time.", key, uri);
+            onEmptyFeed();
+        } else {
+            nextUri = next;
+            onNewFeed();
+        }
+
+        if (received != null) {
+            validators = received;
+        }
+        if (digest != null) {
+            lastDigest = digest;
+        }
+
+        boolean advanced = next != null && !uri.equals(next);
+        if (advanced && checkpointStore != null) {
+            checkpoint(next);
+        }
+        return advanced;
+    }
+
+    private void checkpoint(String next) {
+        try {
+            checkpointStore.record(key, next);
+        } catch (IOException e) {
+            LOG.error("Poller [{}] is not able to record {} as its checkpoint.", key, next, e);
+            pollingExceptionHandler.handle(e);
+        }
+    }
+
+    private void onNewFeed() {
+        newFeedInRun = true;
+        metrics.onNewFeed();
+        if (interval != null) {
+            interval.onNewFeed();
+        }
+    }
+
+    private void onEmptyFeed() {
+        metrics.onEmptyFeed();
+        if (interval != null) {
+            interval.onEmptyFeed();
         }
     }
 
     @Override
-    public void run() {
+    public void recordLag(long lagInNanoseconds) {
+        metrics.onSchedulingLag(lagInNanoseconds);
+    }
+
+    /**
+     * @return Whether the next run takes a slot of the scheduler, which an open stream would hold for as long as it lasts
+     */
+    @Override
+    public boolean takesSlot() {
+        return mode != EndpointMode.STREAM;
+    }
+
+    /**
+     * @return Stage that completes once the host of the next page would take the request, so the run does not hold a slot
+     * of the scheduler while its host throttles it
+     */
+    @Override
+    public CompletionStage<?> whenReady() {
+        return fetchEngine.whenReady(nextUri);
+    }
+
+    @Override
+    public void onDeadlineMiss(boolean shed) {
+        metrics.onDeadlineMiss();
+        if (shed) {
+            metrics.onShedPoll();
+            LOG.debug("Poller [{}] skips a poll that is past its deadline.", key);
+        }
+    }
+
+    @Override
+    public long nextPeriod() {
+        long now = System.nanoTime();
+        long period = interval == null ? 0 : PhaseSpreading.jitter(interval.getCurrent(), jitter);
+        if (mode != EndpointMode.POLL && !failed) {
+            period = reconnectPeriod(now);
+        }
+        if (pollAgain) {
+            period = 1;
+        }
+
+        // an open circuit is not even woken up before its probe is due
+        long open = Math.max(remainingOpen(circuitBreaker, now), remainingOpen(hostCircuitBreaker, now));
+        return Math.max(period, open);
+    }
+
+    /**
+     * @return As soon as the next tick, unless the server asked for a delay or the connection ended quickly without news,
+     * which a server that answers at once would otherwise turn into a busy loop
+     */
+    private long reconnectPeriod(long now) {
+        long asked = retry >= 0 ? Math.max(1, retry) : 1;
+        if (newFeedInRun || reconnectDelay <= 0 || now - runStarted >= TimeUnit.MILLISECONDS.toNanos(reconnectDelay)) {
+            quickEnds = 0;
+            return asked;
+        }
+
+        quickEnds = Math.min(quickEnds + 1, MAX_RECONNECT_DOUBLINGS);
+        long backoff = Math.min(reconnectDelay << (quickEnds - 1), Math.max(reconnectDelay, maxReconnectDelay));
+        return Math.max(asked, backoff);
+    }
+
+        private static long remainingOpen(CircuitBreaker breaker, long now) {
+        return breaker == null ? 0 : breaker.getRemainingOpen(now);
+    }
+
+    /**
+     * @return Whether both circuits let a request through. The host's probe is only taken if the endpoint's circuit allows one.
+     */
+    private boolean acquireCircuits() {
+        long now = System.nanoTime();
+
+        if (circuitBreaker != null && !circuitBreaker.isAllowed(now)) {
+            return false;
+        }
+        if (hostCircuitBreaker != null && !hostCircuitBreaker.tryAcquire(now)) {
+            return false;
+        }
+        return circuitBreaker == null || circuitBreaker.tryAcquire(now);
+    }
+
+    /**
+     * Reports the outcome of a fetch to the circuits. A stopped task may fail its own request, which says nothing about
+     * the upstream, but a probe it holds is handed back so the circuit does not stay half-open.
+     */
+    private void settleCircuits(Throwable failure) {
+        if (failure == null) {
+            onFetchSuccess();
+        } else if (stopped) {
+            abandonProbes();
+        } else {
+            onFetchFailure();
+        }
+    }
+
+    private void abandonProbes() {
+        long now = System.nanoTime();
+
+        if (circuitBreaker != null) {
+            circuitBreaker.onAbandoned(now);
+        }
+        if (hostCircuitBreaker != null) {
+            hostCircuitBreaker.onAbandoned(now);
+        }
+    }
+
+    private void onFetchSuccess() {
+        if (circuitBreaker != null) {
+            circuitBreaker.onSuccess();
+        }
+        if (hostCircuitBreaker != null) {
+            hostCircuitBreaker.onSuccess();
+        }
+    }
+
+    private void onFetchFailure() {
+        long now = System.nanoTime();
+
+        if (circuitBreaker != null && circuitBreaker.onFailure(now)) {
+            LOG.warn("Poller [{}] opens its circuit for {} milliseconds.", key, circuitBreaker.getRemainingOpen(now));
+            metrics.onCircuitOpen();
+        }
+        if (hostCircuitBreaker != null && hostCircuitBreaker.onFailure(now)) {
+            LOG.warn("Poller [{}] opens the circuit of its host for {} milliseconds.", key, hostCircuitBreaker.getRemainingOpen(now));
+            metrics.onCircuitOpen();
+        }
+    }
+
+    /**
+     * @return Speculative fetches whose page was handled
+     */
+    public long getPrefetchHits() {
+        return prefetchHits.get();
+    }
+
+    /**
+     * @return Speculative fetches thrown away because the feed moved elsewhere or the burst ended
+     */
+    public long getPrefetchMisses() {
+        return prefetchMisses.get();
+    }
+
+    /**
+     * @return Bytes of page bodies received over the wire, compressed if the server compressed them
+     */
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    /**
+     * @return Bytes of page bodies handed to the handler after decoding
+     */
+    public long getDecodedBytes() {
+        return decodedBytes.get();
+    }
+
+    private void fail(Throwable failure) {
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+
+        if (stopped && failure instanceof RejectedExecutionException) {
+            LOG.debug("Poller [{}] stops before {} is read.", key, nextUri);
+            return;
+        }
+
+        Exception e = failure instanceof Exception ? (Exception) failure : new ExecutionException(failure);
+        failed = true;
+        metrics.onError();
+
+        LOG.error("Poller [{}] gets an unexpected exception. The feed {} will be read again next time.", key, nextUri, e);
+        pollingExceptionHandler.handle(e);
+    }
+
+    /**
+     * @return Whether the handler moved {@code nextUri} to another page. It never completes exceptionally.
+     */
+    private CompletableFuture<Boolean> complete(String uri, FetchResponse response, Throwable failure) {
+        settleCircuits(failure);
+
+        if (failure != null) {
+            fail(failure);
+            return CompletableFuture.completedFuture(false);
+        }
+
         try {
-            poll();
+            return receive(uri, response).exceptionally(e -> {
+                fail(e);
+                return false;
+            });
         } catch (Exception e) {
-            LOG.error("Poller [{}] gets an unexpected exception. The feed {} will be read again next time.", key, nextUri, e);
-            pollingExceptionHandler.handle(e);
+            fail(e);
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    private CompletableFuture<FetchResponse> takePrefetched(String uri) {
+        Prefetch prefetch = prefetched;
+        prefetched = null;
+
+        if (prefetch == null) {
+            return null;
+        }
+
+        if (prefetch.uri.equals(uri)) {
+            prefetchHits.incrementAndGet();
+            return prefetch.response;
+        }
+
+        LOG.debug("Poller [{}] discards prefetched {} since the feed moves to {}.", key, prefetch.uri, uri);
+        prefetchMisses.incrementAndGet();
+        prefetch.discard(handleStage);
+        return null;
+    }
+
+    private void prefetchAfter(String uri) {
+        String predicted = nextUriPredictor.predictNextUri(uri);
+        if (predicted == null || predicted.equals(uri)) {
+            return;
+        }
+
+        // a speculative page only takes a free slot, it never waits for one
+        if (handleStage != null && !handleStage.tryReserve()) {
+            return;
+        }
+
+        LOG.debug("Poller [{}] prefetches {}.", key, predicted);
+
+        CompletableFuture<FetchResponse> response;
+        if (fetchExecutor == null) {
+            response = fetch(predicted);
+        } else {
+            try {
+                // a blocking engine would otherwise hold this thread until the speculative response arrives
+                response = CompletableFuture.supplyAsync(() -> fetch(predicted), fetchExecutor).thenCompose(fetching -> fetching);
+            } catch (RejectedExecutionException e) {
+                if (handleStage != null) {
+                    handleStage.release();
+                }
+                return;
+            }
+        }
+
+        prefetched = new Prefetch(predicted, response);
+    }
+
+    private void discardPrefetched() {
+        Prefetch prefetch = prefetched;
+        prefetched = null;
+
+        if (prefetch != null) {
+            prefetchMisses.incrementAndGet();
+            prefetch.discard(handleStage);
+        }
+    }
+
+    /**
+     * @param mayContinue Whether the burst may go on after this page, which makes prefetching worthwhile
+     * @return Whether the handler moved {@code nextUri} to another page. It never completes exceptionally.
+     */
+    private CompletableFuture<Boolean> pollOnce(boolean mayContinue) {
+        final String uri = nextUri;
+        final long started = System.nanoTime();
+        final long bytesBefore = receivedBytes.get();
+
+        // a prefetched page already holds its slot, a fetched one takes a slot once it arrives
+        CompletableFuture<FetchResponse> fetching = takePrefetched(uri);
+        boolean holdsSlot = fetching != null;
+        if (fetching == null) {
+            fetching = fetch(uri);
+        }
+
+        if (mayContinue && nextUriPredictor != null) {
+            prefetchAfter(uri);
+        }
+
+        return handle(uri, fetching, holdsSlot).whenComplete((advanced, failure) ->
+                metrics.onPoll(System.nanoTime() - started, receivedBytes.get() - bytesBefore));
+    }
+
+    /**
+     * @param holdsSlot Whether the page already holds a slot of the handle stage. Otherwise it waits for one once it is fetched,
+     *                  so slow upstreams never take slots and only an endpoint whose pages wait for handlers stops fetching.
+     */
+    private CompletableFuture<Boolean> handle(String uri, CompletableFuture<FetchResponse> fetching, boolean holdsSlot) {
+        if (handleStage == null) {
+            return fetching.handle((response, failure) -> complete(uri, response, failure)).thenCompose(handled -> handled);
+        }
+
+        CompletableFuture<Boolean> handled = new CompletableFuture<>();
+        fetching.whenComplete((response, failure) -> reserveSlot(uri, holdsSlot).thenRun(() -> handleStage
+                .submit(() -> complete(uri, response, failure))
+                .whenComplete((advanced, rejected) -> {
+                    if (rejected == null) {
+                        handled.complete(advanced);
+                        return;
+                    }
+
+                    // complete() never ran, so the circuits still wait for this fetch
+                    settleCircuits(failure);
+                    closeQuietly(uri, response);
+                    fail(rejected);
+                    handled.complete(false);
+                })));
+        return handled;
+    }
+
+    private CompletableFuture<Void> reserveSlot(String uri, boolean holdsSlot) {
+        if (holdsSlot) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> slot = handleStage.reserve();
+        if (!slot.isDone()) {
+            LOG.debug("Poller [{}] waits for handlers to catch up before handing over {}.", key, uri);
+        }
+        return slot;
+    }
+
+    private static void closeQuietly(String uri, FetchResponse response) {
+        if (response == null) {
+            return;
+        }
+
+        try {
+            response.close();
+        } catch (IOException e) {
+            LOG.debug("Page {} is not closed cleanly.", uri, e);
+        }
+    }
+
+    private boolean mayContinue(long burstStart, int pages) {
+        if (stopped || paused || pages >= maxBurstPages || Thread.currentThread().isInterrupted()) {
+            return false;
+        }
+
+        return burstBudget <= 0 || System.nanoTime() - burstStart < TimeUnit.MILLISECONDS.toNanos(burstBudget);
+    }
+
+    private boolean keepDraining(boolean advanced, long burstStart, int pages) {
+        return advanced && mayContinue(burstStart, pages);
+    }
+
+    private CompletableFuture<Void> endBurst(int pages) {
+        discardPrefetched();
+
+        if (pages > 1) {
+            LOG.info("Poller [{}] drains {} pages in one run.", key, pages);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Follows the feed back to back while it advances. Pages fetched synchronously are read in a loop
+     * rather than through nested futures, so a long burst does not grow the stack.
+     */
+    private CompletableFuture<Void> drain(final long burstStart, int pages) {
+        while (true) {
+            CompletableFuture<Boolean> polled = pollOnce(mayContinue(burstStart, pages));
+
+            if (!polled.isDone()) {
+                final int polledPages = pages;
+                // a stopped task ends here, before the next page is handed to workers that may be shut down already
+                return polled.thenCompose(advanced -> keepDraining(advanced, burstStart, polledPages)
+                        ? drainOnWorkers(burstStart, polledPages)
+                        : endBurst(polledPages));
+            }
+
+            if (!keepDraining(polled.join(), burstStart, pages)) {
+                return endBurst(pages);
+            }
+            pages++;
+        }
+    }
+
+    private CompletableFuture<Void> drainOnWorkers(final long burstStart, final int pages) {
+        if (fetchExecutor == null) {
+            return drain(burstStart, pages + 1);
+        }
+
+        try {
+            // the page may be handled on a handler thread, which must not go on to fetch the next one
+            return CompletableFuture.supplyAsync(() -> drain(burstStart, pages + 1), fetchExecutor).thenCompose(draining -> draining);
+        } catch (RejectedExecutionException e) {
+            fail(e);
+            return endBurst(pages);
+        }
+    }
+
+    /**
+     * Opens the stream at {@code nextUri} and hands every event to the handler as it arrives, until the stream ends,
+     * fails or the task stops. Reading holds a thread of the stream executor for as long as the stream is open.
+     */
+    private CompletableFuture<Void> stream() {
+        final String uri = nextUri;
+
+        return fetch(uri).handle((response, failure) -> {
+            settleCircuits(failure);
+
+            if (failure != null) {
+                fail(failure);
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+
+            Executor reader = streamExecutor != null ? streamExecutor : fetchExecutor;
+            if (reader == null) {
+                readEvents(uri, response);
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+
+            try {
+                // the response may complete on a thread of the engine, which must not block on the stream
+                return CompletableFuture.runAsync(() -> readEvents(uri, response), reader);
+            } catch (RejectedExecutionException e) {
+                closeQuietly(uri, response);
+                fail(e);
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+        }).thenCompose(reading -> reading);
+    }
+
+    private void readEvents(String uri, FetchResponse response) {
+        try (FetchResponse stream = ContentDecoding.decode(response, receivedBytes, decodedBytes);
+             EventStreamReader events = new EventStreamReader(stream.getBody(), stream.getCharset(), EventStreamReader.isEventStream(stream))) {
+            liveStream = stream;
+            LOG.info("Poller [{}] is streaming events from {}.", key, uri);
+
+            EventStreamReader.Event event;
+            // stop, pause and a change of mode close the stream, which ends a read that waits for the next event
+            while (!stopped && !paused && mode == EndpointMode.STREAM && (event = events.next()) != null) {
+                if (event.getRetry() >= 0) {
+                    retry = event.getRetry();
+                }
+                if (event.getData() != null) {
+                    deliver(event.getData().getBytes(stream.getCharset()), stream.getCharset());
+                }
+                if (event.getId() != null) {
+                    lastEventId = event.getId();
+                }
+            }
+
+            LOG.info("Poller [{}] ends the stream from {}. It connects again to {}.", key, uri, nextUri);
+        } catch (Exception e) {
+            if (stopped || paused || mode != EndpointMode.STREAM) {
+                LOG.debug("Poller [{}] closes the stream from {}.", key, uri);
+            } else {
+                fail(e);
+            }
+        } finally {
+            liveStream = null;
+        }
+    }
+
+    /**
+     * Hands one event to the handler and waits until it is handled. A failed event ends the stream, so it is read again after reconnecting.
+     */
+    private void deliver(byte[] data, Charset charset) {
+        final String uri = nextUri;
+        final long started = System.nanoTime();
+
+        CompletableFuture<Boolean> handled;
+        if (handleStage == null) {
+            handled = receiveEvent(uri, data, charset);
+        } else {
+            // slow handlers hold the stream back instead of piling up events
+            handleStage.reserve().join();
+            handled = handleStage.submit(() -> receiveEvent(uri, data, charset));
+        }
+
+        handled.join();
+        metrics.onPoll(System.nanoTime() - started, data.length);
+    }
+
+    private CompletableFuture<Boolean> receiveEvent(String uri, byte[] data, Charset charset) {
+        if (pageBatcher != null) {
+            return pageBatcher.add(new FeedPage(key, uri, new String(data, charset))).thenApply(next -> advance(uri, next, null, null));
+        }
+
+        String next;
+        try {
+            next = feedHandler.receiveNewFeed(new ByteArrayInputStream(data), charset);
+        } catch (EmptyFeedException e) {
+            next = null;
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return CompletableFuture.completedFuture(advance(uri, next, null, null));
+    }
+
+    @Override
+    public CompletableFuture<Void> runAsync() {
+        if (paused || !running.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (!acquireCircuits()) {
+            LOG.debug("Poller [{}] skips {} while its circuit is open.", key, nextUri);
+            metrics.onSkippedPoll();
+            running.set(false);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        try {
+            // this run covers every trigger so far
+            pollAgain = false;
+            failed = false;
+            newFeedInRun = false;
+            runStarted = System.nanoTime();
+            CompletableFuture<Void> run = mode == EndpointMode.STREAM ? stream() : drain(System.nanoTime(), 1);
+            return run.whenComplete((done, failure) -> running.set(false));
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Ends a burst in progress after the current page, and closes an open stream.
+     */
+    public void stop() {
+        stopped = true;
+        closeStream();
+    }
+
+    /**
+     * Ends a burst in progress after the current page, closes an open stream and skips every run until {@link #resume()}.
+     */
+    public void pause() {
+        paused = true;
+        closeStream();
+    }
+
+    /**
+     * Switches how the endpoint is read from the next run on. An open stream is closed once the mode moves away from it.
+     */
+    public void setMode(EndpointMode mode) {
+        this.mode = mode;
+        if (mode != EndpointMode.STREAM) {
+            closeStream();
+        }
+    }
+
+        private void closeStream() {
+        FetchResponse stream = liveStream;
+        if (stream != null) {
+            closeQuietly(nextUri, stream);
+        }
+    }
+
+    public void resume() {
+        paused = false;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Runs again right after the run in progress, for a change that may have come too late for it.
+     */
+    public void pollAgain() {
+        pollAgain = true;
+    }
+
+    @Override
+    public void run() {
+        runAsync().join();
+    }
+
+    private static class Prefetch {
+        private final String uri;
+        private final CompletableFuture<FetchResponse> response;
+
+        Prefetch(String uri, CompletableFuture<FetchResponse> response) {
+            this.uri = uri;
+            this.response = response;
+        }
+
+        void discard(HandleStage handleStage) {
+            response.whenComplete((page, failure) -> {
+                closeQuietly(uri, page);
+                if (handleStage != null) {
+                    handleStage.release();
+                }
+            });
         }
     }
-}
\ No newline at end of file
+}
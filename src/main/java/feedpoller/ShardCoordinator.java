@@ -0,0 +1,169 @@
+package feedpoller;
+
+import feedpoller.domain.EndpointConfig;
+import feedpoller.domain.PollingResult;
+import feedpoller.scheduler.ControlTask;
+import feedpoller.shard.ConsistentHashRing;
+import feedpoller.shard.CoordinationStore;
+import feedpoller.shard.Lease;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which of the configured endpoints this node polls when several nodes share them.
+ * <p>
+ * Every run renews the heartbeat of the node, assigns keys to live nodes by consistent hashing and then, for each key,
+ * takes the lease and starts polling it from the position recorded in the lease, renews the lease with the current position,
+ * or stops polling and releases the lease if the key now belongs to another node. A key is only polled while its lease is held,
+ * so when a node joins the previous owner hands over first, and when a node dies its keys move once its leases expire.
+ * A node that cannot renew a lease for two thirds of its ttl stops polling the key, before another node may take it.
+ * Runs never wait behind polls for a slot, so a saturated node still renews its leases in time.
+ */
+public class ShardCoordinator implements ControlTask {
+    private static final Logger LOG = LoggerFactory.getLogger(ShardCoordinator.class);
+
+    private final FeedPoller feedPoller;
+    private final List<EndpointConfig> endpointConfigs;
+    private final CoordinationStore store;
+    private final String nodeId;
+    private final long leaseTtl;
+
+    // guarded by this: keys whose lease the node holds, by the time of their last renewal in nanoseconds
+    private final Map<String, Long> owned = new HashMap<>();
+    private boolean stopped;
+
+    public ShardCoordinator(FeedPoller feedPoller, List<EndpointConfig> endpointConfigs, CoordinationStore store, String nodeId, long leaseTtlInMilliseconds) {
+        this.feedPoller = feedPoller;
+        this.endpointConfigs = endpointConfigs;
+        this.store = store;
+        this.nodeId = nodeId;
+        this.leaseTtl = leaseTtlInMilliseconds;
+    }
+
+    /**
+     * @return Time between two runs, a third of the lease ttl so a lease survives one failed renewal
+     */
+    public long getPeriod() {
+        return Math.max(1, leaseTtl / 3);
+    }
+
+    @Override
+    public synchronized void run() {
+        if (stopped) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        try {
+            store.heartbeat(nodeId, leaseTtl);
+
+            Set<String> nodes = new HashSet<>(store.getLiveNodes());
+            nodes.add(nodeId);
+            ConsistentHashRing ring = new ConsistentHashRing(nodes);
+
+            for (EndpointConfig endpointConfig : endpointConfigs) {
+                String key = endpointConfig.getKey();
+                boolean assigned = nodeId.equals(ring.nodeOf(key));
+
+                if (owned.containsKey(key)) {
+                    if (assigned) {
+                        renew(key, now);
+                    } else {
+                        handOver(key);
+                    }
+                } else if (assigned) {
+                    take(endpointConfig, now);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Node [{}] is not able to reach the coordination store.", nodeId, e);
+        } finally {
+            dropStale(now);
+        }
+    }
+
+    private void take(EndpointConfig endpointConfig, long now) throws IOException {
+        Lease lease = store.acquire(endpointConfig.getKey(), nodeId, leaseTtl);
+        if (lease == null) {
+            // the previous owner has not handed it over yet
+            return;
+        }
+
+        feedPoller.addEndpoint(endpointConfig, lease.getPosition());
+        owned.put(endpointConfig.getKey(), now);
+        LOG.info("Node [{}] takes over endpoint [{}].", nodeId, endpointConfig.getKey());
+    }
+
+    private void renew(String key, long now) throws IOException {
+        String position = feedPoller.getResult(key).getLastUnreadUri();
+
+        if (store.renew(key, nodeId, position, leaseTtl)) {
+            owned.put(key, now);
+        } else {
+            LOG.warn("Node [{}] has lost the lease of endpoint [{}] and stops polling it.", nodeId, key);
+            feedPoller.removeEndpoint(key);
+            owned.remove(key);
+        }
+    }
+
+    private void handOver(String key) throws IOException {
+        PollingResult result = feedPoller.removeEndpoint(key);
+        owned.remove(key);
+        store.release(key, nodeId, result.getLastUnreadUri());
+        LOG.info("Node [{}] hands endpoint [{}] over at {}.", nodeId, key, result.getLastUnreadUri());
+    }
+
+    private void dropStale(long now) {
+        long stale = TimeUnit.MILLISECONDS.toNanos(leaseTtl - getPeriod());
+
+        for (Iterator<Map.Entry<String, Long>> it = owned.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Long> entry = it.next();
+            if (now - entry.getValue() >= stale) {
+                LOG.warn("Node [{}] has not renewed the lease of endpoint [{}] in time and stops polling it.", nodeId, entry.getKey());
+                feedPoller.removeEndpoint(entry.getKey());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Ends coordination. A run in progress finishes first, and endpoints keep being polled until the poller stops them.
+     */
+    public synchronized void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Releases every lease the node holds with the final position of its endpoint, and withdraws the node.
+     *
+     * @param positions Uri every endpoint reads next, by key
+     */
+    public synchronized void leave(Map<String, String> positions) {
+        stopped = true;
+
+        for (String key : new ArrayList<>(owned.keySet())) {
+            try {
+                store.release(key, nodeId, positions.get(key));
+            } catch (IOException e) {
+                LOG.warn("Node [{}] is not able to release endpoint [{}]. It moves once the lease expires.", nodeId, key, e);
+            }
+        }
+        owned.clear();
+
+        try {
+            store.leave(nodeId);
+        } catch (IOException e) {
+            LOG.warn("Node [{}] is not able to leave. It is dropped once its heartbeat expires.", nodeId, e);
+        }
+    }
+}
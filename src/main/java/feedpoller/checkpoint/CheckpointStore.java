@@ -0,0 +1,22 @@
+package feedpoller.checkpoint;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+public interface CheckpointStore extends Closeable {
+    /**
+     * Records the uri an endpoint will read next. It is called on every advance, so it must be cheap.
+     */
+    void record(String key, String nextUri) throws IOException;
+
+    /**
+     * @return Last recorded uri of every endpoint, by key
+     */
+    Map<String, String> load() throws IOException;
+
+    /**
+     * Makes recorded positions durable on disk.
+     */
+    void flush() throws IOException;
+}
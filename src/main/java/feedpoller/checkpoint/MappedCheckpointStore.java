@@ -0,0 +1,194 @@
+package feedpoller.checkpoint;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Appends every position to a memory-mapped log, so recording one costs a copy into the page cache and no system call.
+ * Positions survive a crash of the process. Only positions recorded since the last {@link #flush()} can be lost if the machine goes down.
+ * <p>
+ * Each record is {@code [length][crc32][key length][key][uri]}. Reading stops at the first record that is empty or does not match its checksum,
+ * which is where a write was torn. When the log is full, the latest position of every endpoint is written to a new log that atomically replaces it.
+ */
+public class MappedCheckpointStore implements CheckpointStore {
+    private static final Logger LOG = LoggerFactory.getLogger(MappedCheckpointStore.class);
+
+    public static final int DEFAULT_LOG_SIZE = 1 << 20;
+
+    private static final int HEADER_SIZE = 8;
+
+    private final Path file;
+    private final Path compacted;
+    private final int minLogSize;
+
+    // guarded by this
+    private final Map<String, String> positions = new LinkedHashMap<>();
+    private MappedByteBuffer log;
+    private boolean closed;
+
+    public MappedCheckpointStore(Path file) throws IOException {
+        this(file, DEFAULT_LOG_SIZE);
+    }
+
+    public MappedCheckpointStore(Path file, int logSize) throws IOException {
+        if (logSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("logSize must be greater than " + HEADER_SIZE);
+        }
+
+        this.file = file;
+        this.compacted = file.resolveSibling(file.getFileName() + ".compact");
+        this.minLogSize = logSize;
+
+        if (Files.exists(file)) {
+            replay();
+        }
+        // starts from a clean log, without whatever a torn write left behind
+        compact();
+    }
+
+    private void replay() throws IOException {
+        ByteBuffer existing = ByteBuffer.wrap(Files.readAllBytes(file));
+
+        int records = 0;
+        while (existing.remaining() >= HEADER_SIZE) {
+            int start = existing.position();
+            int length = existing.getInt();
+            int crc = existing.getInt();
+
+            if (length <= 4 || length > existing.remaining()) {
+                existing.position(start);
+                break;
+            }
+
+            byte[] payload = new byte[length];
+            existing.get(payload);
+            if (crc != crcOf(payload)) {
+                existing.position(start);
+                break;
+            }
+
+            try {
+                ByteBuffer record = ByteBuffer.wrap(payload);
+                byte[] key = new byte[record.getInt()];
+                record.get(key);
+                byte[] uri = new byte[record.remaining()];
+                record.get(uri);
+
+                positions.put(new String(key, StandardCharsets.UTF_8), new String(uri, StandardCharsets.UTF_8));
+                records++;
+            } catch (BufferUnderflowException | NegativeArraySizeException e) {
+                existing.position(start);
+                break;
+            }
+        }
+
+        LOG.info("Checkpoint store replays {} records of {} endpoints from {}.", records, positions.size(), file);
+    }
+
+    private static int crcOf(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] encode(String key, String uri) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] uriBytes = uri.getBytes(StandardCharsets.UTF_8);
+
+        byte[] payload = new byte[4 + keyBytes.length + uriBytes.length];
+        ByteBuffer.wrap(payload).putInt(keyBytes.length).put(keyBytes).put(uriBytes);
+        return payload;
+    }
+
+    private static void append(ByteBuffer log, byte[] payload) {
+        log.putInt(payload.length).putInt(crcOf(payload)).put(payload);
+    }
+
+    @Override
+    public synchronized void record(String key, String nextUri) throws IOException {
+        if (closed) {
+            throw new IOException("Checkpoint store " + file + " is closed");
+        }
+
+        positions.put(key, nextUri);
+
+        byte[] payload = encode(key, nextUri);
+        if (log.remaining() < HEADER_SIZE + payload.length) {
+            // the new position is already part of the compacted log
+            compact();
+            return;
+        }
+        append(log, payload);
+    }
+
+    @Override
+    public synchronized Map<String, String> load() {
+        return new HashMap<>(positions);
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (!closed) {
+            log.force();
+        }
+    }
+
+    /**
+     * Writes the latest positions to a new log and swaps it in. A crash before the swap leaves the old log in place.
+     */
+    private void compact() throws IOException {
+        Map<String, byte[]> payloads = new LinkedHashMap<>();
+        long used = 0;
+        for (Map.Entry<String, String> position : positions.entrySet()) {
+            byte[] payload = encode(position.getKey(), position.getValue());
+            payloads.put(position.getKey(), payload);
+            used += HEADER_SIZE + payload.length;
+        }
+
+        // leaves at least as much room for new records as the compacted ones take
+        long size = Math.max(minLogSize, 2 * used);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Checkpoints of " + positions.size() + " endpoints do not fit in one log");
+        }
+
+        try (FileChannel channel = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer fresh = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            for (byte[] payload : payloads.values()) {
+                append(fresh, payload);
+            }
+            fresh.force();
+
+            Files.move(compacted, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            // the mapping stays valid after the channel is closed and the file is renamed
+            log = fresh;
+        }
+
+        LOG.debug("Checkpoint store compacts {} positions into {} bytes.", positions.size(), used);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        log.force();
+        closed = true;
+    }
+}
@@ -2,6 +2,7 @@ package feedpoller.domain;
 
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.With;
 
 @Getter
 @AllArgsConstructor
@@ -9,4 +10,34 @@ public final class EndpointConfig {
     private final String key;
     private final String start;
     private final long periodInMilliseconds;
-}
\ No newline at end of file
+    // the period adapts to feed activity between these bounds, it is fixed if they are equal
+    private final long minPeriodInMilliseconds;
+    private final long maxPeriodInMilliseconds;
+    // pages read back to back while the feed keeps advancing, 1 disables draining
+    @With
+    private final int maxBurstPages;
+    // time a burst may take, 0 for no limit
+    @With
+    private final long burstBudgetInMilliseconds;
+    @With
+    private final Priority priority;
+    // time after a poll is due by which it must start, 0 for none
+    @With
+    private final long deadlineInMilliseconds;
+    // after a failure, the period is how long a long-poll or stream waits before it connects again
+    @With
+    private final EndpointMode mode;
+
+    public EndpointConfig(String key, String start, long periodInMilliseconds) {
+        this(key, start, periodInMilliseconds, periodInMilliseconds, periodInMilliseconds);
+    }
+
+    public EndpointConfig(String key, String start, long periodInMilliseconds, long minPeriodInMilliseconds, long maxPeriodInMilliseconds) {
+        this(key, start, periodInMilliseconds, minPeriodInMilliseconds, maxPeriodInMilliseconds, 1, 0L);
+    }
+
+    public EndpointConfig(String key, String start, long periodInMilliseconds, long minPeriodInMilliseconds, long maxPeriodInMilliseconds,
+                          int maxBurstPages, long burstBudgetInMilliseconds) {
+        this(key, start, periodInMilliseconds, minPeriodInMilliseconds, maxPeriodInMilliseconds, maxBurstPages, burstBudgetInMilliseconds, Priority.NORMAL, 0L, EndpointMode.POLL);
+    }
+}
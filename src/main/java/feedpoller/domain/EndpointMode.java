@@ -0,0 +1,25 @@
+package feedpoller.domain;
+
+/**
+ * How an endpoint is read.
+ */
+public enum EndpointMode {
+    /**
+     * A GET every period.
+     */
+    POLL,
+    /**
+     * A GET the server holds until there is something new. The next one is sent as soon as it returns, unless it
+     * returned quickly without news, which backs off.
+     * It keeps its host limits and poll slot while the server holds it, but its requests are not coalesced.
+     */
+    LONG_POLL,
+    /**
+     * A GET whose body stays open and delivers events, either as server-sent events or one per line.
+     * Each event goes to the handler as it arrives, and the stream is opened again when it ends.
+     * <p>
+     * An open stream holds a connection and a virtual thread that reads it. Neither counts against the workers, the
+     * concurrent poll cap or the slots of its host, though each connect takes a token of its host. Requests are not coalesced, as a coalesced body is read to its end first.
+     */
+    STREAM
+}
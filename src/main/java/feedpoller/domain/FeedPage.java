@@ -0,0 +1,12 @@
+package feedpoller.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@AllArgsConstructor
+@Getter
+public class FeedPage {
+    private String key;
+    private String uri;
+    private String page;
+}
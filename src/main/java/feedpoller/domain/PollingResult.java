@@ -9,6 +9,8 @@ public class PollingResult {
     private String key;
     private String firstStartedUri;
     private String lastUnreadUri;
+    private long receivedBytes;
+    private long decodedBytes;
 
     // equals and hashcode
 }
\ No newline at end of file
@@ -0,0 +1,11 @@
+package feedpoller.domain;
+
+/**
+ * Priority class of an endpoint, most important first. When polls pile up, higher classes are dispatched first,
+ * and late polls of {@link #BULK} endpoints are skipped rather than run.
+ */
+public enum Priority {
+    CRITICAL,
+    NORMAL,
+    BULK
+}
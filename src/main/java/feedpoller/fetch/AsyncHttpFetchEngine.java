@@ -0,0 +1,142 @@
+package feedpoller.fetch;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking engine on top of the JDK {@link HttpClient}. A small pool of I/O threads drives every request,
+ * HTTP/1.1 connections are kept alive and reused, and each route (scheme, host and port) is capped at
+ * {@code maxConnectionsPerRoute} connections in use. A connection counts as in use until its response body is closed.
+ */
+public class AsyncHttpFetchEngine implements FetchEngine {
+    public static final int DEFAULT_IO_THREADS = 2;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+    public static final long DEFAULT_TIMEOUT = 30000L;
+
+    private final ExecutorService ioExecutor;
+    private final HttpClient httpClient;
+    private final int maxConnectionsPerRoute;
+    private final Duration requestTimeout;
+    private final ConcurrentMap<String, RouteLimiter> routes = new ConcurrentHashMap<>();
+
+    public AsyncHttpFetchEngine() {
+        this(DEFAULT_IO_THREADS, DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_TIMEOUT);
+    }
+
+    public AsyncHttpFetchEngine(int ioThreads, int maxConnectionsPerRoute, long timeoutInMilliseconds) {
+        if (ioThreads < 1 || maxConnectionsPerRoute < 1) {
+            throw new IllegalArgumentException("ioThreads and maxConnectionsPerRoute must be at least 1");
+        }
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.ioExecutor = Executors.newFixedThreadPool(ioThreads, runnable -> {
+            Thread thread = new Thread(runnable, "feedpoller-io-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.requestTimeout = Duration.ofMillis(timeoutInMilliseconds);
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(requestTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(ioExecutor)
+                .build();
+    }
+
+    @Override
+    public CompletableFuture<FetchResponse> fetch(final FetchRequest request) {
+        final URI uri;
+        try {
+            uri = URI.create(request.getUri());
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return routeOf(uri).acquire().thenCompose(permit -> send(uri, request, permit));
+    }
+
+    private CompletableFuture<FetchResponse> send(URI uri, final FetchRequest request, final RouteLimiter.Permit permit) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(requestTimeout)
+                .header("Accept", request.getAcceptType())
+                .GET();
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        HttpRequest httpRequest = builder.build();
+
+        CompletableFuture<FetchResponse> response;
+        try {
+            response = httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofInputStream())
+                    .thenApply(httpResponse -> toFetchResponse(request, httpResponse, permit));
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+
+        return response.whenComplete((fetchResponse, failure) -> {
+            if (failure != null) {
+                permit.release();
+            }
+        });
+    }
+
+    private FetchResponse toFetchResponse(FetchRequest request, HttpResponse<InputStream> httpResponse, final RouteLimiter.Permit permit) {
+        // the connection stays in use until the body is drained or closed
+        InputStream body = new FilterInputStream(httpResponse.body()) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    permit.release();
+                }
+            }
+        };
+
+        if (FetchResponse.isUnexpected(httpResponse.statusCode())) {
+            try {
+                body.close();
+            } catch (IOException e) {
+                // the status is what the caller needs to know about
+            }
+            throw new CompletionException(new UnexpectedStatusException(request.getUri(), httpResponse.statusCode()));
+        }
+
+        Map<String, String> headers = FetchResponse.headers();
+        for (Map.Entry<String, List<String>> header : httpResponse.headers().map().entrySet()) {
+            if (!header.getValue().isEmpty()) {
+                headers.put(header.getKey(), header.getValue().get(0));
+            }
+        }
+
+        return new FetchResponse(httpResponse.statusCode(), headers, body, FetchResponse.charsetOf(headers.get("Content-Type")));
+    }
+
+    RouteLimiter routeOf(URI uri) {
+        String route = uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+
+        return routes.computeIfAbsent(route, key -> new RouteLimiter(maxConnectionsPerRoute));
+    }
+
+    @Override
+    public void close() {
+        httpClient.close();
+        ioExecutor.shutdown();
+    }
+}
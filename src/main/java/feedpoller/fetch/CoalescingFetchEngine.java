@@ -0,0 +1,132 @@
+package feedpoller.fetch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps another engine so that requests for the same uri, accept type and headers share one request while it is in flight.
+ * The body is read into memory once and every caller gets a copy of its own. With a ttl the response is also reused
+ * by requests made shortly after it arrived. Failures are shared with the callers already waiting, but never reused.
+ * <p>
+ * Bodies are read on the given executor, since reading may block.
+ */
+public class CoalescingFetchEngine implements FetchEngine {
+    private final FetchEngine delegate;
+    private final long ttl;
+    private final Executor executor;
+    private final ConcurrentMap<String, CompletableFuture<Buffered>> flights = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @param ttlInMilliseconds Time a response is reused after it arrived, 0 to share requests in flight only
+     */
+    public CoalescingFetchEngine(FetchEngine delegate, long ttlInMilliseconds, Executor executor) {
+        this.delegate = delegate;
+        this.ttl = ttlInMilliseconds;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<FetchResponse> fetch(FetchRequest request) {
+        String key = keyOf(request);
+
+        CompletableFuture<Buffered> flight = new CompletableFuture<>();
+        CompletableFuture<Buffered> existing = flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing.thenApply(Buffered::toResponse);
+        }
+
+        send(key, request, flight);
+        return flight.thenApply(Buffered::toResponse);
+    }
+
+    private void send(final String key, FetchRequest request, final CompletableFuture<Buffered> flight) {
+        CompletableFuture<FetchResponse> response;
+        try {
+            response = delegate.fetch(request);
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+
+        response.thenApplyAsync(Buffered::of, executor).whenComplete((buffered, failure) -> {
+            if (failure != null || ttl <= 0) {
+                flights.remove(key, flight);
+            } else {
+                CompletableFuture.delayedExecutor(ttl, TimeUnit.MILLISECONDS).execute(() -> flights.remove(key, flight));
+            }
+
+            if (failure != null) {
+                flight.completeExceptionally(failure);
+            } else {
+                flight.complete(buffered);
+            }
+        });
+    }
+
+    private static String keyOf(FetchRequest request) {
+        // conditional headers differ between endpoints that read the same uri from different validators
+        return request.getUri() + '\n' + request.getAcceptType() + '\n' + new TreeMap<>(request.getHeaders());
+    }
+
+    /**
+     * @return Requests that were served by another request in flight or by a cached response
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    @Override
+    public CompletableFuture<Void> whenReady(String uri) {
+        return delegate.whenReady(uri);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    private static final class Buffered {
+        private final int status;
+        private final Map<String, String> headers;
+        private final byte[] body;
+        private final Charset charset;
+
+        private Buffered(int status, Map<String, String> headers, byte[] body, Charset charset) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+            this.charset = charset;
+        }
+
+        static Buffered of(FetchResponse response) {
+            try (InputStream in = response.getBody()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                return new Buffered(response.getStatus(), response.getHeaders(), out.toByteArray(), response.getCharset());
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }
+
+        FetchResponse toResponse() {
+            return new FetchResponse(status, headers, new ByteArrayInputStream(body), charset);
+        }
+    }
+}
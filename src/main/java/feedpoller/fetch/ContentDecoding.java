@@ -0,0 +1,70 @@
+package feedpoller.fetch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes gzip and deflate response bodies while they are read.
+ */
+public final class ContentDecoding {
+    public static final String ACCEPT_ENCODING = "Accept-Encoding";
+    public static final String CONTENT_ENCODING = "Content-Encoding";
+    public static final String SUPPORTED_ENCODINGS = "gzip, deflate";
+
+    private ContentDecoding() {
+    }
+
+    /**
+     * @param response
+     * @param receivedBytes Counts bytes as they come off the wire
+     * @param decodedBytes  Counts bytes as they are handed to the reader
+     * @return Response whose body is decoded on the fly
+     */
+    public static FetchResponse decode(FetchResponse response, AtomicLong receivedBytes, AtomicLong decodedBytes) throws IOException {
+        InputStream received = new CountingInputStream(response.getBody(), receivedBytes);
+        InputStream decoded;
+
+        String encoding = response.getHeader(CONTENT_ENCODING);
+        if (encoding == null || encoding.trim().isEmpty() || encoding.trim().equalsIgnoreCase("identity")) {
+            decoded = received;
+        } else if (encoding.trim().equalsIgnoreCase("gzip") || encoding.trim().equalsIgnoreCase("x-gzip")) {
+            decoded = response.isNotModified() ? received : new GZIPInputStream(received);
+        } else if (encoding.trim().equalsIgnoreCase("deflate")) {
+            decoded = response.isNotModified() ? received : inflate(received);
+        } else {
+            response.close();
+            throw new IOException("Unsupported Content-Encoding: " + encoding);
+        }
+
+        return new FetchResponse(response.getStatus(), response.getHeaders(), new CountingInputStream(decoded, decodedBytes), response.getCharset());
+    }
+
+    /**
+     * "deflate" is supposed to be zlib-wrapped, but some servers send a raw deflate stream. The zlib header tells them apart.
+     */
+    private static InputStream inflate(InputStream in) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(in, 2);
+        byte[] header = new byte[2];
+
+        int read = 0;
+        while (read < 2) {
+            int n = pushback.read(header, read, 2 - read);
+            if (n == -1) {
+                break;
+            }
+            read += n;
+        }
+        pushback.unread(header, 0, read);
+
+        boolean zlib = read == 2
+                && (header[0] & 0x0f) == 8
+                && (((header[0] & 0xff) << 8) | (header[1] & 0xff)) % 31 == 0;
+
+        return new InflaterInputStream(pushback, new Inflater(!zlib));
+    }
+}
@@ -0,0 +1,65 @@
+package feedpoller.fetch;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hash of the last page read from one uri, so the same body read again can be told apart from a new one
+ * without validators from the server.
+ */
+@Getter
+@AllArgsConstructor
+public final class ContentDigest {
+    public static final String ALGORITHM = "SHA-256";
+
+    private final String uri;
+    private final byte[] digest;
+
+    /**
+     * Reads the whole body, hashing it as it streams by, and closes the response.
+     *
+     * @return Digest of the body, and a response that reads the same body again
+     */
+    public static Digested read(String uri, FetchResponse response) throws IOException {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is required of every JVM", e);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new DigestInputStream(response.getBody(), messageDigest)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+
+        FetchResponse replay = new FetchResponse(response.getStatus(), response.getHeaders(), new ByteArrayInputStream(out.toByteArray()), response.getCharset());
+        return new Digested(new ContentDigest(uri, messageDigest.digest()), replay);
+    }
+
+    /**
+     * @return Whether the other digest is of the same body read from the same uri
+     */
+    public boolean matches(ContentDigest other) {
+        return other != null && uri.equals(other.uri) && MessageDigest.isEqual(digest, other.digest);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static final class Digested {
+        private final ContentDigest digest;
+        private final FetchResponse response;
+    }
+}
@@ -0,0 +1,122 @@
+package feedpoller.fetch;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * Splits a response body that stays open into events as they arrive. A {@code text/event-stream} body is read as
+ * server-sent events, where {@code data} lines up to a blank line make one event. Any other body is read as one event per non-empty line,
+ * e.g. newline-delimited JSON sent in chunks.
+ */
+public class EventStreamReader implements Closeable {
+    public static final String EVENT_STREAM = "text/event-stream";
+    public static final String LAST_EVENT_ID = "Last-Event-ID";
+
+    private final BufferedReader reader;
+    private final boolean serverSentEvents;
+
+    public EventStreamReader(InputStream body, Charset charset, boolean serverSentEvents) {
+        this.reader = new BufferedReader(new InputStreamReader(body, charset));
+        this.serverSentEvents = serverSentEvents;
+    }
+
+    /**
+     * @return Whether the response announces server-sent events
+     */
+    public static boolean isEventStream(FetchResponse response) {
+        String contentType = response.getHeader("Content-Type");
+        return contentType != null && contentType.trim().toLowerCase(Locale.ROOT).startsWith(EVENT_STREAM);
+    }
+
+    /**
+     * Blocks until the next event is complete.
+     *
+     * @return Next event, null once the stream ends. An event of server-sent events may carry only an id or a retry, without data.
+     */
+    public Event next() throws IOException {
+        return serverSentEvents ? nextServerSentEvent() : nextLine();
+    }
+
+    private Event nextLine() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.trim().isEmpty()) {
+                return new Event(line, null, -1L);
+            }
+        }
+        return null;
+    }
+
+    private Event nextServerSentEvent() throws IOException {
+        StringBuilder data = null;
+        String id = null;
+        long retry = -1L;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                if (data != null || id != null || retry >= 0) {
+                    return new Event(data == null ? null : data.toString(), id, retry);
+                }
+                continue;
+            }
+
+            if (line.startsWith(":")) {
+                // comment, often sent to keep the connection alive
+                continue;
+            }
+
+            int colon = line.indexOf(':');
+            String field = colon < 0 ? line : line.substring(0, colon);
+            String value = colon < 0 ? "" : line.substring(colon + 1);
+            if (value.startsWith(" ")) {
+                value = value.substring(1);
+            }
+
+            switch (field) {
+                case "data":
+                    data = data == null ? new StringBuilder(value) : data.append('\n').append(value);
+                    break;
+                case "id":
+                    if (value.indexOf('\0') < 0) {
+                        id = value;
+                    }
+                    break;
+                case "retry":
+                    if (!value.isEmpty() && value.length() < 19 && value.chars().allMatch(Character::isDigit)) {
+                        retry = Long.parseLong(value);
+                    }
+                    break;
+                default:
+                    // event names and unknown fields do not change what the handler gets
+                    break;
+            }
+        }
+
+        // an event cut off by the end of the stream is dropped, as it may be incomplete
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static final class Event {
+        // null if the event only moves the id or the retry
+        private final String data;
+        private final String id;
+        // reconnect delay in milliseconds asked for by the server, -1 if none
+        private final long retry;
+    }
+}
@@ -0,0 +1,21 @@
+package feedpoller.fetch;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface FetchEngine {
+    /**
+     * @param request
+     * @return Response of the request. Failures, including unexpected status codes, complete the future exceptionally.
+     */
+    CompletableFuture<FetchResponse> fetch(FetchRequest request);
+
+    /**
+     * @return Stage that completes once a request to the uri would be sent without waiting. It reserves nothing, so the
+     * request may still have to wait when others got there first.
+     */
+    default CompletableFuture<Void> whenReady(String uri) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    void close();
+}
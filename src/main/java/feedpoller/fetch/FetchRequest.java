@@ -0,0 +1,19 @@
+package feedpoller.fetch;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.Map;
+
+@Getter
+@AllArgsConstructor
+public final class FetchRequest {
+    private final String uri;
+    private final String acceptType;
+    private final Map<String, String> headers;
+
+    public FetchRequest(String uri, String acceptType) {
+        this(uri, acceptType, Collections.<String, String>emptyMap());
+    }
+}
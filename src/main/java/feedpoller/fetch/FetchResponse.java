@@ -0,0 +1,86 @@
+package feedpoller.fetch;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A response whose body is still on the wire. It has to be closed, either directly or by {@link #readBody()},
+ * to give the connection back to the engine.
+ */
+@Getter
+@AllArgsConstructor
+public final class FetchResponse implements Closeable {
+    public static final int NOT_MODIFIED = 304;
+
+    private final int status;
+    private final Map<String, String> headers;
+    private final InputStream body;
+    private final Charset charset;
+
+    public FetchResponse(int status, InputStream body, Charset charset) {
+        this(status, Collections.<String, String>emptyMap(), body, charset);
+    }
+
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    public boolean isNotModified() {
+        return status == NOT_MODIFIED;
+    }
+
+    /**
+     * Reads the whole body into memory and closes the response.
+     */
+    public String readBody() throws IOException {
+        try (InputStream in = body) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString(charset);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        body.close();
+    }
+
+    static Map<String, String> headers() {
+        return new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    }
+
+    static boolean isUnexpected(int status) {
+        return status >= 300 && status != NOT_MODIFIED;
+    }
+
+    static Charset charsetOf(String contentType) {
+        if (contentType != null) {
+            for (String parameter : contentType.split(";")) {
+                String[] pair = parameter.trim().split("=", 2);
+                if (pair.length == 2 && pair[0].trim().equalsIgnoreCase("charset")) {
+                    try {
+                        return Charset.forName(pair[1].trim().replace("\"", ""));
+                    } catch (IllegalArgumentException e) {
+                        // unknown charset, fall through to the default
+                    }
+                }
+            }
+        }
+
+        return StandardCharsets.UTF_8;
+    }
+}
@@ -0,0 +1,236 @@
+package feedpoller.fetch;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Wraps another engine and groups requests by the authority (host and port) of their uri. Each group is capped at
+ * {@link HostLimits#getMaxConcurrency()} requests in flight and paced by a token bucket of {@link HostLimits#getRequestsPerSecond()}.
+ * A request over either limit is deferred until it fits, never dropped. A 429 response empties the bucket of its host.
+ * <p>
+ * Deferred requests are sent on the given executor, since the wrapped engine may block. Once the executor rejects them,
+ * e.g. after shutdown, they fail with the {@link RejectedExecutionException} and give their slot back.
+ * <p>
+ * {@link #whenReady(String)} tells when a host would take a request, so a caller can hold off whatever it would keep
+ * while a request is deferred.
+ */
+public class HostLimitedFetchEngine implements FetchEngine {
+    public static final int TOO_MANY_REQUESTS = 429;
+
+    private final FetchEngine delegate;
+    private final HostLimits defaultLimits;
+    private final Map<String, HostLimits> hostLimits;
+    private final Executor executor;
+    private final ConcurrentMap<String, Host> hosts = new ConcurrentHashMap<>();
+    private final AtomicLong deferred = new AtomicLong();
+
+    /**
+     * @param defaultLimits Limits of every host not in {@code hostLimits}, null to leave them unlimited
+     * @param hostLimits Limits by authority, e.g. {@code api.github.com} or {@code localhost:8080}
+     */
+    public HostLimitedFetchEngine(FetchEngine delegate, HostLimits defaultLimits, Map<String, HostLimits> hostLimits, Executor executor) {
+        this.delegate = delegate;
+        this.defaultLimits = defaultLimits;
+        this.hostLimits = hostLimits;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<FetchResponse> fetch(final FetchRequest request) {
+        final Host host;
+        try {
+            host = hostOf(request.getUri());
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        if (host == null) {
+            return delegate.fetch(request);
+        }
+
+        CompletableFuture<RouteLimiter.Permit> permit = host.concurrency.acquire();
+        if (permit.isDone()) {
+            return permit.thenCompose(acquired -> pace(host, request, acquired));
+        }
+
+        deferred.incrementAndGet();
+        // the permit is handed over by whichever request releases it, which must not go on to send this one
+        return permit.thenCompose(acquired -> onExecutor(acquired, () -> pace(host, request, acquired)));
+    }
+
+    /**
+     * @return View of this engine that paces requests by the tokens of their host but takes none of its slots, for
+     * responses that stay open for long, such as streams, which would otherwise hold a slot for as long as they last
+     */
+    public FetchEngine paceOnly() {
+        return new FetchEngine() {
+            @Override
+            public CompletableFuture<FetchResponse> fetch(FetchRequest request) {
+                final Host host;
+                try {
+                    host = hostOf(request.getUri());
+                } catch (IllegalArgumentException e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+
+                return host == null ? delegate.fetch(request) : pace(host, request, null);
+            }
+
+            @Override
+            public void close() {
+                HostLimitedFetchEngine.this.close();
+            }
+        };
+    }
+
+    /**
+     * @return Stage that completes once the host of the uri has a free slot and a token, at once for an unlimited host
+     */
+    @Override
+    public CompletableFuture<Void> whenReady(String uri) {
+        final Host host;
+        try {
+            host = hostOf(uri);
+        } catch (IllegalArgumentException e) {
+            // fetch fails it right away
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (host == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return host.concurrency.whenFree().thenCompose(free -> {
+            long wait = host.rate.untilAvailable(System.nanoTime());
+            if (wait == 0) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS, Runnable::run));
+        });
+    }
+
+    /**
+     * @param permit Slot of the host the request holds, null if it takes none
+     */
+    private CompletableFuture<FetchResponse> pace(final Host host, final FetchRequest request, final RouteLimiter.Permit permit) {
+        long wait = host.rate.reserve(System.nanoTime());
+        if (wait == 0) {
+            return send(host, request, permit);
+        }
+
+        deferred.incrementAndGet();
+        // the timer thread only hands the request over, so a rejection by the executor is seen here rather than lost on the timer
+        Executor later = CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS, Runnable::run);
+        return CompletableFuture.supplyAsync(() -> onExecutor(permit, () -> send(host, request, permit)), later).thenCompose(sending -> sending);
+    }
+
+    private CompletableFuture<FetchResponse> onExecutor(final RouteLimiter.Permit permit, final Supplier<CompletableFuture<FetchResponse>> step) {
+        final CompletableFuture<FetchResponse> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> step.get().whenComplete((response, failure) -> {
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                } else {
+                    result.complete(response);
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            release(permit);
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private CompletableFuture<FetchResponse> send(final Host host, FetchRequest request, final RouteLimiter.Permit permit) {
+        CompletableFuture<FetchResponse> response;
+        try {
+            response = delegate.fetch(request);
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+
+        return response.handle((fetched, failure) -> {
+            if (failure != null) {
+                release(permit);
+
+                Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                if (cause instanceof UnexpectedStatusException && ((UnexpectedStatusException) cause).getStatus() == TOO_MANY_REQUESTS) {
+                    host.rate.drain(System.nanoTime());
+                }
+                throw failure instanceof CompletionException ? (CompletionException) failure : new CompletionException(failure);
+            }
+
+            return permit == null ? fetched : held(fetched, permit);
+        });
+    }
+
+    private static void release(RouteLimiter.Permit permit) {
+        if (permit != null) {
+            permit.release();
+        }
+    }
+
+    private static FetchResponse held(FetchResponse response, final RouteLimiter.Permit permit) {
+        // the request stays in flight until its body is drained or closed
+        FilterInputStream body = new FilterInputStream(response.getBody()) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    permit.release();
+                }
+            }
+        };
+
+        return new FetchResponse(response.getStatus(), response.getHeaders(), body, response.getCharset());
+    }
+
+    /**
+     * @return Limits of the host of the uri, null if it is unlimited
+     */
+    Host hostOf(String uri) {
+        String authority = URI.create(uri).getRawAuthority();
+        if (authority == null) {
+            throw new IllegalArgumentException("Uri " + uri + " has no host");
+        }
+
+        String key = authority.substring(authority.lastIndexOf('@') + 1).toLowerCase(Locale.ROOT);
+        HostLimits limits = hostLimits.getOrDefault(key, defaultLimits);
+        return limits == null ? null : hosts.computeIfAbsent(key, k -> new Host(limits));
+    }
+
+    /**
+     * @return Requests that waited for a free slot or a token of their host
+     */
+    public long getDeferred() {
+        return deferred.get();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    static class Host {
+        final RouteLimiter concurrency;
+        final TokenBucket rate;
+
+        Host(HostLimits limits) {
+            this.concurrency = new RouteLimiter(limits.getMaxConcurrency());
+            this.rate = new TokenBucket(limits.getRequestsPerSecond(), limits.getBurst());
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package feedpoller.fetch;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Limits shared by every endpoint on one host, see {@link HostLimitedFetchEngine}.
+ */
+@Getter
+@AllArgsConstructor
+public final class HostLimits {
+    // requests in flight at once, a request is in flight until its body is closed
+    private final int maxConcurrency;
+    // requests started per second on average
+    private final double requestsPerSecond;
+    // requests that may start back to back after the host has been idle
+    private final int burst;
+
+    public HostLimits(int maxConcurrency, double requestsPerSecond) {
+        this(maxConcurrency, requestsPerSecond, 1);
+    }
+}
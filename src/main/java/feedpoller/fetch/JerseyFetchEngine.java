@@ -0,0 +1,64 @@
+package feedpoller.fetch;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.WebResource;
+import lombok.Getter;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Blocking engine on top of a Jersey client. The returned future is already complete when {@link #fetch} returns.
+ */
+public class JerseyFetchEngine implements FetchEngine {
+    @Getter
+    private final Client client;
+
+    public JerseyFetchEngine(Client client) {
+        this.client = client;
+    }
+
+    @Override
+    public CompletableFuture<FetchResponse> fetch(FetchRequest request) {
+        try {
+            WebResource.Builder builder = client.resource(request.getUri()).accept(request.getAcceptType());
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                builder.header(header.getKey(), header.getValue());
+            }
+
+            ClientResponse response = builder.get(ClientResponse.class);
+
+            if (FetchResponse.isUnexpected(response.getStatus())) {
+                response.close();
+                return CompletableFuture.failedFuture(new UnexpectedStatusException(request.getUri(), response.getStatus()));
+            }
+
+            MediaType type = response.getType();
+            String contentType = type == null ? null : type.toString();
+
+            return CompletableFuture.completedFuture(new FetchResponse(response.getStatus(), headersOf(response), response.getEntityInputStream(), FetchResponse.charsetOf(contentType)));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static Map<String, String> headersOf(ClientResponse response) {
+        Map<String, String> headers = FetchResponse.headers();
+
+        MultivaluedMap<String, String> received = response.getHeaders();
+        if (received != null) {
+            for (String name : received.keySet()) {
+                headers.put(name, received.getFirst(name));
+            }
+        }
+        return headers;
+    }
+
+    @Override
+    public void close() {
+        client.destroy();
+    }
+}
@@ -0,0 +1,103 @@
+package feedpoller.fetch;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caps the number of connections in use for one route. Callers over the cap wait in a queue and are
+ * handed a permit by whichever caller releases next, so no thread ever blocks on a permit.
+ */
+class RouteLimiter {
+    private final int maxConnections;
+    private final AtomicInteger active = new AtomicInteger();
+    private final Queue<CompletableFuture<Permit>> waiting = new ConcurrentLinkedQueue<>();
+    private final Queue<CompletableFuture<Void>> watching = new ConcurrentLinkedQueue<>();
+
+    RouteLimiter(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    CompletableFuture<Permit> acquire() {
+        CompletableFuture<Permit> permit = new CompletableFuture<>();
+        waiting.add(permit);
+
+        drain();
+        return permit;
+    }
+
+    /**
+     * @return Stage that completes once a permit would be handed out at once. It takes none, and each released permit
+     * wakes about one watcher, so watchers do not all rush in for the same permit.
+     */
+    CompletableFuture<Void> whenFree() {
+        if (free() > 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> watcher = new CompletableFuture<>();
+        watching.add(watcher);
+
+        // a permit released between the check and the add would otherwise wake nobody
+        notifyWatchers();
+        return watcher;
+    }
+
+    int getActive() {
+        return active.get();
+    }
+
+    int getWaiting() {
+        return waiting.size();
+    }
+
+    private int free() {
+        return maxConnections - active.get() - waiting.size();
+    }
+
+    private void notifyWatchers() {
+        for (int free = free(); free > 0; free--) {
+            CompletableFuture<Void> watcher = watching.poll();
+            if (watcher == null) {
+                return;
+            }
+            watcher.complete(null);
+        }
+    }
+
+    private void drain() {
+        while (!waiting.isEmpty()) {
+            int current = active.get();
+            if (current >= maxConnections) {
+                return;
+            }
+
+            if (!active.compareAndSet(current, current + 1)) {
+                continue;
+            }
+
+            CompletableFuture<Permit> next = waiting.poll();
+            if (next == null) {
+                // another thread took it; give the slot back and look again
+                active.decrementAndGet();
+                continue;
+            }
+
+            next.complete(new Permit());
+        }
+    }
+
+    class Permit {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                active.decrementAndGet();
+                drain();
+                notifyWatchers();
+            }
+        }
+    }
+}
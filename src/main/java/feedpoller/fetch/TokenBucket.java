@@ -0,0 +1,57 @@
+package feedpoller.fetch;
+
+/**
+ * Token bucket that hands out reservations instead of refusals: a caller without a token is told how long to wait
+ * for the token it has just taken, so waiting callers are served in order and none is dropped.
+ */
+class TokenBucket {
+    private final double tokensPerNanosecond;
+    private final double capacity;
+
+    private double tokens;
+    private long refilled;
+
+    TokenBucket(double tokensPerSecond, int capacity) {
+        this.tokensPerNanosecond = tokensPerSecond / 1e9;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.refilled = System.nanoTime();
+    }
+
+    /**
+     * @return Nanoseconds until the taken token is due, 0 if it can be used now
+     */
+    synchronized long reserve(long now) {
+        refill(now);
+
+        tokens--;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNanosecond);
+    }
+
+    /**
+     * @return Nanoseconds until a token is there, 0 if one is now. Unlike {@link #reserve(long)} it takes nothing.
+     */
+    synchronized long untilAvailable(long now) {
+        refill(now);
+
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNanosecond);
+    }
+
+    /**
+     * Empties the bucket after the host pushed back, so the next request waits for a fresh token.
+     */
+    synchronized void drain(long now) {
+        refill(now);
+
+        tokens = Math.min(tokens, 0);
+    }
+
+    private void refill(long now) {
+        if (now <= refilled) {
+            return;
+        }
+
+        tokens = Math.min(capacity, tokens + (now - refilled) * tokensPerNanosecond);
+        refilled = now;
+    }
+}
@@ -0,0 +1,17 @@
+package feedpoller.fetch;
+
+import lombok.Getter;
+
+import java.io.IOException;
+
+@Getter
+public class UnexpectedStatusException extends IOException {
+    private final String uri;
+    private final int status;
+
+    public UnexpectedStatusException(String uri, int status) {
+        super("GET " + uri + " returned a response status of " + status);
+        this.uri = uri;
+        this.status = status;
+    }
+}
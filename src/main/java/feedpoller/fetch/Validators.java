@@ -0,0 +1,53 @@
+package feedpoller.fetch;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache validators of the last page read from one uri, sent back as a conditional GET for the same uri.
+ */
+@Getter
+@AllArgsConstructor
+public final class Validators {
+    public static final String ETAG = "ETag";
+    public static final String LAST_MODIFIED = "Last-Modified";
+    public static final String IF_NONE_MATCH = "If-None-Match";
+    public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private final String uri;
+    private final String etag;
+    private final String lastModified;
+
+    /**
+     * @return Validators of the response, or null if it does not carry any
+     */
+    public static Validators of(String uri, FetchResponse response) {
+        String etag = response.getHeader(ETAG);
+        String lastModified = response.getHeader(LAST_MODIFIED);
+
+        if (etag == null && lastModified == null) {
+            return null;
+        }
+
+        return new Validators(uri, etag, lastModified);
+    }
+
+    public boolean appliesTo(String uri) {
+        return this.uri.equals(uri);
+    }
+
+    public Map<String, String> toConditionalHeaders() {
+        Map<String, String> headers = new HashMap<>();
+
+        if (etag != null) {
+            headers.put(IF_NONE_MATCH, etag);
+        }
+        if (lastModified != null) {
+            headers.put(IF_MODIFIED_SINCE, lastModified);
+        }
+        return headers;
+    }
+}
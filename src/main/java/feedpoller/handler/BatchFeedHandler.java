@@ -0,0 +1,16 @@
+package feedpoller.handler;
+
+import feedpoller.domain.FeedPage;
+
+import java.util.List;
+
+public interface BatchFeedHandler {
+    /**
+     * Pages of one batch come from different endpoints. Batches may be handled concurrently,
+     * but an endpoint never has more than one page in flight.
+     *
+     * @param pages Pages in the order they were fetched
+     * @return Next uri for polling of each page, in the same order. Null marks an empty feed, which is read again next time.
+     */
+    List<String> receiveNewFeeds(List<FeedPage> pages) throws Exception;
+}
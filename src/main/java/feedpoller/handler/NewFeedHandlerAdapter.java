@@ -0,0 +1,29 @@
+package feedpoller.handler;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Reads the whole page into a String for a {@link NewFeedHandler}.
+ */
+@AllArgsConstructor
+public class NewFeedHandlerAdapter implements StreamingFeedHandler {
+    @Getter
+    private final NewFeedHandler newFeedHandler;
+
+    @Override
+    public String receiveNewFeed(InputStream page, Charset charset) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = page.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+
+        return newFeedHandler.receiveNewFeed(out.toString(charset));
+    }
+}
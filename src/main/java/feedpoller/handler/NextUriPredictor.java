@@ -0,0 +1,11 @@
+package feedpoller.handler;
+
+public interface NextUriPredictor {
+    /**
+     * Called before the page of {@code uri} is handled, so it must be cheap.
+     *
+     * @param uri Uri of the page about to be handled
+     * @return Uri the handler is expected to return for that page, or null if it cannot be told in advance
+     */
+    String predictNextUri(String uri);
+}
@@ -0,0 +1,35 @@
+package feedpoller.handler;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Predicts numbered pages by incrementing the last number in the uri, e.g. {@code /feed/41} to {@code /feed/42}
+ * or {@code /feed?page=41} to {@code /feed?page=42}.
+ */
+public class PaginationPredictor implements NextUriPredictor {
+    private static final Pattern LAST_NUMBER = Pattern.compile("(\\d+)(\\D*)$");
+
+    @Override
+    public String predictNextUri(String uri) {
+        Matcher matcher = LAST_NUMBER.matcher(uri);
+        if (!matcher.find()) {
+            return null;
+        }
+
+        String number = matcher.group(1);
+        String next;
+        try {
+            next = String.valueOf(Long.parseLong(number) + 1);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        // keep zero padding, e.g. 007 to 008
+        while (next.length() < number.length()) {
+            next = "0" + next;
+        }
+
+        return uri.substring(0, matcher.start(1)) + next + matcher.group(2);
+    }
+}
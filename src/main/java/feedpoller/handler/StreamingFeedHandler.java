@@ -0,0 +1,13 @@
+package feedpoller.handler;
+
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+public interface StreamingFeedHandler {
+    /**
+     * @param page    Live response body. It is closed by the poller once this method returns.
+     * @param charset Charset announced by the response, UTF-8 if none
+     * @return Next uri for polling
+     */
+    String receiveNewFeed(InputStream page, Charset charset) throws Exception;
+}
@@ -0,0 +1,298 @@
+package feedpoller.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and histograms of one endpoint. Every update is also applied to the aggregate, if there is one.
+ */
+public class EndpointMetrics implements EndpointMetricsMBean {
+    private static final long MAX_TRACKED_MILLISECONDS = TimeUnit.HOURS.toMillis(1);
+    private static final long MAX_TRACKED_BYTES = 64L << 20;
+
+    private final String key;
+    private final EndpointMetrics aggregate;
+    private final long startTime = System.nanoTime();
+
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong newFeeds = new AtomicLong();
+    private final AtomicLong emptyFeeds = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final AtomicLong circuitOpens = new AtomicLong();
+    private final AtomicLong skippedPolls = new AtomicLong();
+    private final AtomicLong deadlineMisses = new AtomicLong();
+    private final AtomicLong shedPolls = new AtomicLong();
+    private final AtomicLong triggers = new AtomicLong();
+    private final AtomicLong coalescedTriggers = new AtomicLong();
+
+    // latency and lag in milliseconds, anything beyond an hour or 64 MB counts as that much
+    private final Histogram pollLatency = new Histogram(MAX_TRACKED_MILLISECONDS);
+    private final Histogram schedulingLag = new Histogram(MAX_TRACKED_MILLISECONDS);
+    private final Histogram bytesPerPoll = new Histogram(MAX_TRACKED_BYTES);
+
+    public EndpointMetrics(String key) {
+        this(key, null);
+    }
+
+    public EndpointMetrics(String key, EndpointMetrics aggregate) {
+        this.key = key;
+        this.aggregate = aggregate;
+    }
+
+    /**
+     * @param latencyInNanoseconds Time from the start of the fetch until the page is handled
+     * @param bytes                Bytes received for the page
+     */
+    public void onPoll(long latencyInNanoseconds, long bytes) {
+        polls.incrementAndGet();
+        receivedBytes.addAndGet(bytes);
+        pollLatency.record(toMillis(latencyInNanoseconds));
+        bytesPerPoll.record(bytes);
+
+        if (aggregate != null) {
+            aggregate.onPoll(latencyInNanoseconds, bytes);
+        }
+    }
+
+    public void onNewFeed() {
+        newFeeds.incrementAndGet();
+
+        if (aggregate != null) {
+            aggregate.onNewFeed();
+        }
+    }
+
+    /**
+     * Counts empty and not modified pages.
+     */
+    public void onEmptyFeed() {
+        emptyFeeds.incrementAndGet();
+
+        if (aggregate != null) {
+            aggregate.onEmptyFeed();
+        }
+    }
+
+    public void onError() {
+        errors.incrementAndGet();
+
+        if (aggregate != null) {
+            aggregate.onError();
+        }
+    }
+
+    public void onCircuitOpen() {
+        circuitOpens.incrementAndGet();
+
+        if (aggregate != null) {
+            aggregate.onCircuitOpen();
+        }
+    }
+
+    /**
+     * Counts runs skipped because a circuit was open.
+     */
+    public void onSkippedPoll() {
+        skippedPolls.incrementAndGet();
+
+        if (aggregate != null) {
+            aggregate.onSkippedPoll();
+        }
+    }
+
+    /**
+     * Counts runs that started after their deadline, or would have.
+     */
+    public void onDeadlineMiss() {
+        deadlineMisses.incrementAndGet();
+
+        if (aggregate != null) {
+            aggregate.onDeadlineMiss();
+        }
+    }
+
+    /**
+     * Counts late runs skipped to catch up.
+     */
+    public void onShedPoll() {
+        shedPolls.incrementAndGet();
+
+        if (aggregate != null) {
+            aggregate.onShedPoll();
+        }
+    }
+
+    /**
+     * Counts change notifications, including the coalesced ones.
+     */
+    public void onTrigger() {
+        triggers.incrementAndGet();
+
+        if (aggregate != null) {
+            aggregate.onTrigger();
+        }
+    }
+
+    /**
+     * Counts notifications folded into a triggered poll that is already due.
+     */
+    public void onCoalescedTrigger() {
+        coalescedTriggers.incrementAndGet();
+
+        if (aggregate != null) {
+            aggregate.onCoalescedTrigger();
+        }
+    }
+
+    public void onSchedulingLag(long lagInNanoseconds) {
+        schedulingLag.record(toMillis(lagInNanoseconds));
+
+        if (aggregate != null) {
+            aggregate.onSchedulingLag(lagInNanoseconds);
+        }
+    }
+
+    public Histogram getPollLatency() {
+        return pollLatency;
+    }
+
+    public Histogram getSchedulingLag() {
+        return schedulingLag;
+    }
+
+    public Histogram getBytesPerPoll() {
+        return bytesPerPoll;
+    }
+
+    private static long toMillis(long nanoseconds) {
+        return TimeUnit.NANOSECONDS.toMillis(nanoseconds);
+    }
+
+    private static double ratio(long part, long total) {
+        return total == 0 ? 0 : (double) part / total;
+    }
+
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public long getPolls() {
+        return polls.get();
+    }
+
+    @Override
+    public long getNewFeeds() {
+        return newFeeds.get();
+    }
+
+    @Override
+    public long getEmptyFeeds() {
+        return emptyFeeds.get();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.get();
+    }
+
+    @Override
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    @Override
+    public long getCircuitOpens() {
+        return circuitOpens.get();
+    }
+
+    @Override
+    public long getSkippedPolls() {
+        return skippedPolls.get();
+    }
+
+    @Override
+    public long getDeadlineMisses() {
+        return deadlineMisses.get();
+    }
+
+    @Override
+    public long getShedPolls() {
+        return shedPolls.get();
+    }
+
+    @Override
+    public long getTriggers() {
+        return triggers.get();
+    }
+
+    @Override
+    public long getCoalescedTriggers() {
+        return coalescedTriggers.get();
+    }
+
+    @Override
+    public double getEmptyPollRatio() {
+        return ratio(getEmptyFeeds(), getPolls());
+    }
+
+    @Override
+    public double getErrorRate() {
+        return ratio(getErrors(), getPolls());
+    }
+
+    /**
+     * @return New pages per second since the metrics were created
+     */
+    @Override
+    public double getPagesPerSecond() {
+        return getNewFeeds() / Math.max(1e-9, (System.nanoTime() - startTime) / 1e9);
+    }
+
+    @Override
+    public double getPollLatencyMean() {
+        return pollLatency.getMean();
+    }
+
+    @Override
+    public long getPollLatencyP50() {
+        return pollLatency.getPercentile(50);
+    }
+
+    @Override
+    public long getPollLatencyP99() {
+        return pollLatency.getPercentile(99);
+    }
+
+    @Override
+    public long getPollLatencyMax() {
+        return pollLatency.getMax();
+    }
+
+    @Override
+    public long getBytesPerPollP50() {
+        return bytesPerPoll.getPercentile(50);
+    }
+
+    @Override
+    public long getBytesPerPollP99() {
+        return bytesPerPoll.getPercentile(99);
+    }
+
+    @Override
+    public long getSchedulingLagP50() {
+        return schedulingLag.getPercentile(50);
+    }
+
+    @Override
+    public long getSchedulingLagP99() {
+        return schedulingLag.getPercentile(99);
+    }
+
+    @Override
+    public long getSchedulingLagMax() {
+        return schedulingLag.getMax();
+    }
+}
@@ -0,0 +1,54 @@
+package feedpoller.metrics;
+
+/**
+ * Read-only view of {@link EndpointMetrics} over JMX. Times are in milliseconds.
+ */
+public interface EndpointMetricsMBean {
+    String getKey();
+
+    long getPolls();
+
+    long getNewFeeds();
+
+    long getEmptyFeeds();
+
+    long getErrors();
+
+    long getReceivedBytes();
+
+    long getCircuitOpens();
+
+    long getSkippedPolls();
+
+    long getDeadlineMisses();
+
+    long getShedPolls();
+
+    long getTriggers();
+
+    long getCoalescedTriggers();
+
+    double getEmptyPollRatio();
+
+    double getErrorRate();
+
+    double getPagesPerSecond();
+
+    double getPollLatencyMean();
+
+    long getPollLatencyP50();
+
+    long getPollLatencyP99();
+
+    long getPollLatencyMax();
+
+    long getBytesPerPollP50();
+
+    long getBytesPerPollP99();
+
+    long getSchedulingLagP50();
+
+    long getSchedulingLagP99();
+
+    long getSchedulingLagMax();
+}
@@ -0,0 +1,124 @@
+package feedpoller.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of non-negative values. Each power of two is split into 8 buckets, so a reported percentile is within 12.5% of the
+ * recorded value. Values above the highest trackable value share its bucket, which keeps the histogram small; the max stays exact.
+ * The buckets are allocated with the first value, after that recording is a few atomic increments and never allocates.
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final int buckets;
+    private volatile AtomicLongArray counts;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public Histogram() {
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * @param highestTrackableValue Largest value told apart from larger ones, e.g. 3600000 for an hour in milliseconds takes 158 buckets
+     */
+    public Histogram(long highestTrackableValue) {
+        if (highestTrackableValue < 1) {
+            throw new IllegalArgumentException("highestTrackableValue must be greater than 0");
+        }
+
+        this.buckets = indexOf(highestTrackableValue) + 1;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long lowerBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    }
+
+    public void record(long value) {
+        value = Math.max(0, value);
+
+        counts().incrementAndGet(Math.min(indexOf(value), buckets - 1));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // retry
+        }
+    }
+
+    private AtomicLongArray counts() {
+        AtomicLongArray current = counts;
+        if (current == null) {
+            synchronized (this) {
+                current = counts;
+                if (current == null) {
+                    counts = current = new AtomicLongArray(buckets);
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @return Buckets the histogram holds once a value is recorded
+     */
+    public int getBuckets() {
+        return buckets;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long recorded = count.get();
+        return recorded == 0 ? 0 : (double) sum.get() / recorded;
+    }
+
+    /**
+     * @param percentile Between 0 and 100
+     * @return Upper bound of the bucket holding the percentile, 0 if nothing is recorded
+     */
+    public long getPercentile(double percentile) {
+        long recorded = count.get();
+        if (recorded == 0) {
+            return 0;
+        }
+
+        // counted only after its bucket, so the buckets exist
+        AtomicLongArray current = counts;
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+        long seen = 0;
+        for (int i = 0; i < buckets; i++) {
+            seen += current.get(i);
+            if (seen >= target) {
+                long upperBound = i + 1 < buckets ? lowerBoundOf(i + 1) - 1 : Long.MAX_VALUE;
+                return Math.min(upperBound, max.get());
+            }
+        }
+        return max.get();
+    }
+}
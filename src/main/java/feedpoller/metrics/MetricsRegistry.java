@@ -0,0 +1,167 @@
+package feedpoller.metrics;
+
+import feedpoller.domain.Priority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Metrics of every endpoint by key, plus their aggregate per priority class and overall.
+ */
+public class MetricsRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsRegistry.class);
+
+    public static final String AGGREGATE_KEY = "*";
+
+    private final EndpointMetrics aggregate = new EndpointMetrics(AGGREGATE_KEY);
+    private final Map<Priority, EndpointMetrics> priorities = new EnumMap<>(Priority.class);
+    private final Map<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+    // kept apart, so an endpoint whose key looks like an aggregate key cannot replace the aggregate
+    private final Map<String, ObjectName> registeredEndpoints = new LinkedHashMap<>();
+    private final List<ObjectName> registeredAggregates = new ArrayList<>();
+    private String prefix;
+
+    public MetricsRegistry() {
+        for (Priority priority : Priority.values()) {
+            priorities.put(priority, new EndpointMetrics(priorityKeyOf(priority), aggregate));
+        }
+    }
+
+    private static String priorityKeyOf(Priority priority) {
+        return AGGREGATE_KEY + priority.name();
+    }
+
+    /**
+     * @return Metrics of the endpoint in the {@link Priority#NORMAL} class, created and registered over JMX if it is new
+     */
+    public EndpointMetrics forEndpoint(String key) {
+        return forEndpoint(key, Priority.NORMAL);
+    }
+
+    /**
+     * @param priority Class the endpoint adds up to if it is new
+     * @return Metrics of the endpoint, created and registered over JMX if it is new
+     */
+    public EndpointMetrics forEndpoint(String key, Priority priority) {
+        EndpointMetrics metrics = endpoints.get(key);
+        return metrics != null ? metrics : create(key, priority);
+    }
+
+    private synchronized EndpointMetrics create(String key, Priority priority) {
+        EndpointMetrics metrics = endpoints.computeIfAbsent(key, k -> new EndpointMetrics(k, priorities.get(priority)));
+
+        if (prefix != null && !registeredEndpoints.containsKey(key)) {
+            try {
+                registerEndpoint(ManagementFactory.getPlatformMBeanServer(), metrics);
+            } catch (JMException e) {
+                LOG.error("Metrics of endpoint {} are not registered over JMX.", key, e);
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Drops the metrics of an endpoint and unregisters them from JMX. What they added to the aggregate stays.
+     */
+    public synchronized void remove(String key) {
+        endpoints.remove(key);
+
+        ObjectName objectName = registeredEndpoints.remove(key);
+        if (objectName != null) {
+            unregister(ManagementFactory.getPlatformMBeanServer(), objectName);
+        }
+    }
+
+    /**
+     * @return Metrics of the endpoint, or null if it has never been polled
+     */
+    public EndpointMetrics get(String key) {
+        return endpoints.get(key);
+    }
+
+    public EndpointMetrics getAggregate() {
+        return aggregate;
+    }
+
+    /**
+     * @return Aggregate of the endpoints in the class
+     */
+    public EndpointMetrics getAggregate(Priority priority) {
+        return priorities.get(priority);
+    }
+
+    public Collection<EndpointMetrics> getEndpoints() {
+        return Collections.unmodifiableCollection(endpoints.values());
+    }
+
+    /**
+     * Registers the aggregate as {@code feedpoller:poller=<name>,type=Aggregate}, the aggregate of every priority class as
+     * {@code feedpoller:poller=<name>,type=Priority,priority=<class>} and every endpoint known so far as
+     * {@code feedpoller:poller=<name>,type=Endpoint,key=<key>}.
+     */
+    public synchronized void registerMBeans(String name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        prefix = "feedpoller:poller=" + ObjectName.quote(name);
+
+        try {
+            registerAggregate(server, new ObjectName(prefix + ",type=Aggregate"), aggregate);
+            for (Map.Entry<Priority, EndpointMetrics> priority : priorities.entrySet()) {
+                registerAggregate(server, new ObjectName(prefix + ",type=Priority,priority=" + priority.getKey().name()), priority.getValue());
+            }
+            for (EndpointMetrics metrics : endpoints.values()) {
+                registerEndpoint(server, metrics);
+            }
+        } catch (JMException e) {
+            LOG.error("Metrics of poller {} are not registered over JMX.", name, e);
+        }
+    }
+
+    private void registerEndpoint(MBeanServer server, EndpointMetrics metrics) throws JMException {
+        ObjectName objectName = new ObjectName(prefix + ",type=Endpoint,key=" + ObjectName.quote(metrics.getKey()));
+        server.registerMBean(metrics, objectName);
+        registeredEndpoints.put(metrics.getKey(), objectName);
+    }
+
+    private void registerAggregate(MBeanServer server, ObjectName objectName, EndpointMetrics metrics) throws JMException {
+        server.registerMBean(metrics, objectName);
+        registeredAggregates.add(objectName);
+    }
+
+    private static void unregister(MBeanServer server, ObjectName objectName) {
+        try {
+            server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            LOG.warn("Metrics {} are not unregistered from JMX.", objectName, e);
+        }
+    }
+
+    public synchronized void unregisterMBeans() {
+        prefix = null;
+        if (registeredEndpoints.isEmpty() && registeredAggregates.isEmpty()) {
+            return;
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        for (ObjectName objectName : registeredEndpoints.values()) {
+            unregister(server, objectName);
+        }
+        for (ObjectName objectName : registeredAggregates) {
+            unregister(server, objectName);
+        }
+        registeredEndpoints.clear();
+        registeredAggregates.clear();
+    }
+}
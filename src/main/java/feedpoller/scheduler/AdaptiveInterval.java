@@ -0,0 +1,52 @@
+package feedpoller.scheduler;
+
+import lombok.Getter;
+
+/**
+ * Polling interval of one endpoint, kept between a minimum and a maximum. It backs off exponentially
+ * while the feed is empty and tightens by the same factor whenever a new page arrives.
+ */
+public class AdaptiveInterval {
+    @Getter
+    private final long minPeriod;
+    @Getter
+    private final long maxPeriod;
+    private final double factor;
+
+    private volatile long current;
+
+    public AdaptiveInterval(long period, long minPeriod, long maxPeriod, double factor) {
+        if (minPeriod <= 0 || minPeriod > period || period > maxPeriod) {
+            throw new IllegalArgumentException("period must be between minPeriod and maxPeriod, and minPeriod must be greater than 0");
+        }
+
+        if (factor < 1) {
+            throw new IllegalArgumentException("factor must be at least 1");
+        }
+
+        this.minPeriod = minPeriod;
+        this.maxPeriod = maxPeriod;
+        this.factor = factor;
+        this.current = period;
+    }
+
+    public long getCurrent() {
+        return current;
+    }
+
+    public boolean isFixed() {
+        return minPeriod == maxPeriod;
+    }
+
+    public void onNewFeed() {
+        current = clamp(current / factor);
+    }
+
+    public void onEmptyFeed() {
+        current = clamp(current * factor);
+    }
+
+    private long clamp(double period) {
+        return Math.max(minPeriod, Math.min(maxPeriod, Math.round(period)));
+    }
+}
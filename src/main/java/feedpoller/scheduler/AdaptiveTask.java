@@ -0,0 +1,11 @@
+package feedpoller.scheduler;
+
+/**
+ * A task that decides its own period. The scheduler asks for it every time a run finishes.
+ */
+public interface AdaptiveTask extends Runnable {
+    /**
+     * @return Period in milliseconds until the next run, or 0 to keep the period the task was scheduled with
+     */
+    long nextPeriod();
+}
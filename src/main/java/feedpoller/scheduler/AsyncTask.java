@@ -0,0 +1,11 @@
+package feedpoller.scheduler;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A task whose run finishes asynchronously. The scheduler computes the next due time only when the returned stage completes,
+ * so a run is never overlapped by the next one.
+ */
+public interface AsyncTask extends Runnable {
+    CompletionStage<?> runAsync();
+}
@@ -0,0 +1,129 @@
+package feedpoller.scheduler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops polling an upstream that keeps failing. After {@code failureThreshold} failures in a row the circuit opens and
+ * no request is sent until its backoff has passed. Then a single probe is let through (half-open): success closes the
+ * circuit, failure opens it again with twice the backoff, up to {@code maxBackoff}. Backoffs are jittered, so endpoints
+ * that failed together do not probe together. A probe that never reports back is given up after {@code maxBackoff},
+ * so the circuit cannot stay half-open forever.
+ * <p>
+ * One breaker may be shared by every endpoint on a host.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final double JITTER = 0.2;
+
+    private final int failureThreshold;
+    private final long baseBackoff;
+    private final long maxBackoff;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private int opens;
+    private long openUntil;
+    private long probeStarted;
+
+    /**
+     * @param baseBackoffInMilliseconds Time the circuit stays open the first time
+     * @param maxBackoffInMilliseconds Longest time the circuit stays open
+     */
+    public CircuitBreaker(int failureThreshold, long baseBackoffInMilliseconds, long maxBackoffInMilliseconds) {
+        if (failureThreshold < 1 || baseBackoffInMilliseconds < 1 || baseBackoffInMilliseconds > maxBackoffInMilliseconds) {
+            throw new IllegalArgumentException("failureThreshold and baseBackoff must be at least 1, and baseBackoff must not exceed maxBackoff");
+        }
+
+        this.failureThreshold = failureThreshold;
+        this.baseBackoff = TimeUnit.MILLISECONDS.toNanos(baseBackoffInMilliseconds);
+        this.maxBackoff = TimeUnit.MILLISECONDS.toNanos(maxBackoffInMilliseconds);
+    }
+
+    /**
+     * @return Whether a request may be sent now, without taking the probe of a half-open circuit
+     */
+    public synchronized boolean isAllowed(long now) {
+        return state == State.CLOSED || (state == State.OPEN && now - openUntil >= 0) || (state == State.HALF_OPEN && isProbeLost(now));
+    }
+
+    /**
+     * @return Whether a request may be sent now. Once the backoff has passed, only the first caller gets through as the probe.
+     */
+    public synchronized boolean tryAcquire(long now) {
+        if (state == State.CLOSED) {
+            return true;
+        }
+
+        if ((state == State.OPEN && now - openUntil >= 0) || (state == State.HALF_OPEN && isProbeLost(now))) {
+            state = State.HALF_OPEN;
+            probeStarted = now;
+            return true;
+        }
+
+        return false;
+    }
+
+    private boolean isProbeLost(long now) {
+        return now - probeStarted >= maxBackoff;
+    }
+
+    /**
+     * Hands back the probe of a half-open circuit whose request ended without an answer from the upstream,
+     * e.g. because its endpoint was stopped, so the next caller probes instead.
+     */
+    public synchronized void onAbandoned(long now) {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openUntil = now;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        opens = 0;
+    }
+
+    /**
+     * @return Whether this failure opened the circuit
+     */
+    public synchronized boolean onFailure(long now) {
+        failures++;
+
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            open(now);
+            return true;
+        }
+        return false;
+    }
+
+    private void open(long now) {
+        // doubles per consecutive open, the shift is bounded so it cannot overflow
+        long backoff = Math.min(maxBackoff, baseBackoff << Math.min(opens, 30));
+        if (backoff < 0) {
+            backoff = maxBackoff;
+        }
+
+        opens++;
+        state = State.OPEN;
+        openUntil = now + PhaseSpreading.jitter(backoff, JITTER);
+    }
+
+    /**
+     * @return Milliseconds until an open circuit lets a probe through, 0 otherwise
+     */
+    public synchronized long getRemainingOpen(long now) {
+        if (state != State.OPEN) {
+            return 0;
+        }
+
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(openUntil - now));
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,8 @@
+package feedpoller.scheduler;
+
+/**
+ * Housekeeping that runs next to the polls, such as lease renewal or batch flushing. It never waits for one of the
+ * {@code maxInFlight} slots and does not take one, so saturated polls cannot hold it back.
+ */
+public interface ControlTask extends Runnable {
+}
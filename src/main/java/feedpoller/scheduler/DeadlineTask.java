@@ -0,0 +1,39 @@
+package feedpoller.scheduler;
+
+import feedpoller.domain.Priority;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A task that must start within a deadline after it is due. The scheduler tells it when a run starts too late,
+ * and skips the run instead if the task is {@link Priority#BULK}.
+ */
+public interface DeadlineTask extends Runnable {
+    /**
+     * @return Milliseconds after its due time by which a run must start, 0 for none
+     */
+    long getDeadline();
+
+    Priority getPriority();
+
+    /**
+     * @param shed Whether the run is skipped rather than started late
+     */
+    void onDeadlineMiss(boolean shed);
+
+    /**
+     * @return Whether the next run takes one of the scheduler's {@code maxInFlight} slots. A run that stays open for long,
+     * such as a stream, should not, or it would hold the slot for as long as it lasts.
+     */
+    default boolean takesSlot() {
+        return true;
+    }
+
+    /**
+     * @return Stage that completes once the next run could make progress, e.g. once its host takes another request,
+     * null if it can now. A run that takes a slot only waits for one after that, so it does not hold it while it waits.
+     */
+    default CompletionStage<?> whenReady() {
+        return null;
+    }
+}
@@ -0,0 +1,11 @@
+package feedpoller.scheduler;
+
+/**
+ * A task that wants to know how late it starts. The scheduler tells it right before every run.
+ */
+public interface LagAwareTask extends Runnable {
+    /**
+     * @param lagInNanoseconds Time between the due time of the run and its start
+     */
+    void recordLag(long lagInNanoseconds);
+}
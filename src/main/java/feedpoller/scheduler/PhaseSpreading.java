@@ -0,0 +1,44 @@
+package feedpoller.scheduler;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Staggers endpoints with equal periods so they do not all fire on the same tick. Each key gets a stable phase
+ * within its period, and every period can be stretched or shrunk by a random jitter so phases keep drifting apart.
+ */
+public final class PhaseSpreading {
+    private PhaseSpreading() {
+    }
+
+    /**
+     * @return Offset in [0, period) derived from the key, the same on every start
+     */
+    public static long phaseOf(String key, long period) {
+        if (period <= 1) {
+            return 0;
+        }
+
+        // murmur3 finalizer, String.hashCode alone clusters similar keys such as feed-1, feed-2
+        long hash = key.hashCode() & 0xffffffffL;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return Math.floorMod(hash, period);
+    }
+
+    /**
+     * @param jitter Fraction of the period, e.g. 0.1 for up to 10% either way
+     * @return Period randomly moved by up to {@code jitter * period}, at least 1
+     */
+    public static long jitter(long period, double jitter) {
+        if (jitter <= 0 || period <= 0) {
+            return period;
+        }
+
+        double offset = ThreadLocalRandom.current().nextDouble(-jitter, jitter) * period;
+        return Math.max(1, Math.round(period + offset));
+    }
+}
@@ -0,0 +1,10 @@
+package feedpoller.scheduler;
+
+public interface ScheduledPoll {
+    /**
+     * Stops any further execution. A run that is already in progress is not interrupted.
+     */
+    void cancel();
+
+    boolean isCancelled();
+}
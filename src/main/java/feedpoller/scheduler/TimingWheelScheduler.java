@@ -0,0 +1,476 @@
+package feedpoller.scheduler;
+
+import feedpoller.domain.Priority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the due times of all scheduled tasks in a single hashed timing wheel driven by one ticker thread.
+ * Due tasks are handed to the given worker pool, so the number of threads does not depend on the number of tasks.
+ * <p>
+ * A task is never run concurrently with itself: its next due time is only computed once the current run finishes,
+ * which for an {@link AsyncTask} is when its returned stage completes. An {@link AdaptiveTask} is asked for its period at that point.
+ * A {@link LagAwareTask} is told how late each run starts.
+ * <p>
+ * A {@link DeadlineTask} is told when a run starts after its deadline, and a late run of a {@link Priority#BULK} task is skipped.
+ * With {@code maxInFlight} set, at most that many runs are in progress and due tasks wait for a slot in order of
+ * their priority and then of their deadline, earliest first. A task without a deadline has to start within its period.
+ * A {@link DeadlineTask} only waits for a slot once it is {@link DeadlineTask#whenReady() ready}, so a task stalled by
+ * something else, such as a throttled host, does not keep the slot from others.
+ * A {@link ControlTask}, or a {@link DeadlineTask} whose run does not {@link DeadlineTask#takesSlot() take a slot}, is handed to
+ * the workers as soon as it is due, outside of that limit.
+ */
+public class TimingWheelScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheelScheduler.class);
+
+    public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+    private final ExecutorService workers;
+    private final long tickDuration;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Entry> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final Thread ticker;
+    private final int maxInFlight;
+
+    // guarded by ready
+    private final Queue<Entry> ready = new PriorityQueue<>(Comparator.<Entry>comparingInt(entry -> entry.rank).thenComparingLong(entry -> entry.dueBy));
+    private int inFlight;
+
+    private volatile long startTime;
+    private volatile boolean shutdown;
+    private long tick;
+
+    public TimingWheelScheduler(ExecutorService workers, long tickDurationInMilliseconds) {
+        this(workers, tickDurationInMilliseconds, DEFAULT_TICKS_PER_WHEEL);
+    }
+
+    public TimingWheelScheduler(ExecutorService workers, long tickDurationInMilliseconds, int ticksPerWheel) {
+        this(workers, tickDurationInMilliseconds, ticksPerWheel, 0);
+    }
+
+    /**
+     * @param maxInFlight Runs in progress at most, 0 to hand every due task to the workers at once
+     */
+    public TimingWheelScheduler(ExecutorService workers, long tickDurationInMilliseconds, int ticksPerWheel, int maxInFlight) {
+        if (tickDurationInMilliseconds <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0");
+        }
+
+        if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+            throw new IllegalArgumentException("ticksPerWheel must be between 1 and 2^30");
+        }
+
+        if (maxInFlight < 0) {
+            throw new IllegalArgumentException("maxInFlight must not be negative");
+        }
+
+        this.workers = workers;
+        this.tickDuration = TimeUnit.MILLISECONDS.toNanos(tickDurationInMilliseconds);
+        this.wheel = createWheel(ticksPerWheel);
+        this.mask = wheel.length - 1;
+        this.ticker = new Thread(new Ticker(), "feedpoller-ticker");
+        this.maxInFlight = maxInFlight;
+    }
+
+    private static Bucket[] createWheel(int ticksPerWheel) {
+        int normalized = 1;
+        while (normalized < ticksPerWheel) {
+            normalized <<= 1;
+        }
+
+        Bucket[] wheel = new Bucket[normalized];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Bucket();
+        }
+        return wheel;
+    }
+
+    public ScheduledPoll scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be greater than 0");
+        }
+
+        if (shutdown) {
+            throw new RejectedExecutionException("Scheduler has been shut down");
+        }
+
+        start();
+
+        Entry entry = new Entry(task, unit.toNanos(period));
+        entry.deadline = elapsed() + unit.toNanos(Math.max(0, initialDelay));
+        pending.add(entry);
+
+        return entry;
+    }
+
+    private void start() {
+        if (started.compareAndSet(false, true)) {
+            startTime = System.nanoTime();
+            ticker.start();
+        }
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        ticker.interrupt();
+        workers.shutdown();
+    }
+
+    public void shutdownNow() {
+        shutdown = true;
+        ticker.interrupt();
+        workers.shutdownNow();
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        if (started.get()) {
+            ticker.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        }
+
+        return workers.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    private long elapsed() {
+        return System.nanoTime() - startTime;
+    }
+
+    private void dispatch(Entry entry) {
+        entry.holdsSlot = maxInFlight > 0 && entry.takesSlot();
+        if (!entry.holdsSlot) {
+            execute(entry);
+            return;
+        }
+
+        CompletionStage<?> whenReady = entry.whenReady();
+        if (whenReady == null) {
+            enqueue(entry);
+        } else {
+            // runs right away if it is ready already
+            whenReady.whenComplete((result, failure) -> enqueue(entry));
+        }
+    }
+
+    private void enqueue(Entry entry) {
+        entry.prioritize();
+        synchronized (ready) {
+            ready.add(entry);
+        }
+        drain();
+    }
+
+    private void drain() {
+        while (true) {
+            Entry next;
+            synchronized (ready) {
+                if (inFlight >= maxInFlight || ready.isEmpty()) {
+                    return;
+                }
+                next = ready.poll();
+                inFlight++;
+            }
+
+            if (!execute(next)) {
+                release();
+            }
+        }
+    }
+
+    private void release() {
+        synchronized (ready) {
+            inFlight--;
+        }
+        drain();
+    }
+
+    private boolean execute(Entry entry) {
+        try {
+            workers.execute(entry);
+            return true;
+        } catch (RejectedExecutionException e) {
+            if (!shutdown) {
+                LOG.error("Scheduler is not able to hand a task to the worker pool.", e);
+            }
+            return false;
+        }
+    }
+
+    private class Ticker implements Runnable {
+        private final List<Entry> due = new ArrayList<>();
+
+        @Override
+        public void run() {
+            while (!shutdown) {
+                if (!waitForNextTick()) {
+                    break;
+                }
+
+                transferPending();
+
+                wheel[(int) (tick & mask)].expire(due);
+                for (Entry entry : due) {
+                    dispatch(entry);
+                }
+                due.clear();
+
+                tick++;
+            }
+        }
+
+        private boolean waitForNextTick() {
+            long deadline = tickDuration * (tick + 1);
+
+            while (true) {
+                long sleepTime = deadline - elapsed();
+                if (sleepTime <= 0) {
+                    return true;
+                }
+
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepTime);
+                } catch (InterruptedException e) {
+                    if (shutdown) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        private void transferPending() {
+            Entry entry;
+            while ((entry = pending.poll()) != null) {
+                if (entry.cancelled) {
+                    continue;
+                }
+
+                long calculated = entry.deadline / tickDuration;
+                entry.remainingRounds = (calculated - tick) / wheel.length;
+
+                long ticks = Math.max(calculated, tick);
+                wheel[(int) (ticks & mask)].add(entry);
+            }
+        }
+    }
+
+    private class Entry implements Runnable, ScheduledPoll {
+        private final Runnable task;
+        private final long period;
+
+        private volatile boolean cancelled;
+
+        // owned by the ticker thread while the entry is in the wheel
+        private long deadline;
+        private long remainingRounds;
+        // order among due entries waiting for a slot
+        private int rank;
+        private long dueBy;
+        // whether the current run takes one of the maxInFlight slots, set before it is handed over
+        private boolean holdsSlot;
+        private Entry next;
+        private Entry prev;
+
+        Entry(Runnable task, long period) {
+            this.task = task;
+            this.period = period;
+        }
+
+        boolean takesSlot() {
+            if (task instanceof ControlTask) {
+                return false;
+            }
+            return !(task instanceof DeadlineTask) || ((DeadlineTask) task).takesSlot();
+        }
+
+        CompletionStage<?> whenReady() {
+            if (!(task instanceof DeadlineTask)) {
+                return null;
+            }
+
+            try {
+                return ((DeadlineTask) task).whenReady();
+            } catch (RuntimeException e) {
+                LOG.error("Scheduled task throws an unexpected exception. It is queued for a slot right away.", e);
+                return null;
+            }
+        }
+
+        void prioritize() {
+            long allowed = period;
+            rank = Priority.NORMAL.ordinal();
+
+            if (task instanceof DeadlineTask) {
+                DeadlineTask deadlineTask = (DeadlineTask) task;
+                rank = deadlineTask.getPriority().ordinal();
+                if (deadlineTask.getDeadline() > 0) {
+                    allowed = TimeUnit.MILLISECONDS.toNanos(deadlineTask.getDeadline());
+                }
+            }
+            dueBy = deadline + allowed;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled || shutdown) {
+                finish(false);
+                return;
+            }
+
+            long lag = Math.max(0, elapsed() - deadline);
+            if (task instanceof LagAwareTask) {
+                ((LagAwareTask) task).recordLag(lag);
+            }
+
+            if (task instanceof DeadlineTask && isLate((DeadlineTask) task, lag)) {
+                boolean shed = ((DeadlineTask) task).getPriority() == Priority.BULK;
+                ((DeadlineTask) task).onDeadlineMiss(shed);
+                if (shed) {
+                    finish(true);
+                    return;
+                }
+            }
+
+            if (task instanceof AsyncTask) {
+                runAsync((AsyncTask) task);
+                return;
+            }
+
+            try {
+                task.run();
+            } catch (Throwable t) {
+                LOG.error("Scheduled task throws an unexpected exception. It will be run again next time.", t);
+            } finally {
+                finish(true);
+            }
+        }
+
+        private boolean isLate(DeadlineTask deadlineTask, long lag) {
+            long allowed = deadlineTask.getDeadline();
+            return allowed > 0 && lag > TimeUnit.MILLISECONDS.toNanos(allowed);
+        }
+
+        private void runAsync(AsyncTask asyncTask) {
+            try {
+                asyncTask.runAsync().whenComplete((result, failure) -> {
+                    if (failure != null) {
+                        LOG.error("Scheduled task completes with an unexpected exception. It will be run again next time.", failure);
+                    }
+                    finish(true);
+                });
+            } catch (Throwable t) {
+                LOG.error("Scheduled task throws an unexpected exception. It will be run again next time.", t);
+                finish(true);
+            }
+        }
+
+        private void finish(boolean reschedule) {
+            if (reschedule) {
+                reschedule();
+            }
+            if (holdsSlot) {
+                release();
+            }
+        }
+
+        private void reschedule() {
+            if (cancelled || shutdown) {
+                return;
+            }
+
+            long next = period;
+            if (task instanceof AdaptiveTask) {
+                long adapted = ((AdaptiveTask) task).nextPeriod();
+                if (adapted > 0) {
+                    next = TimeUnit.MILLISECONDS.toNanos(adapted);
+                }
+            }
+
+            // fixed rate without overlapping: skip missed ticks instead of bursting to catch up
+            deadline = Math.max(deadline + next, elapsed());
+            pending.add(this);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private static class Bucket {
+        private Entry head;
+        private Entry tail;
+
+        void add(Entry entry) {
+            if (head == null) {
+                head = tail = entry;
+            } else {
+                tail.next = entry;
+                entry.prev = tail;
+                tail = entry;
+            }
+        }
+
+        void expire(List<Entry> due) {
+            Entry entry = head;
+
+            while (entry != null) {
+                Entry next = entry.next;
+
+                if (entry.cancelled) {
+                    remove(entry);
+                } else if (entry.remainingRounds <= 0) {
+                    remove(entry);
+                    due.add(entry);
+                } else {
+                    entry.remainingRounds--;
+                }
+
+                entry = next;
+            }
+        }
+
+        private void remove(Entry entry) {
+            Entry next = entry.next;
+
+            if (entry.prev != null) {
+                entry.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = entry.prev;
+            }
+
+            if (entry == head) {
+                head = next;
+            }
+            if (entry == tail) {
+                tail = entry.prev;
+            }
+
+            entry.prev = null;
+            entry.next = null;
+        }
+    }
+}
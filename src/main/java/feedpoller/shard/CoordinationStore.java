@@ -0,0 +1,46 @@
+package feedpoller.shard;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * State shared by every node of a cluster: which nodes are alive, and which node holds the lease of each endpoint.
+ * A lease also carries the position of its endpoint, so the next owner resumes where the last one stopped.
+ * Every method must be atomic across nodes.
+ */
+public interface CoordinationStore extends Closeable {
+    /**
+     * Marks the node as alive for the next {@code ttl} milliseconds.
+     */
+    void heartbeat(String nodeId, long ttlInMilliseconds) throws IOException;
+
+    /**
+     * Withdraws the node at once, instead of waiting for its heartbeat to expire.
+     */
+    void leave(String nodeId) throws IOException;
+
+    /**
+     * @return Nodes whose heartbeat has not expired
+     */
+    Set<String> getLiveNodes() throws IOException;
+
+    /**
+     * Takes the lease of an endpoint for {@code ttl} milliseconds if it is free, expired or already held by the node.
+     *
+     * @return The lease with the last position recorded by any owner, null if another node holds it
+     */
+    Lease acquire(String key, String nodeId, long ttlInMilliseconds) throws IOException;
+
+    /**
+     * Extends a lease the node holds by {@code ttl} milliseconds and records the position of its endpoint.
+     *
+     * @return false if another node holds the lease now
+     */
+    boolean renew(String key, String nodeId, String position, long ttlInMilliseconds) throws IOException;
+
+    /**
+     * Frees a lease the node holds and keeps the position for the next owner. Does nothing if another node holds it.
+     */
+    void release(String key, String nodeId, String position) throws IOException;
+}
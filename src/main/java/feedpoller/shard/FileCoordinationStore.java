@@ -0,0 +1,190 @@
+package feedpoller.shard;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps heartbeats and leases as small files in a directory shared by all nodes, e.g. on NFS or on one machine for local testing.
+ * Every change holds an exclusive lock on {@code .lock} in the directory and replaces its file by an atomic move,
+ * so a reader never sees a half written file. Expiry uses the wall clock, so the clocks of all nodes must roughly agree.
+ * <p>
+ * A lease file holds its owner, expiry and position on three lines. A node file holds its expiry.
+ */
+public class FileCoordinationStore implements CoordinationStore {
+    // file locks are held by the whole process, so stores of the same directory in one process also take turns on a monitor
+    private static final ConcurrentMap<Path, Object> MONITORS = new ConcurrentHashMap<>();
+
+    private final Path nodes;
+    private final Path leases;
+    private final Path lockFile;
+    private final Object monitor;
+    private final LongSupplier clock;
+
+    public FileCoordinationStore(Path directory) throws IOException {
+        this(directory, System::currentTimeMillis);
+    }
+
+    FileCoordinationStore(Path directory, LongSupplier clock) throws IOException {
+        Path normalized = directory.toAbsolutePath().normalize();
+
+        this.nodes = Files.createDirectories(normalized.resolve("nodes"));
+        this.leases = Files.createDirectories(normalized.resolve("leases"));
+        this.lockFile = normalized.resolve(".lock");
+        this.monitor = MONITORS.computeIfAbsent(normalized, path -> new Object());
+        this.clock = clock;
+    }
+
+    @Override
+    public void heartbeat(String nodeId, long ttlInMilliseconds) throws IOException {
+        locked(() -> {
+            write(nodes, nodeId, Long.toString(clock.getAsLong() + ttlInMilliseconds));
+            return null;
+        });
+    }
+
+    @Override
+    public void leave(String nodeId) throws IOException {
+        locked(() -> {
+            Files.deleteIfExists(nodes.resolve(fileNameOf(nodeId)));
+            return null;
+        });
+    }
+
+    @Override
+    public Set<String> getLiveNodes() throws IOException {
+        return locked(() -> {
+            long now = clock.getAsLong();
+            Set<String> live = new HashSet<>();
+
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(nodes)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    if (name.startsWith(".")) {
+                        continue;
+                    }
+
+                    List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+                    if (!lines.isEmpty() && Long.parseLong(lines.get(0)) > now) {
+                        live.add(keyOf(name));
+                    } else {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+            return live;
+        });
+    }
+
+    @Override
+    public Lease acquire(String key, String nodeId, long ttlInMilliseconds) throws IOException {
+        return locked(() -> {
+            long now = clock.getAsLong();
+            Lease current = read(key);
+
+            if (current != null && !current.getOwner().isEmpty() && !current.getOwner().equals(nodeId) && current.getExpiresAt() > now) {
+                return null;
+            }
+
+            Lease acquired = new Lease(key, nodeId, current == null ? null : current.getPosition(), now + ttlInMilliseconds);
+            write(acquired);
+            return acquired;
+        });
+    }
+
+    @Override
+    public boolean renew(String key, String nodeId, String position, long ttlInMilliseconds) throws IOException {
+        return locked(() -> {
+            Lease current = read(key);
+            // an expired lease nobody took over is still ours
+            if (current == null || !current.getOwner().equals(nodeId)) {
+                return false;
+            }
+
+            write(new Lease(key, nodeId, position, clock.getAsLong() + ttlInMilliseconds));
+            return true;
+        });
+    }
+
+    @Override
+    public void release(String key, String nodeId, String position) throws IOException {
+        locked(() -> {
+            Lease current = read(key);
+            if (current != null && current.getOwner().equals(nodeId)) {
+                write(new Lease(key, "", position, 0L));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * @return Lease of the key whoever holds it, null if it has never been acquired
+     */
+    Lease read(String key) throws IOException {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(leases.resolve(fileNameOf(key)), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        String position = lines.size() > 2 && !lines.get(2).isEmpty() ? lines.get(2) : null;
+        return new Lease(key, lines.get(0), position, Long.parseLong(lines.get(1)));
+    }
+
+    private void write(Lease lease) throws IOException {
+        String position = lease.getPosition() == null ? "" : lease.getPosition();
+        write(leases, lease.getKey(), lease.getOwner() + "\n" + lease.getExpiresAt() + "\n" + position + "\n");
+    }
+
+    private static void write(Path directory, String key, String content) throws IOException {
+        Path temp = Files.createTempFile(directory, ".", ".tmp");
+        try {
+            Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, directory.resolve(fileNameOf(key)), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // keys may hold any character, so they are encoded into names every file system accepts and that never start with a dot
+    private static String fileNameOf(String key) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String keyOf(String fileName) {
+        return new String(Base64.getUrlDecoder().decode(fileName), StandardCharsets.UTF_8);
+    }
+
+    private <T> T locked(Action<T> action) throws IOException {
+        synchronized (monitor) {
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock lock = channel.lock()) {
+                return action.run();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        // nothing is kept open between calls
+    }
+
+    private interface Action<T> {
+        T run() throws IOException;
+    }
+}
@@ -0,0 +1,16 @@
+package feedpoller.shard;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public final class Lease {
+    private final String key;
+    // empty if nobody holds the lease
+    private final String owner;
+    // uri the endpoint reads next, null if it has never been polled
+    private final String position;
+    // epoch milliseconds
+    private final long expiresAt;
+}
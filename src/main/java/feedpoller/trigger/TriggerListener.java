@@ -0,0 +1,75 @@
+package feedpoller.trigger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.function.Consumer;
+
+/**
+ * Takes change notifications over HTTP, e.g. from webhooks, on the HTTP server of the JDK.
+ * {@code POST /trigger/<key>} hands the key to the consumer and answers 202. It answers 404 if the consumer rejects the key
+ * with an {@link IllegalArgumentException}, 503 if it throws an {@link IllegalStateException}, and 405 for any other method.
+ * There is no authentication, so bind it to a private address or put it behind a proxy that checks callers.
+ */
+public class TriggerListener {
+    private static final Logger LOG = LoggerFactory.getLogger(TriggerListener.class);
+
+    public static final String PATH = "/trigger/";
+
+    private final HttpServer server;
+
+    public TriggerListener(InetSocketAddress address, Consumer<String> trigger) throws IOException {
+        this.server = HttpServer.create(address, 0);
+        this.server.createContext(PATH, exchange -> handle(exchange, trigger));
+    }
+
+    private static void handle(HttpExchange exchange, Consumer<String> trigger) throws IOException {
+        try {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                respond(exchange, 405);
+                return;
+            }
+
+            String key = exchange.getRequestURI().getPath().substring(PATH.length());
+            try {
+                trigger.accept(key);
+                respond(exchange, 202);
+            } catch (IllegalArgumentException e) {
+                LOG.debug("Trigger for unknown endpoint {} is ignored.", key);
+                respond(exchange, 404);
+            } catch (IllegalStateException e) {
+                respond(exchange, 503);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status) throws IOException {
+        // the notification body is not needed, but it is drained so the connection can be reused
+        exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    public void start() {
+        server.start();
+        LOG.info("Trigger listener is taking notifications on {}.", server.getAddress());
+    }
+
+    /**
+     * @return Address the listener is bound to, with the actual port if it was started on port 0
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+}
@@ -2,7 +2,9 @@ package feedpoller;
 
 import feedpoller.domain.EmptyFeedException;
 import feedpoller.domain.EndpointConfig;
+import feedpoller.domain.FeedPage;
 import feedpoller.domain.PollingResult;
+import feedpoller.handler.BatchFeedHandler;
 import feedpoller.handler.NewFeedHandler;
 import feedpoller.stub.SimpleHandler;
 import feedpoller.stub.SimpleServer;
@@ -14,10 +16,13 @@ import javax.ws.rs.core.MediaType;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.fail;
 
 public class FeedPollerIntegrationTest {
@@ -41,6 +46,8 @@ public class FeedPollerIntegrationTest {
 
     FeedPoller feedPoller;
 
+    AtomicInteger emptyPages = new AtomicInteger();
+
     SimpleServer simpleServer;
     SimpleHandler simpleHandler;
 
@@ -72,10 +79,14 @@ public class FeedPollerIntegrationTest {
     }
 
     private void initFeedPoller() {
-        endpointConfigs = new ArrayList<EndpointConfig>() {{
+        initFeedPoller(new ArrayList<EndpointConfig>() {{
             add(new EndpointConfig(FOO_KEY, FOO_URI_KEY, FOO_PERIOD));
             add(new EndpointConfig(BAR_KEY, BAR_URI_KEY, BAR_PERIOD));
-        }};
+        }});
+    }
+
+    private void initFeedPoller(List<EndpointConfig> endpointConfigs) {
+        this.endpointConfigs = endpointConfigs;
 
         NewFeedHandler newFeedHandler = new NewFeedHandler() {
             @Override
@@ -84,6 +95,7 @@ public class FeedPollerIntegrationTest {
                 System.out.printf("new feed handler receive: %s\n", page);
 
                 if (page.trim().equals("")) {
+                    emptyPages.incrementAndGet();
                     throw new EmptyFeedException();
                 }
 
@@ -176,4 +188,95 @@ public class FeedPollerIntegrationTest {
             }
         }
     }
+
+    @Test
+    public void feedPoller_sendsConditionalGet_forUnchangedEmptyFeed() throws Exception {
+        String lastUnReadUri = FOO_URI_KEY + "/2";
+
+        simpleHandler.mapRequestToResponse(lastUnReadUri, "", 200);
+        simpleHandler.mapRequestToETag(lastUnReadUri, "\"empty\"");
+
+        feedPoller.start();
+
+        TimeUnit.SECONDS.sleep(1);
+
+        List<PollingResult> result = feedPoller.shutdown();
+
+        for (PollingResult pollingResult : result) {
+            if (pollingResult.getKey().equals(FOO_KEY)) {
+                assertThat("last unread uri", pollingResult.getLastUnreadUri(), equalTo(lastUnReadUri));
+            }
+        }
+
+        int reads = 0;
+        for (String uri : simpleHandler.getHistory()) {
+            if (uri.equals(lastUnReadUri)) {
+                reads++;
+            }
+        }
+        assertThat("empty feed is read again", reads, greaterThan(1));
+        assertThat("handler only sees the empty page once", emptyPages.get(), equalTo(1));
+    }
+
+    @Test
+    public void feedPoller_drainsBackloggedFeed_backToBack() throws Exception {
+        endpointConfigs.set(0, new EndpointConfig(FOO_KEY, FOO_URI_KEY, FOO_PERIOD).withMaxBurstPages(1000));
+        initFeedPoller(endpointConfigs);
+
+        feedPoller.start();
+
+        TimeUnit.SECONDS.sleep(1);
+
+        List<PollingResult> result = feedPoller.shutdown();
+
+        for (PollingResult pollingResult : result) {
+            if (pollingResult.getKey().equals(FOO_KEY)) {
+                // page 101 is not mapped, so the burst ends there
+                assertThat("every page is read", pollingResult.getLastUnreadUri(), equalTo(FOO_URI_KEY + "/101"));
+            } else {
+                assertThat("bar is not drained", pollingResult.getLastUnreadUri(), not(equalTo(BAR_URI_KEY + "/101")));
+            }
+        }
+    }
+
+    @Test
+    public void feedPoller_handsPagesInBatches() throws Exception {
+        final AtomicInteger batches = new AtomicInteger();
+        final AtomicInteger pages = new AtomicInteger();
+
+        feedPoller = new FeedPoller.FeedPollerBuilder()
+                .withEndpointConfigs(endpointConfigs)
+                .withBatchFeedHandler(new BatchFeedHandler() {
+                    @Override
+                    public List<String> receiveNewFeeds(List<FeedPage> feedPages) {
+                        batches.incrementAndGet();
+                        pages.addAndGet(feedPages.size());
+
+                        List<String> nextUris = new ArrayList<>();
+                        for (FeedPage feedPage : feedPages) {
+                            // page is mocked to uri
+                            nextUris.add(feedPage.getPage().trim().equals("") ? null : feedPage.getPage());
+                        }
+                        return nextUris;
+                    }
+                })
+                .withMaxBatchSize(2)
+                .withMaxBatchDelay(50L)
+                .withInitialDelay(INITIAL_DELAY)
+                .withAcceptType(MediaType.TEXT_PLAIN)
+                .withShutdownTimeout(SHUT_DOWN_TIMEOUT)
+                .build();
+
+        feedPoller.start();
+
+        TimeUnit.SECONDS.sleep(1);
+
+        List<PollingResult> result = feedPoller.shutdown();
+
+        assertThat("pages are handled", pages.get(), greaterThan(2));
+        assertThat("pages share batches", batches.get(), lessThan(pages.get()));
+        for (PollingResult pollingResult : result) {
+            assertThat("feed advances", pollingResult.getLastUnreadUri(), not(equalTo(pollingResult.getFirstStartedUri())));
+        }
+    }
 }
@@ -0,0 +1,91 @@
+package feedpoller;
+
+import feedpoller.domain.EndpointConfig;
+import feedpoller.handler.NewFeedHandler;
+import feedpoller.stub.LatencyDistribution;
+import feedpoller.stub.LoadServer;
+import feedpoller.stub.SoakReport;
+import feedpoller.stub.SoakRunner;
+import feedpoller.stub.SyntheticFeedHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * Polls many synthetic feeds for a while. The defaults keep the build fast; scale it up with e.g.
+ * {@code -Dsoak.feeds=5000 -Dsoak.seconds=600}.
+ */
+public class FeedPollerSoakTest {
+    private static final int FEED_COUNT = Integer.getInteger("soak.feeds", 500);
+    private static final long DURATION = Long.getLong("soak.seconds", 3L) * 1000L;
+    private static final long PERIOD = 200L;
+    private static final int WORKER_POOL_SIZE = 20;
+
+    LoadServer loadServer;
+    SyntheticFeedHandler syntheticFeedHandler;
+
+    @Before
+    public void setUp() throws Exception {
+        syntheticFeedHandler = new SyntheticFeedHandler(FEED_COUNT, 50)
+                .withPageSize(2048)
+                .withLatency(LatencyDistribution.exponential(20))
+                .withErrorRate(0.01)
+                .withEmptyPageRate(0.2)
+                .withETagMode(SyntheticFeedHandler.ETagMode.STABLE);
+
+        loadServer = new LoadServer(syntheticFeedHandler, 0, 100);
+        loadServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        loadServer.stop();
+    }
+
+    @Test
+    public void soak_pollsManyFeeds_withBoundedThreads() throws Exception {
+        List<EndpointConfig> endpointConfigs = new ArrayList<>();
+        List<String> uris = syntheticFeedHandler.startUris(loadServer.getBaseUri());
+        for (int i = 0; i < uris.size(); i++) {
+            endpointConfigs.add(new EndpointConfig("feed-" + i, uris.get(i), PERIOD));
+        }
+
+        FeedPoller feedPoller = new FeedPoller.FeedPollerBuilder()
+                .withEndpointConfigs(endpointConfigs)
+                .withNewFeedHandler(new NewFeedHandler() {
+                    @Override
+                    public String receiveNewFeed(String page) {
+                        // empty pages mean nothing new yet
+                        return page.isEmpty() ? null : page.substring(0, page.indexOf('\n'));
+                    }
+                })
+                .withPollingExceptionHandler(e -> {
+                    // injected server errors are expected
+                })
+                .withAcceptType(MediaType.TEXT_PLAIN)
+                .withWorkerPoolSize(WORKER_POOL_SIZE)
+                .withConditionalGet(true)
+                .withShutdownTimeout(5000L)
+                .build();
+
+        SoakReport report = new SoakRunner(feedPoller, DURATION, 500L).run();
+
+        System.out.printf("soak of %d feeds for %d ms: %s, server saw %d requests, %d errors, %d not modified\n",
+                FEED_COUNT, DURATION, report, syntheticFeedHandler.getRequests(),
+                syntheticFeedHandler.getErrors(), syntheticFeedHandler.getNotModified());
+
+        assertThat("feeds are polled", report.getPolls(), greaterThan(0L));
+        assertThat("only injected server errors are reported", report.getErrors(), lessThanOrEqualTo(syntheticFeedHandler.getErrors()));
+        assertThat("sustained throughput", report.getSustainedPollsPerSecond(), greaterThan(0.0));
+        assertThat("threads do not grow with the number of feeds", report.getPeakThreads(), lessThan(FEED_COUNT / 2));
+    }
+}
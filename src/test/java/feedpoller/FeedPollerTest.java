@@ -1,37 +1,62 @@
 package feedpoller;
 
 import com.sun.jersey.api.client.Client;
+import feedpoller.checkpoint.CheckpointStore;
 import feedpoller.domain.EndpointConfig;
+import feedpoller.domain.EndpointMode;
 import feedpoller.domain.PollingResult;
+import feedpoller.domain.Priority;
+import feedpoller.fetch.CoalescingFetchEngine;
+import feedpoller.fetch.FetchEngine;
+import feedpoller.fetch.HostLimitedFetchEngine;
+import feedpoller.fetch.HostLimits;
+import feedpoller.fetch.JerseyFetchEngine;
 import feedpoller.handler.DefaultPollingExceptionHandler;
+import feedpoller.handler.BatchFeedHandler;
 import feedpoller.handler.NewFeedHandler;
+import feedpoller.handler.NewFeedHandlerAdapter;
 import feedpoller.handler.PollingExceptionHandler;
+import feedpoller.handler.StreamingFeedHandler;
+import feedpoller.scheduler.PhaseSpreading;
+import feedpoller.scheduler.ScheduledPoll;
+import feedpoller.scheduler.TimingWheelScheduler;
+import feedpoller.shard.CoordinationStore;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import javax.ws.rs.core.MediaType;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
 import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.MockitoAnnotations.initMocks;
-import static org.mockito.internal.util.reflection.Whitebox.getInternalState;
-import static org.mockito.internal.util.reflection.Whitebox.setInternalState;
+import static org.powermock.reflect.Whitebox.getInternalState;
+import static org.powermock.reflect.Whitebox.setInternalState;
 import static org.powermock.api.mockito.PowerMockito.*;
 
 @RunWith(PowerMockRunner.class)
@@ -44,11 +69,16 @@ public class FeedPollerTest {
     public static final String FIELD_SHUTDOWN_TIMEOUT = "shutdownTimeout";
     public static final String FIELD_POLLING_EXCEPTION_HANDLER = "pollingExceptionHandler";
     public static final String FIELD_ACCEPT_TYPE = "acceptType";
+    public static final String FIELD_WORKER_POOL_SIZE = "workerPoolSize";
+    public static final String FIELD_TICK_DURATION = "tickDuration";
+    public static final String FIELD_VIRTUAL_THREADS = "virtualThreads";
     public static final String FILED_TASKS = "tasks";
 
     private static final long INITIAL_DELAY = 10000L; // don't run tasks in unit test
     private static final long SHUT_DOWN_TIMEOUT = 1L;
     private static final String ACCEPT_TYPE = MediaType.APPLICATION_JSON;
+    private static final int WORKER_POOL_SIZE = 4;
+    private static final long TICK_DURATION = 5L;
 
 
     private static final String FOO_KEY = "foo";
@@ -62,6 +92,9 @@ public class FeedPollerTest {
     @Mock
     Client mockedClient;
 
+    @Mock
+    FetchEngine mockedFetchEngine;
+
     @Mock
     NewFeedHandler mockedNewFeedHandler;
 
@@ -69,7 +102,10 @@ public class FeedPollerTest {
     PollingExceptionHandler mockedPollingExceptionHandler;
 
     @Mock
-    ScheduledExecutorService mockedScheduledExecutorService;
+    ExecutorService mockedExecutorService;
+
+    @Mock
+    TimingWheelScheduler mockedScheduler;
 
     List<EndpointConfig> endpointConfigs;
 
@@ -81,7 +117,9 @@ public class FeedPollerTest {
     public void setUp() throws Exception {
         initMocks(this);
         mockStatic(Executors.class);
-        when(Executors.newScheduledThreadPool(anyInt())).thenReturn(mockedScheduledExecutorService);
+        when(Executors.newFixedThreadPool(anyInt())).thenReturn(mockedExecutorService);
+        when(Executors.newThreadPerTaskExecutor(any(ThreadFactory.class))).thenReturn(mockedExecutorService);
+        whenNew(TimingWheelScheduler.class).withAnyArguments().thenReturn(mockedScheduler);
 
         endpointConfigs = new ArrayList<EndpointConfig>() {{
             add(new EndpointConfig(FOO_KEY, FOO_INITIAL_URI, FOO_PERIOD));
@@ -95,11 +133,23 @@ public class FeedPollerTest {
                 .withInitialDelay(INITIAL_DELAY)
                 .withPollingExceptionHandler(mockedPollingExceptionHandler)
                 .withAcceptType(ACCEPT_TYPE)
+                .withWorkerPoolSize(WORKER_POOL_SIZE)
+                .withTickDuration(TICK_DURATION)
                 .withShutdownTimeout(SHUT_DOWN_TIMEOUT);
 
         feedPoller = builder.build();
     }
 
+    @After
+    public void tearDown() throws Exception {
+        // shutdown tests preserve the interrupt status on the test thread
+        Thread.interrupted();
+    }
+
+    private static List<PollingTask> tasksOf(FeedPoller feedPoller) {
+        return new ArrayList<>(((Map<String, PollingTask>) getInternalState(feedPoller, FILED_TASKS)).values());
+    }
+
     // ************************************************************************
     // ****************************** Builder *********************************
     // ************************************************************************
@@ -113,6 +163,8 @@ public class FeedPollerTest {
         long shutdownTimeout = (long) getInternalState(feedPoller, FIELD_SHUTDOWN_TIMEOUT);
         PollingExceptionHandler pollingExceptionHandler = (PollingExceptionHandler) getInternalState(feedPoller, FIELD_POLLING_EXCEPTION_HANDLER);
         String acceptType = (String) getInternalState(feedPoller, FIELD_ACCEPT_TYPE);
+        int workerPoolSize = (int) getInternalState(feedPoller, FIELD_WORKER_POOL_SIZE);
+        long tickDuration = (long) getInternalState(feedPoller, FIELD_TICK_DURATION);
 
         assertThat("client:", client, equalTo(mockedClient));
         assertThat("endpointConfigs:", endpointConfigs, equalTo(endpointConfigs));
@@ -121,6 +173,8 @@ public class FeedPollerTest {
         assertThat("shutdownTimeout:", shutdownTimeout, equalTo(SHUT_DOWN_TIMEOUT));
         assertThat("pollingExceptionHandler:", pollingExceptionHandler, equalTo(mockedPollingExceptionHandler));
         assertThat("acceptType:", acceptType, equalTo(ACCEPT_TYPE));
+        assertThat("workerPoolSize:", workerPoolSize, equalTo(WORKER_POOL_SIZE));
+        assertThat("tickDuration:", tickDuration, equalTo(TICK_DURATION));
     }
 
     @Test
@@ -138,6 +192,78 @@ public class FeedPollerTest {
         assertThat("client is default", client, instanceOf(Client.class));
     }
 
+    @Test
+    public void builder_useJerseyFetchEngine_ifFetchEngineIsNotAssigned() throws Exception {
+        FetchEngine fetchEngine = (FetchEngine) getInternalState(feedPoller, "fetchEngine");
+
+        assertThat("fetchEngine is default", fetchEngine, instanceOf(JerseyFetchEngine.class));
+        assertThat("fetchEngine uses client", ((JerseyFetchEngine) fetchEngine).getClient(), equalTo(mockedClient));
+    }
+
+    @Test
+    public void builder_useAssignedFetchEngine() throws Exception {
+        feedPoller = builder.withFetchEngine(mockedFetchEngine).build();
+        feedPoller.start();
+
+        List<PollingTask> tasks = tasksOf(feedPoller);
+        for (PollingTask task : tasks) {
+            assertThat("task uses fetchEngine", ((FetchEngine) getInternalState(task, "fetchEngine")), equalTo(mockedFetchEngine));
+        }
+    }
+
+    @Test
+    public void builder_wrapsFetchEngine_ifHostLimitsAreAssigned() throws Exception {
+        feedPoller = builder.withFetchEngine(mockedFetchEngine).withHostLimits(new HostLimits(2, 5.0)).build();
+        feedPoller.start();
+
+        for (PollingTask task : tasksOf(feedPoller)) {
+            assertThat("task fetches through host limits", getInternalState(task, "fetchEngine"), instanceOf(HostLimitedFetchEngine.class));
+        }
+    }
+
+    @Test
+    public void builder_coalescesRequests_outsideHostLimits() throws Exception {
+        feedPoller = builder.withFetchEngine(mockedFetchEngine)
+                .withHostLimits(new HostLimits(2, 5.0))
+                .withRequestCoalescing(true)
+                .build();
+        feedPoller.start();
+
+        FetchEngine fetchEngine = (FetchEngine) getInternalState(tasksOf(feedPoller).get(0), "fetchEngine");
+        assertThat("coalescing is outermost", fetchEngine, instanceOf(CoalescingFetchEngine.class));
+        assertThat("host limits are inside", getInternalState(fetchEngine, "delegate"), instanceOf(HostLimitedFetchEngine.class));
+    }
+
+    @Test
+    public void start_readsStreamsAndLongPolls_aroundCoalescing() throws Exception {
+        endpointConfigs.set(0, new EndpointConfig(FOO_KEY, FOO_INITIAL_URI, FOO_PERIOD).withMode(EndpointMode.STREAM));
+        endpointConfigs.set(1, new EndpointConfig(BAR_KEY, BAR_INITIAL_URI, BAR_PERIOD).withMode(EndpointMode.LONG_POLL));
+        feedPoller = builder.withFetchEngine(mockedFetchEngine)
+                .withHostLimits(new HostLimits(2, 5.0))
+                .withRequestCoalescing(true)
+                .build();
+        feedPoller.start();
+
+        PollingTask foo = tasksOf(feedPoller).get(0);
+        PollingTask bar = tasksOf(feedPoller).get(1);
+        Object streamEngine = getInternalState(foo, "fetchEngine");
+        assertThat("stream skips coalescing", streamEngine, not(instanceOf(CoalescingFetchEngine.class)));
+        assertThat("stream connects are paced by their host", streamEngine.getClass().getEnclosingClass(), equalTo((Object) HostLimitedFetchEngine.class));
+        assertThat("stream is read on its own thread", getInternalState(foo, "streamExecutor"), equalTo((Object) mockedExecutorService));
+        assertThat("stream takes no slot", foo.takesSlot(), is(false));
+        assertThat("long-poll keeps host limits only", getInternalState(bar, "fetchEngine"), instanceOf(HostLimitedFetchEngine.class));
+    }
+
+    @Test(expected = Error.class)
+    public void builder_throwsError_ifTtlIsSetWithoutCoalescing() throws Exception {
+        builder.withCoalescedResponseTtl(1000L).build();
+    }
+
+    @Test(expected = Error.class)
+    public void builder_throwsError_ifHostLimitsAreInvalid() throws Exception {
+        builder.withHostLimits("www.foo.com", new HostLimits(0, 5.0)).build();
+    }
+
     @Test(expected = Error.class)
     public void builder_throwsError_ifEndpointConfigsAreNotAssigned() throws Exception {
         feedPoller = new FeedPoller.FeedPollerBuilder()
@@ -161,6 +287,27 @@ public class FeedPollerTest {
                 .build();
     }
 
+    @Test
+    public void builder_acceptsStreamingFeedHandler_insteadOfNewFeedHandler() throws Exception {
+        StreamingFeedHandler streamingFeedHandler = mock(StreamingFeedHandler.class);
+        feedPoller = new FeedPoller.FeedPollerBuilder()
+                .withClient(mockedClient)
+                .withEndpointConfigs(endpointConfigs)
+                .withStreamingFeedHandler(streamingFeedHandler)
+                .build();
+        feedPoller.start();
+
+        List<PollingTask> tasks = tasksOf(feedPoller);
+        for (PollingTask task : tasks) {
+            assertThat("task uses streamingFeedHandler", ((StreamingFeedHandler) getInternalState(task, "feedHandler")), equalTo(streamingFeedHandler));
+        }
+    }
+
+    @Test(expected = Error.class)
+    public void builder_throwsError_ifBothHandlersAreAssigned() throws Exception {
+        feedPoller = builder.withStreamingFeedHandler(mock(StreamingFeedHandler.class)).build();
+    }
+
     @Test
     public void builder_useDefaultPollingExceptionHandler_ifPollingExceptionHandlerIsNotAssigned() throws Exception {
         feedPoller = new FeedPoller.FeedPollerBuilder()
@@ -221,29 +368,176 @@ public class FeedPollerTest {
         assertThat("AcceptType is default", AcceptType, equalTo(MediaType.TEXT_PLAIN));
     }
 
+    @Test
+    public void builder_useDefaultWorkerPoolSize_ifWorkerPoolSizeIsNotAssigned() throws Exception {
+        feedPoller = new FeedPoller.FeedPollerBuilder()
+                .withEndpointConfigs(endpointConfigs)
+                .withNewFeedHandler(mockedNewFeedHandler)
+                .build();
+
+        int workerPoolSize = (int) getInternalState(feedPoller, FIELD_WORKER_POOL_SIZE);
+
+        assertThat("workerPoolSize is default", workerPoolSize, equalTo(10));
+    }
+
+    @Test(expected = Error.class)
+    public void builder_throwsError_ifWorkerPoolSizeIsNotPositive() throws Exception {
+        feedPoller = new FeedPoller.FeedPollerBuilder()
+                .withEndpointConfigs(endpointConfigs)
+                .withNewFeedHandler(mockedNewFeedHandler)
+                .withWorkerPoolSize(0)
+                .build();
+    }
+
+    @Test
+    public void builder_usePlatformThreads_ifVirtualThreadsAreNotEnabled() throws Exception {
+        boolean virtualThreads = (boolean) getInternalState(feedPoller, FIELD_VIRTUAL_THREADS);
+
+        assertThat("virtualThreads is default", virtualThreads, equalTo(false));
+    }
+
+    @Test(expected = Error.class)
+    public void builder_throwsError_ifBatchAndNewFeedHandlersAreAssigned() throws Exception {
+        feedPoller = builder.withBatchFeedHandler(mock(BatchFeedHandler.class)).build();
+    }
+
+    @Test(expected = Error.class)
+    public void builder_throwsError_ifBatchExceedsHandleQueue() throws Exception {
+        feedPoller = builder.withHandleQueueCapacity(10).withMaxBatchSize(20).build();
+    }
+
+    @Test
+    public void start_handsPagesToBatcher_ifBatchFeedHandlerIsAssigned() throws Exception {
+        feedPoller = builder.withNewFeedHandler(null).withBatchFeedHandler(mock(BatchFeedHandler.class)).build();
+        feedPoller.start();
+
+        PageBatcher pageBatcher = (PageBatcher) getInternalState(feedPoller, "pageBatcher");
+        List<PollingTask> tasks = tasksOf(feedPoller);
+        for (PollingTask task : tasks) {
+            assertThat("batcher is shared", getInternalState(task, "pageBatcher"), equalTo((Object) pageBatcher));
+        }
+        verify(mockedScheduler, times(1)).scheduleAtFixedRate(any(Runnable.class), eq(250L), eq(250L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test(expected = Error.class)
+    public void builder_throwsError_ifHandleQueueCapacityIsNotPositive() throws Exception {
+        feedPoller = builder.withHandleQueueCapacity(0).build();
+    }
+
+    @Test(expected = Error.class)
+    public void builder_throwsError_ifPeriodIsOutOfBounds() throws Exception {
+        endpointConfigs.add(new EndpointConfig("baz", "http://www.baz.com", 1000L, 2000L, 4000L));
+
+        builder.build();
+    }
+
+    @Test
+    public void start_appliesPriorityAndDeadline_ofEndpoints() throws Exception {
+        endpointConfigs.set(0, new EndpointConfig(FOO_KEY, FOO_INITIAL_URI, FOO_PERIOD).withPriority(Priority.CRITICAL).withDeadlineInMilliseconds(200L));
+        feedPoller = builder.build();
+        feedPoller.start();
+
+        PollingTask foo = tasksOf(feedPoller).get(0);
+        PollingTask bar = tasksOf(feedPoller).get(1);
+        assertThat("foo priority", foo.getPriority(), equalTo(Priority.CRITICAL));
+        assertThat("foo deadline", foo.getDeadline(), equalTo(200L));
+        assertThat("bar priority", bar.getPriority(), equalTo(Priority.NORMAL));
+        assertThat("bar deadline", bar.getDeadline(), equalTo(0L));
+
+        foo.onDeadlineMiss(false);
+        assertThat("misses add up per class", feedPoller.getMetrics().getAggregate(Priority.CRITICAL).getDeadlineMisses(), equalTo(1L));
+    }
+
+    @Test(expected = Error.class)
+    public void builder_throwsError_ifDeadlineIsNegative() throws Exception {
+        endpointConfigs.set(0, new EndpointConfig(FOO_KEY, FOO_INITIAL_URI, FOO_PERIOD).withDeadlineInMilliseconds(-1L));
+        builder.build();
+    }
+
+    @Test
+    public void start_createsAdaptiveIntervals_fromEndpointBounds() throws Exception {
+        endpointConfigs.set(0, new EndpointConfig(FOO_KEY, FOO_INITIAL_URI, FOO_PERIOD, 100L, 10000L));
+        feedPoller = builder.build();
+        feedPoller.start();
+
+        List<PollingTask> tasks = tasksOf(feedPoller);
+        for (PollingTask task : tasks) {
+            if (task.getKey().equals(FOO_KEY)) {
+                assertThat("min", task.getInterval().getMinPeriod(), equalTo(100L));
+                assertThat("max", task.getInterval().getMaxPeriod(), equalTo(10000L));
+            } else {
+                assertThat("fixed", task.getInterval().isFixed(), equalTo(true));
+            }
+            assertThat("starts at period", task.nextPeriod(), equalTo(task.getKey().equals(FOO_KEY) ? FOO_PERIOD : BAR_PERIOD));
+        }
+    }
+
+    @Test
+    public void builder_enablesConditionalGet_byDefault() throws Exception {
+        feedPoller.start();
+
+        List<PollingTask> tasks = tasksOf(feedPoller);
+        for (PollingTask task : tasks) {
+            assertThat("conditionalGet is enabled", (boolean) getInternalState(task, "conditionalGet"), equalTo(true));
+        }
+    }
+
     // ************************************************************************
     // ****************************** FeedPoller ******************************
     // ************************************************************************
 
     @Test
-    public void executors_creates_scheduledThreadPoll() throws Exception {
-        verifyStatic(times(1));
-        Executors.newScheduledThreadPool(endpointConfigs.size());
+    public void executors_creates_fixedThreadPool_independentOfEndpointCount() throws Exception {
+        verifyStatic(Executors.class, times(1));
+        Executors.newFixedThreadPool(WORKER_POOL_SIZE);
+    }
+
+    @Test
+    public void executors_creates_virtualThreadPerTaskExecutor_ifVirtualThreadsAreEnabled() throws Exception {
+        feedPoller = builder.withVirtualThreads(true).build();
+
+        verifyStatic(Executors.class, times(1));
+        Executors.newThreadPerTaskExecutor(any(ThreadFactory.class));
+    }
+
+    @Test
+    public void executors_creates_separateHandlerPool() throws Exception {
+        feedPoller = builder.withHandlerPoolSize(3).build();
+
+        verifyStatic(Executors.class, times(1));
+        Executors.newFixedThreadPool(3);
+    }
+
+    @Test
+    public void start_tasksShareHandleStage() throws Exception {
+        feedPoller.start();
+
+        HandleStage handleStage = (HandleStage) getInternalState(feedPoller, "handleStage");
+        List<PollingTask> tasks = tasksOf(feedPoller);
+        for (PollingTask task : tasks) {
+            assertThat("handle stage is shared", getInternalState(task, "handleStage"), equalTo((Object) handleStage));
+            assertThat("fetching runs on workers", getInternalState(task, "fetchExecutor"), equalTo((Object) mockedExecutorService));
+        }
+    }
+
+    @Test
+    public void scheduler_isCreated_withWorkerPool() throws Exception {
+        verifyNew(TimingWheelScheduler.class).withArguments(mockedExecutorService, TICK_DURATION, TimingWheelScheduler.DEFAULT_TICKS_PER_WHEEL, 0);
     }
 
     @Test
     public void start_createsTasks() throws Exception {
         feedPoller.start();
 
-        List<PollingTask> tasks = (List<PollingTask>) getInternalState(feedPoller, FILED_TASKS);
+        List<PollingTask> tasks = tasksOf(feedPoller);
 
         assertThat("size is 2", tasks.size(), equalTo(2));
 
         ArrayList<EndpointConfig> copy = new ArrayList<EndpointConfig>(this.endpointConfigs);
 
         for (PollingTask task : tasks) {
-            assertThat("client is the same", ((Client) getInternalState(task, "client")), equalTo(mockedClient));
-            assertThat("newFeedHandler is the same", ((NewFeedHandler) getInternalState(task, "newFeedHandler")), equalTo(mockedNewFeedHandler));
+            assertThat("client is the same", ((JerseyFetchEngine) getInternalState(task, "fetchEngine")).getClient(), equalTo(mockedClient));
+            assertThat("newFeedHandler is the same", ((NewFeedHandlerAdapter) getInternalState(task, "feedHandler")).getNewFeedHandler(), equalTo(mockedNewFeedHandler));
             assertThat("pollingExceptionHandler is the same", ((PollingExceptionHandler) getInternalState(task, "pollingExceptionHandler")), equalTo(mockedPollingExceptionHandler));
             assertThat("AcceptType is expected", ((String) getInternalState(task, FIELD_ACCEPT_TYPE)), equalTo(ACCEPT_TYPE));
 
@@ -258,53 +552,165 @@ public class FeedPollerTest {
         }
     }
 
+    @Test
+    public void start_resumesEndpoints_fromCheckpointStore() throws Exception {
+        CheckpointStore checkpointStore = mock(CheckpointStore.class);
+        when(checkpointStore.load()).thenReturn(Collections.singletonMap(FOO_KEY, "http://www.foo.com/42"));
+        feedPoller = builder.withCheckpointStore(checkpointStore).build();
+
+        feedPoller.start();
+
+        List<PollingTask> tasks = tasksOf(feedPoller);
+        for (PollingTask task : tasks) {
+            if (task.getKey().equals(FOO_KEY)) {
+                assertThat("foo resumes", task.getNextUri(), equalTo("http://www.foo.com/42"));
+            } else {
+                assertThat("bar starts from its config", task.getNextUri(), equalTo(BAR_INITIAL_URI));
+            }
+            assertThat("store is shared", getInternalState(task, "checkpointStore"), equalTo((Object) checkpointStore));
+        }
+    }
+
+    @Test
+    public void shutdown_flushesCheckpointStore() throws Exception {
+        CheckpointStore checkpointStore = mock(CheckpointStore.class);
+        when(checkpointStore.load()).thenReturn(Collections.<String, String>emptyMap());
+        feedPoller = builder.withCheckpointStore(checkpointStore).build();
+        feedPoller.start();
+
+        feedPoller.shutdown();
+
+        verify(checkpointStore, times(1)).flush();
+        verify(checkpointStore, never()).close();
+    }
+
+    @Test
+    public void start_tasksReportToMetricsRegistry() throws Exception {
+        feedPoller.start();
+
+        List<PollingTask> tasks = tasksOf(feedPoller);
+        for (PollingTask task : tasks) {
+            assertThat("metrics are registered by key", task.getMetrics(), equalTo(feedPoller.getMetrics().get(task.getKey())));
+        }
+    }
+
     @Test
     public void start_serviceExecutesTasks() throws Exception {
         feedPoller.start();
 
-        verify(mockedScheduledExecutorService, times(1)).scheduleAtFixedRate(any(PollingTask.class), eq(INITIAL_DELAY), eq(FOO_PERIOD), eq(TimeUnit.MILLISECONDS));
-        verify(mockedScheduledExecutorService, times(1)).scheduleAtFixedRate(any(PollingTask.class), eq(INITIAL_DELAY), eq(BAR_PERIOD), eq(TimeUnit.MILLISECONDS));
+        verify(mockedScheduler, times(1)).scheduleAtFixedRate(any(PollingTask.class), eq(INITIAL_DELAY), eq(FOO_PERIOD), eq(TimeUnit.MILLISECONDS));
+        verify(mockedScheduler, times(1)).scheduleAtFixedRate(any(PollingTask.class), eq(INITIAL_DELAY), eq(BAR_PERIOD), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void start_spreadsPhases_ifPhaseSpreadingIsEnabled() throws Exception {
+        feedPoller = builder.withPhaseSpreading(true).build();
+        feedPoller.start();
+
+        verify(mockedScheduler, times(1)).scheduleAtFixedRate(any(PollingTask.class),
+                eq(INITIAL_DELAY + PhaseSpreading.phaseOf(FOO_KEY, FOO_PERIOD)), eq(FOO_PERIOD), eq(TimeUnit.MILLISECONDS));
+        verify(mockedScheduler, times(1)).scheduleAtFixedRate(any(PollingTask.class),
+                eq(INITIAL_DELAY + PhaseSpreading.phaseOf(BAR_KEY, BAR_PERIOD)), eq(BAR_PERIOD), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test(expected = Error.class)
+    public void builder_throwsError_ifKeyIsUsedTwice() throws Exception {
+        endpointConfigs.add(new EndpointConfig(FOO_KEY, BAR_INITIAL_URI, BAR_PERIOD));
+
+        builder.build();
+    }
+
+    @Test
+    public void start_sharesCircuitBreaker_perHost() throws Exception {
+        endpointConfigs.add(new EndpointConfig("foo2", "http://www.foo.com/2", FOO_PERIOD));
+        feedPoller = builder.withCircuitBreaker(3, 1000L, 60000L).withHostCircuitBreakers(true).build();
+        feedPoller.start();
+
+        List<PollingTask> tasks = tasksOf(feedPoller);
+        assertThat("endpoints have breakers of their own", getInternalState(tasks.get(0), "circuitBreaker") != getInternalState(tasks.get(2), "circuitBreaker"), is(true));
+        assertThat("endpoints on one host share its breaker", getInternalState(tasks.get(0), "hostCircuitBreaker"), equalTo(getInternalState(tasks.get(2), "hostCircuitBreaker")));
+        assertThat("other hosts have their own", getInternalState(tasks.get(1), "hostCircuitBreaker") != getInternalState(tasks.get(0), "hostCircuitBreaker"), is(true));
+    }
+
+    @Test(expected = Error.class)
+    public void builder_throwsError_ifCircuitBackoffIsInvalid() throws Exception {
+        builder.withCircuitBreaker(3, 2000L, 1000L).build();
+    }
+
+    @Test
+    public void start_schedulesShardCoordinator_insteadOfEndpoints_ifShardingIsEnabled() throws Exception {
+        feedPoller = builder.withSharding(mock(CoordinationStore.class), "node-1", 3000L).build();
+        feedPoller.start();
+
+        verify(mockedScheduler, times(1)).scheduleAtFixedRate(any(ShardCoordinator.class), eq(0L), eq(1000L), eq(TimeUnit.MILLISECONDS));
+        verify(mockedScheduler, never()).scheduleAtFixedRate(any(PollingTask.class), anyLong(), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test(expected = Error.class)
+    public void builder_throwsError_ifShardingHasNoNodeId() throws Exception {
+        builder.withSharding(mock(CoordinationStore.class), null, 3000L).build();
+    }
+
+    @Test(expected = Error.class)
+    public void builder_throwsError_ifJitterIsOutOfRange() throws Exception {
+        builder.withJitter(1.0).build();
     }
 
     @Test
     public void shutdown_callsShutdown() throws Exception {
         feedPoller.shutdown();
 
-        verify(mockedScheduledExecutorService, times(1)).shutdown();
+        verify(mockedScheduler, times(1)).shutdown();
     }
 
     @Test
     public void shutdown_awaitTermination() throws Exception {
         feedPoller.shutdown();
 
-        verify(mockedScheduledExecutorService).awaitTermination(SHUT_DOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+        verify(mockedScheduler).awaitTermination(SHUT_DOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void shutdown_stopsHandlers_onlyAfterWorkersAreDrained() throws Exception {
+        given(mockedScheduler.awaitTermination(SHUT_DOWN_TIMEOUT, TimeUnit.MILLISECONDS)).willReturn(true);
+        given(mockedExecutorService.awaitTermination(SHUT_DOWN_TIMEOUT, TimeUnit.MILLISECONDS)).willReturn(true);
+        feedPoller.start();
+
+        feedPoller.shutdown();
+
+        // the handler pool is the mocked executor, the workers are shut down by the mocked scheduler
+        InOrder inOrder = inOrder(mockedScheduler, mockedExecutorService);
+        inOrder.verify(mockedScheduler).awaitTermination(SHUT_DOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+        inOrder.verify(mockedExecutorService).shutdown();
+        inOrder.verify(mockedExecutorService).awaitTermination(SHUT_DOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+        verify(mockedExecutorService, never()).shutdownNow();
     }
 
     @Test
     public void shutdown_forceSystemToShutdown_ifTimeIsExceeded() throws Exception {
-        given(mockedScheduledExecutorService.awaitTermination(SHUT_DOWN_TIMEOUT, TimeUnit.MILLISECONDS)).willReturn(false);
+        given(mockedScheduler.awaitTermination(SHUT_DOWN_TIMEOUT, TimeUnit.MILLISECONDS)).willReturn(false);
 
         feedPoller.shutdown();
 
-        then(mockedScheduledExecutorService).should(times(1)).shutdownNow();
+        then(mockedScheduler).should(times(1)).shutdownNow();
     }
 
     @Test
     public void shutdown_forceSystemToShutdown_awaitTermination() throws Exception {
-        given(mockedScheduledExecutorService.awaitTermination(SHUT_DOWN_TIMEOUT, TimeUnit.MILLISECONDS)).willReturn(false);
+        given(mockedScheduler.awaitTermination(SHUT_DOWN_TIMEOUT, TimeUnit.MILLISECONDS)).willReturn(false);
 
         feedPoller.shutdown();
 
-        then(mockedScheduledExecutorService).should(times(1)).awaitTermination(60, TimeUnit.SECONDS);
+        then(mockedScheduler).should(times(1)).awaitTermination(60, TimeUnit.SECONDS);
     }
 
     @Test
     public void shutdown_forceSystemToShutdown_ifInterruptedExceptionIsThrown() throws Exception {
-        given(mockedScheduledExecutorService.awaitTermination(SHUT_DOWN_TIMEOUT, TimeUnit.MILLISECONDS)).willThrow(new InterruptedException());
+        given(mockedScheduler.awaitTermination(SHUT_DOWN_TIMEOUT, TimeUnit.MILLISECONDS)).willThrow(new InterruptedException());
 
         feedPoller.shutdown();
 
-        then(mockedScheduledExecutorService).should(times(1)).shutdownNow();
+        then(mockedScheduler).should(times(1)).shutdownNow();
     }
 
     @Test
@@ -312,12 +718,12 @@ public class FeedPollerTest {
         mockStatic(Thread.class);
         Thread mockedThread = mock(Thread.class);
 
-        given(mockedScheduledExecutorService.awaitTermination(SHUT_DOWN_TIMEOUT, TimeUnit.MILLISECONDS)).willThrow(new InterruptedException());
+        given(mockedScheduler.awaitTermination(SHUT_DOWN_TIMEOUT, TimeUnit.MILLISECONDS)).willThrow(new InterruptedException());
         given(Thread.currentThread()).willReturn(mockedThread);
 
         feedPoller.shutdown();
 
-        verifyStatic(times(1));
+        verifyStatic(Thread.class, times(1));
         Thread.currentThread();
 
         then(mockedThread).should(times(1)).interrupt();
@@ -328,7 +734,7 @@ public class FeedPollerTest {
         String nextUri = "next uri";
         feedPoller.start();
 
-        List<PollingTask> tasks = (List<PollingTask>) getInternalState(feedPoller, FILED_TASKS);
+        List<PollingTask> tasks = tasksOf(feedPoller);
         for (PollingTask task : tasks) {
             setInternalState(task, "nextUri", nextUri);
         }
@@ -349,4 +755,128 @@ public class FeedPollerTest {
             assertThat("last unread uri:", result.getLastUnreadUri(), equalTo(nextUri));
         }
     }
-}
\ No newline at end of file
+
+    // ************************************************************************
+    // ************************* Endpoint registry ****************************
+    // ************************************************************************
+    @Test
+    public void addEndpoint_schedulesTask_whilePolling() throws Exception {
+        feedPoller.start();
+
+        PollingResult result = feedPoller.addEndpoint(new EndpointConfig("baz", "http://www.baz.com/1", 3000L));
+
+        verify(mockedScheduler, times(1)).scheduleAtFixedRate(any(PollingTask.class), eq(INITIAL_DELAY), eq(3000L), eq(TimeUnit.MILLISECONDS));
+        assertThat("result starts at the start uri", result.getLastUnreadUri(), equalTo("http://www.baz.com/1"));
+        assertThat("task is added", tasksOf(feedPoller).size(), equalTo(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addEndpoint_throwsException_ifKeyIsPolled() throws Exception {
+        feedPoller.start();
+
+        feedPoller.addEndpoint(new EndpointConfig(FOO_KEY, FOO_INITIAL_URI, FOO_PERIOD));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void addEndpoint_throwsException_ifNotStarted() throws Exception {
+        feedPoller.addEndpoint(new EndpointConfig("baz", "http://www.baz.com/1", 3000L));
+    }
+
+    @Test
+    public void removeEndpoint_cancelsTask_andReturnsItsResult() throws Exception {
+        ScheduledPoll scheduledPoll = mock(ScheduledPoll.class);
+        given(mockedScheduler.scheduleAtFixedRate(any(PollingTask.class), anyLong(), anyLong(), any(TimeUnit.class))).willReturn(scheduledPoll);
+        feedPoller.start();
+        PollingTask foo = tasksOf(feedPoller).get(0);
+        setInternalState(foo, "nextUri", "next uri");
+
+        PollingResult result = feedPoller.removeEndpoint(FOO_KEY);
+
+        then(scheduledPoll).should(times(1)).cancel();
+        assertThat("last unread uri", result.getLastUnreadUri(), equalTo("next uri"));
+        assertThat("task is stopped", (Boolean) getInternalState(foo, "stopped"), is(true));
+        assertThat("metrics are dropped", feedPoller.getMetrics().get(FOO_KEY), nullValue());
+        assertThat("removed endpoint is not in shutdown results", feedPoller.shutdown().size(), equalTo(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void removeEndpoint_throwsException_ifKeyIsUnknown() throws Exception {
+        feedPoller.start();
+
+        feedPoller.removeEndpoint("baz");
+    }
+
+    @Test
+    public void pauseEndpoint_cancelsTask_untilResumed() throws Exception {
+        ScheduledPoll scheduledPoll = mock(ScheduledPoll.class);
+        given(mockedScheduler.scheduleAtFixedRate(any(PollingTask.class), anyLong(), anyLong(), any(TimeUnit.class))).willReturn(scheduledPoll);
+        feedPoller.start();
+        PollingTask foo = tasksOf(feedPoller).get(0);
+
+        feedPoller.pauseEndpoint(FOO_KEY);
+
+        then(scheduledPoll).should(times(1)).cancel();
+        assertThat("task is paused", foo.isPaused(), is(true));
+
+        feedPoller.resumeEndpoint(FOO_KEY);
+
+        assertThat("task is resumed", foo.isPaused(), is(false));
+        verify(mockedScheduler, times(1)).scheduleAtFixedRate(foo, FOO_PERIOD, FOO_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void retuneEndpoint_reschedulesTask_withNewPeriod() throws Exception {
+        ScheduledPoll scheduledPoll = mock(ScheduledPoll.class);
+        given(mockedScheduler.scheduleAtFixedRate(any(PollingTask.class), anyLong(), anyLong(), any(TimeUnit.class))).willReturn(scheduledPoll);
+        feedPoller.start();
+        PollingTask foo = tasksOf(feedPoller).get(0);
+
+        PollingResult result = feedPoller.retuneEndpoint(new EndpointConfig(FOO_KEY, "ignored", 100L, 50L, 400L));
+
+        then(scheduledPoll).should(times(1)).cancel();
+        verify(mockedScheduler, times(1)).scheduleAtFixedRate(foo, 100L, 100L, TimeUnit.MILLISECONDS);
+        assertThat("interval is replaced", foo.getInterval().getMaxPeriod(), equalTo(400L));
+        assertThat("position is kept", result.getLastUnreadUri(), equalTo(FOO_INITIAL_URI));
+    }
+
+    @Test(expected = Error.class)
+    public void retuneEndpoint_throwsError_ifPeriodIsOutOfBounds() throws Exception {
+        feedPoller.start();
+
+        feedPoller.retuneEndpoint(new EndpointConfig(FOO_KEY, FOO_INITIAL_URI, 100L, 200L, 400L));
+    }
+
+    @Test
+    public void triggerEndpoint_pollsAtOnce_andCoalescesTriggersWithinDebounce() throws Exception {
+        ScheduledPoll scheduledPoll = mock(ScheduledPoll.class);
+        given(mockedScheduler.scheduleAtFixedRate(any(PollingTask.class), anyLong(), anyLong(), any(TimeUnit.class))).willReturn(scheduledPoll);
+        feedPoller.start();
+        PollingTask foo = tasksOf(feedPoller).get(0);
+
+        feedPoller.triggerEndpoint(FOO_KEY);
+        feedPoller.triggerEndpoint(FOO_KEY);
+        feedPoller.triggerEndpoint(FOO_KEY);
+
+        verify(mockedScheduler, times(1)).scheduleAtFixedRate(foo, 0L, FOO_PERIOD, TimeUnit.MILLISECONDS);
+        verify(mockedScheduler, times(1)).scheduleAtFixedRate(eq(foo), longThat(delay -> delay > 500L && delay <= 1000L), eq(FOO_PERIOD), eq(TimeUnit.MILLISECONDS));
+        then(scheduledPoll).should(times(2)).cancel();
+        assertThat("triggers", foo.getMetrics().getTriggers(), equalTo(3L));
+        assertThat("coalesced triggers", foo.getMetrics().getCoalescedTriggers(), equalTo(1L));
+    }
+
+    @Test
+    public void triggerEndpoint_isIgnored_ifEndpointIsPaused() throws Exception {
+        feedPoller.start();
+        PollingTask foo = tasksOf(feedPoller).get(0);
+        feedPoller.pauseEndpoint(FOO_KEY);
+
+        feedPoller.triggerEndpoint(FOO_KEY);
+
+        verify(mockedScheduler, never()).scheduleAtFixedRate(eq(foo), eq(0L), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test(expected = Error.class)
+    public void builder_throwsError_ifTriggerDebounceIsNegative() throws Exception {
+        builder.withTriggerDebounce(-1L).build();
+    }
+}
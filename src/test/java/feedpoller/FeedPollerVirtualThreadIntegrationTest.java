@@ -0,0 +1,99 @@
+package feedpoller;
+
+import feedpoller.domain.EndpointConfig;
+import feedpoller.handler.NewFeedHandler;
+import feedpoller.stub.SimpleHandler;
+import feedpoller.stub.SimpleServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+
+/**
+ * Compares the fixed worker pool against virtual threads when every endpoint is slow to respond.
+ */
+public class FeedPollerVirtualThreadIntegrationTest {
+    private static final String BASE_URI = "http://localhost:9090/feed/";
+    // more than the default handle queue capacity, which must not bound requests in flight
+    private static final int ENDPOINT_COUNT = 300;
+    private static final long PERIOD = 100L;
+    private static final long RESPONSE_DELAY = 200L;
+    private static final int WORKER_POOL_SIZE = 10;
+
+    List<EndpointConfig> endpointConfigs;
+
+    SimpleServer simpleServer;
+    SimpleHandler simpleHandler;
+
+    AtomicInteger polls;
+
+    @Before
+    public void setUp() throws Exception {
+        simpleHandler = new SimpleHandler();
+        simpleHandler.setResponseDelay(RESPONSE_DELAY);
+
+        endpointConfigs = new ArrayList<>();
+        for (int i = 0; i < ENDPOINT_COUNT; i++) {
+            String uri = BASE_URI + i;
+
+            // every page points back to itself
+            simpleHandler.mapRequestToResponse(uri, uri, 200);
+            endpointConfigs.add(new EndpointConfig("feed-" + i, uri, PERIOD));
+        }
+
+        simpleServer = new SimpleServer(simpleHandler, 9090);
+        simpleServer.start();
+
+        polls = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        simpleServer.stop();
+    }
+
+    private int pollFor(boolean virtualThreads, long durationInMilliseconds) throws Exception {
+        polls.set(0);
+
+        FeedPoller feedPoller = new FeedPoller.FeedPollerBuilder()
+                .withEndpointConfigs(endpointConfigs)
+                .withNewFeedHandler(new NewFeedHandler() {
+                    @Override
+                    public String receiveNewFeed(String page) {
+                        polls.incrementAndGet();
+                        return page;
+                    }
+                })
+                .withAcceptType(MediaType.TEXT_PLAIN)
+                .withWorkerPoolSize(WORKER_POOL_SIZE)
+                .withVirtualThreads(virtualThreads)
+                .withShutdownTimeout(2000L)
+                .build();
+
+        feedPoller.start();
+        TimeUnit.MILLISECONDS.sleep(durationInMilliseconds);
+        feedPoller.shutdown();
+
+        return polls.get();
+    }
+
+    @Test
+    public void virtualThreads_pollSlowEndpoints_concurrently() throws Exception {
+        int platformPolls = pollFor(false, 1500L);
+        int virtualPolls = pollFor(true, 1500L);
+
+        System.out.printf("polls in 1.5s with %d slow endpoints: fixed pool of %d = %d, virtual threads = %d\n",
+                ENDPOINT_COUNT, WORKER_POOL_SIZE, platformPolls, virtualPolls);
+
+        assertThat("fixed pool still makes progress", platformPolls, greaterThan(0));
+        assertThat("virtual threads are not bounded by the pool size", virtualPolls, greaterThan(platformPolls * 2));
+    }
+}
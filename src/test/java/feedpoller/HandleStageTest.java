@@ -0,0 +1,92 @@
+package feedpoller;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class HandleStageTest {
+    private ExecutorService handlers;
+    private HandleStage stage;
+
+    @Before
+    public void setUp() throws Exception {
+        handlers = Executors.newFixedThreadPool(2);
+        stage = new HandleStage(handlers, 2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        stage.shutdownNow();
+    }
+
+    @Test
+    public void reserve_waits_untilSlotIsReleased() throws Exception {
+        stage.reserve();
+        stage.reserve();
+
+        CompletableFuture<Void> third = stage.reserve();
+        assertThat("third page waits", third.isDone(), is(false));
+        assertThat("no free slot", stage.tryReserve(), is(false));
+
+        stage.release();
+
+        assertThat("slot moves to the waiting page", third.isDone(), is(true));
+        assertThat("still full", stage.getReserved(), equalTo(2));
+    }
+
+    @Test
+    public void submit_releasesSlot_afterHandler() throws Exception {
+        final CountDownLatch handled = new CountDownLatch(1);
+        stage.reserve();
+
+        stage.submit(() -> {
+            handled.countDown();
+            return CompletableFuture.completedFuture(null);
+        }).get(1, TimeUnit.SECONDS);
+
+        assertThat("handler runs", handled.getCount(), equalTo(0L));
+        assertThat("slot is free", stage.getReserved(), equalTo(0));
+    }
+
+    @Test
+    public void submit_holdsSlot_untilHandledStageCompletes() throws Exception {
+        final CompletableFuture<String> batch = new CompletableFuture<>();
+        stage.reserve();
+
+        CompletableFuture<String> submitted = stage.submit(() -> batch);
+        TimeUnit.MILLISECONDS.sleep(50);
+        assertThat("slot is held", stage.getReserved(), equalTo(1));
+
+        batch.complete("next");
+
+        assertThat("result", submitted.get(1, TimeUnit.SECONDS), equalTo("next"));
+        assertThat("slot is free", stage.getReserved(), equalTo(0));
+    }
+
+    @Test
+    public void submit_releasesSlot_ifStageIsShutDown() throws Exception {
+        stage.reserve();
+        stage.shutdown();
+
+        CompletableFuture<Void> submitted = stage.submit(() -> CompletableFuture.<Void>completedFuture(null));
+
+        assertThat("rejected", submitted.isCompletedExceptionally(), is(true));
+        assertThat("slot is free", stage.getReserved(), equalTo(0));
+        try {
+            submitted.join();
+        } catch (Exception e) {
+            assertThat("cause", e.getCause() instanceof RejectedExecutionException, is(true));
+        }
+    }
+}
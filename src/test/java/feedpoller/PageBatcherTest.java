@@ -0,0 +1,90 @@
+package feedpoller;
+
+import feedpoller.domain.FeedPage;
+import feedpoller.handler.BatchFeedHandler;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class PageBatcherTest {
+    @Mock
+    private BatchFeedHandler mockedBatchFeedHandler;
+
+    private PageBatcher batcher;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+
+        // time based flushes run on the calling thread
+        batcher = new PageBatcher(mockedBatchFeedHandler, 2, 50L, Runnable::run);
+    }
+
+    private static FeedPage page(String key) {
+        return new FeedPage(key, key + "/1", "page of " + key);
+    }
+
+    @Test
+    public void batcher_flushes_whenBatchIsFull() throws Exception {
+        when(mockedBatchFeedHandler.receiveNewFeeds(anyList())).thenReturn(Arrays.asList("foo/2", "bar/2"));
+
+        CompletableFuture<String> foo = batcher.add(page("foo"));
+        assertThat("waits for the batch", foo.isDone(), is(false));
+
+        CompletableFuture<String> bar = batcher.add(page("bar"));
+
+        ArgumentCaptor<List> pages = ArgumentCaptor.forClass(List.class);
+        verify(mockedBatchFeedHandler, times(1)).receiveNewFeeds(pages.capture());
+        assertThat("one batch of 2", pages.getValue().size(), equalTo(2));
+        assertThat("foo", foo.join(), equalTo("foo/2"));
+        assertThat("bar", bar.join(), equalTo("bar/2"));
+    }
+
+    @Test
+    public void batcher_flushes_whenOldestPageIsDue() throws Exception {
+        when(mockedBatchFeedHandler.receiveNewFeeds(anyList())).thenReturn(Arrays.asList("foo/2"));
+        CompletableFuture<String> foo = batcher.add(page("foo"));
+
+        batcher.flushIfDue();
+        assertThat("not due yet", foo.isDone(), is(false));
+
+        TimeUnit.MILLISECONDS.sleep(60);
+        batcher.flushIfDue();
+
+        assertThat("flushed", foo.join(), equalTo("foo/2"));
+        assertThat("nothing pending", batcher.getPending(), equalTo(0));
+    }
+
+    @Test
+    public void batcher_failsEveryPage_ifHandlerThrowsException() throws Exception {
+        when(mockedBatchFeedHandler.receiveNewFeeds(anyList())).thenThrow(new RuntimeException("commit failed"));
+
+        CompletableFuture<String> foo = batcher.add(page("foo"));
+        CompletableFuture<String> bar = batcher.add(page("bar"));
+
+        assertThat("foo fails", foo.isCompletedExceptionally(), is(true));
+        assertThat("bar fails", bar.isCompletedExceptionally(), is(true));
+    }
+
+    @Test
+    public void batcher_failsEveryPage_ifHandlerReturnsWrongNumberOfUris() throws Exception {
+        when(mockedBatchFeedHandler.receiveNewFeeds(anyList())).thenReturn(Arrays.asList("foo/2"));
+
+        CompletableFuture<String> foo = batcher.add(page("foo"));
+        batcher.add(page("bar"));
+
+        assertThat("foo fails", foo.isCompletedExceptionally(), is(true));
+    }
+}
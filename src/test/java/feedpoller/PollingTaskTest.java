@@ -1,17 +1,53 @@
 package feedpoller;
 
 import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.WebResource;
+import feedpoller.checkpoint.CheckpointStore;
 import feedpoller.domain.EmptyFeedException;
+import feedpoller.domain.EndpointMode;
+import feedpoller.domain.FeedPage;
+import feedpoller.fetch.ContentDecoding;
+import feedpoller.fetch.EventStreamReader;
+import feedpoller.fetch.FetchEngine;
+import feedpoller.fetch.FetchRequest;
+import feedpoller.fetch.FetchResponse;
+import feedpoller.fetch.UnexpectedStatusException;
+import feedpoller.fetch.Validators;
+import feedpoller.handler.BatchFeedHandler;
 import feedpoller.handler.NewFeedHandler;
 import feedpoller.handler.PollingExceptionHandler;
+import feedpoller.handler.StreamingFeedHandler;
+import feedpoller.metrics.EndpointMetrics;
+import feedpoller.scheduler.AdaptiveInterval;
+import feedpoller.scheduler.CircuitBreaker;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 
 import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
@@ -33,6 +69,12 @@ public class PollingTaskTest {
     @Mock
     private WebResource.Builder mockedBuilder;
 
+    @Mock
+    private ClientResponse mockedClientResponse;
+
+    @Mock
+    private FetchEngine mockedFetchEngine;
+
     @Mock
     private NewFeedHandler mockedNewFeedHandler;
 
@@ -55,10 +97,20 @@ public class PollingTaskTest {
 
         when(mockedClient.resource(INITIAL_URI)).thenReturn(mockedWebResource);
         when(mockedWebResource.accept(anyString())).thenReturn(mockedBuilder);
-        when(mockedBuilder.get(String.class)).thenReturn(PAGE);
+        when(mockedBuilder.get(ClientResponse.class)).thenReturn(mockedClientResponse);
+        when(mockedClientResponse.getStatus()).thenReturn(200);
+        when(mockedClientResponse.getEntityInputStream()).thenReturn(stream(PAGE));
         when(mockedNewFeedHandler.receiveNewFeed(PAGE)).thenReturn(NEXT_URI);
     }
 
+    private static InputStream stream(String page) {
+        return new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static CompletableFuture<FetchResponse> response(String page) {
+        return CompletableFuture.completedFuture(new FetchResponse(200, stream(page), StandardCharsets.UTF_8));
+    }
+
     @Test
     public void task_createsWebResource() throws Exception {
         task.run();
@@ -66,6 +118,19 @@ public class PollingTaskTest {
         verify(mockedClient).resource(INITIAL_URI);
     }
 
+    @Test
+    public void task_skipsRuns_whilePaused() throws Exception {
+        task.pause();
+        task.run();
+
+        verify(mockedClient, never()).resource(INITIAL_URI);
+
+        task.resume();
+        task.run();
+
+        verify(mockedClient).resource(INITIAL_URI);
+    }
+
     @Test
     public void task_setAcceptType() throws Exception {
         task.run();
@@ -77,7 +142,7 @@ public class PollingTaskTest {
     public void task_pollsWebResource() throws Exception {
         task.run();
 
-        verify(mockedBuilder).get(String.class);
+        verify(mockedBuilder).get(ClientResponse.class);
     }
 
     @Test
@@ -116,7 +181,7 @@ public class PollingTaskTest {
 
     @Test
     public void task_catchException_andDoNotThrowIt() throws Exception {
-        doThrow(mockedRuntimeException).when(mockedWebResource).get(String.class);
+        doThrow(mockedRuntimeException).when(mockedWebResource).get(ClientResponse.class);
 
         try {
             task.run();
@@ -127,7 +192,7 @@ public class PollingTaskTest {
 
     @Test
     public void nextUri_isNotChanged_ifExceptionIsThrownDuringPolling() throws Exception {
-        doThrow(mockedRuntimeException).when(mockedBuilder).get(String.class);
+        doThrow(mockedRuntimeException).when(mockedBuilder).get(ClientResponse.class);
 
         task.run();
 
@@ -136,10 +201,837 @@ public class PollingTaskTest {
 
     @Test
     public void pollingExceptionHandler_processException_ifExceptionIsThrownDuringPolling() throws Exception {
-        doThrow(mockedRuntimeException).when(mockedBuilder).get(String.class);
+        doThrow(mockedRuntimeException).when(mockedBuilder).get(ClientResponse.class);
 
         task.run();
 
         verify(mockedPollingExceptionHandler).handle(mockedRuntimeException);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void task_pollsFetchEngine() throws Exception {
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        when(mockedFetchEngine.fetch(any(FetchRequest.class))).thenReturn(response(PAGE));
+
+        task.run();
+
+        verify(mockedNewFeedHandler).receiveNewFeed(PAGE);
+        assertThat("next uri is set", task.getNextUri(), equalTo(NEXT_URI));
+    }
+
+    private static CompletableFuture<FetchResponse> eventStream(String body) {
+        return CompletableFuture.completedFuture(new FetchResponse(200, Collections.singletonMap("Content-Type", EventStreamReader.EVENT_STREAM), stream(body), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void task_handsEveryEvent_toHandler_inStreamMode() throws Exception {
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setMode(EndpointMode.STREAM);
+        when(mockedFetchEngine.fetch(any(FetchRequest.class))).thenReturn(eventStream("id: 1\ndata: first\n\nid: 2\ndata: second\n\n"));
+        when(mockedNewFeedHandler.receiveNewFeed("first")).thenReturn("uri-1");
+        when(mockedNewFeedHandler.receiveNewFeed("second")).thenReturn("uri-2");
+
+        task.run();
+
+        InOrder inOrder = inOrder(mockedNewFeedHandler);
+        inOrder.verify(mockedNewFeedHandler).receiveNewFeed("first");
+        inOrder.verify(mockedNewFeedHandler).receiveNewFeed("second");
+        assertThat("next uri follows the last event", task.getNextUri(), equalTo("uri-2"));
+        assertThat("polled per event", task.getMetrics().getPolls(), equalTo(2L));
+        assertThat("connects again at once", task.nextPeriod(), equalTo(1L));
+    }
+
+    @Test
+    public void task_reconnectsWithLastEventId_inStreamMode() throws Exception {
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setMode(EndpointMode.STREAM);
+        task.setReconnectDelay(100L);
+        when(mockedFetchEngine.fetch(any(FetchRequest.class)))
+                .thenReturn(eventStream("id: 7\ndata: " + PAGE + "\nretry: 500\n\n"))
+                .thenReturn(eventStream(""));
+
+        task.run();
+        task.run();
+
+        ArgumentCaptor<FetchRequest> requests = ArgumentCaptor.forClass(FetchRequest.class);
+        verify(mockedFetchEngine, times(2)).fetch(requests.capture());
+        assertThat("asks for events", requests.getAllValues().get(0).getAcceptType(), equalTo(EventStreamReader.EVENT_STREAM + ", " + ACCEPT));
+        assertThat("no id at first", requests.getAllValues().get(0).getHeaders().get(EventStreamReader.LAST_EVENT_ID), is(nullValue()));
+        assertThat("resumes after the last event", requests.getAllValues().get(1).getHeaders().get(EventStreamReader.LAST_EVENT_ID), equalTo("7"));
+        assertThat("reconnects to next uri", requests.getAllValues().get(1).getUri(), equalTo(NEXT_URI));
+        assertThat("server asked for a delay", task.nextPeriod(), equalTo(500L));
+    }
+
+    @Test
+    public void task_endsStream_andKeepsEventId_ifHandlerFails() throws Exception {
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setMode(EndpointMode.STREAM);
+        task.setInterval(new AdaptiveInterval(2000L, 2000L, 2000L, 2.0));
+        when(mockedFetchEngine.fetch(any(FetchRequest.class)))
+                .thenReturn(eventStream("id: 1\ndata: " + PAGE + "\n\nid: 2\ndata: broken\n\nid: 3\ndata: never\n\n"))
+                .thenReturn(eventStream(""));
+        when(mockedNewFeedHandler.receiveNewFeed("broken")).thenThrow(mockedRuntimeException);
+
+        task.run();
+
+        verify(mockedPollingExceptionHandler).handle(mockedRuntimeException);
+        verify(mockedNewFeedHandler, never()).receiveNewFeed("never");
+        assertThat("waits a period after a failure", task.nextPeriod(), equalTo(2000L));
+
+        task.run();
+
+        ArgumentCaptor<FetchRequest> requests = ArgumentCaptor.forClass(FetchRequest.class);
+        verify(mockedFetchEngine, times(2)).fetch(requests.capture());
+        assertThat("failed event is read again", requests.getAllValues().get(1).getHeaders().get(EventStreamReader.LAST_EVENT_ID), equalTo("1"));
+    }
+
+    @Test
+    public void task_polls_againAtOnce_inLongPollMode() throws Exception {
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setMode(EndpointMode.LONG_POLL);
+        task.setInterval(new AdaptiveInterval(2000L, 2000L, 2000L, 2.0));
+        when(mockedFetchEngine.fetch(any(FetchRequest.class)))
+                .thenReturn(response(PAGE))
+                .thenReturn(CompletableFuture.<FetchResponse>failedFuture(new IOException()));
+
+        task.run();
+        assertThat("connects again at once", task.nextPeriod(), equalTo(1L));
+
+        task.run();
+        assertThat("waits a period after a failure", task.nextPeriod(), equalTo(2000L));
+    }
+
+    @Test
+    public void task_backsOff_ifLongPollEndsQuicklyWithoutNews() throws Exception {
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setMode(EndpointMode.LONG_POLL);
+        task.setMaxReconnectDelay(10000L);
+        when(mockedFetchEngine.fetch(any(FetchRequest.class))).thenReturn(response("nothing new"));
+
+        task.run();
+        assertThat("waits the reconnect delay", task.nextPeriod(), equalTo(PollingTask.DEFAULT_RECONNECT_DELAY));
+        task.run();
+        assertThat("doubles", task.nextPeriod(), equalTo(2 * PollingTask.DEFAULT_RECONNECT_DELAY));
+        task.run();
+        task.nextPeriod();
+        task.run();
+        assertThat("up to the max", task.nextPeriod(), equalTo(10000L));
+
+        when(mockedFetchEngine.fetch(any(FetchRequest.class))).thenReturn(response(PAGE));
+        task.run();
+        assertThat("connects again at once after news", task.nextPeriod(), equalTo(1L));
+    }
+
+    /**
+     * Body that blocks the reader until it is closed.
+     */
+    private static class EndlessStream extends InputStream {
+        private final CompletableFuture<Void> reading = new CompletableFuture<>();
+        private boolean closed;
+
+        @Override
+        public int read() throws IOException {
+            reading.complete(null);
+            synchronized (this) {
+                while (!closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+            }
+            throw new IOException("closed");
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+
+        synchronized boolean isClosed() {
+            return closed;
+        }
+    }
+
+    private CompletableFuture<Void> openEndlessStream(EndlessStream endless) throws Exception {
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setMode(EndpointMode.STREAM);
+        task.setFetchExecutor(Executors.newSingleThreadExecutor());
+        when(mockedFetchEngine.fetch(any(FetchRequest.class))).thenReturn(CompletableFuture.completedFuture(new FetchResponse(200, endless, StandardCharsets.UTF_8)));
+
+        CompletableFuture<Void> run = task.runAsync();
+        endless.reading.get(1, TimeUnit.SECONDS);
+        return run;
+    }
+
+    @Test
+    public void stop_closesOpenStream() throws Exception {
+        EndlessStream endless = new EndlessStream();
+        CompletableFuture<Void> run = openEndlessStream(endless);
+
+        task.stop();
+
+        run.get(1, TimeUnit.SECONDS);
+        assertThat("closed", endless.isClosed(), is(true));
+        verify(mockedPollingExceptionHandler, never()).handle(any(Exception.class));
+    }
+
+    @Test
+    public void setMode_closesOpenStream_ifModeMovesAwayFromStream() throws Exception {
+        EndlessStream endless = new EndlessStream();
+        CompletableFuture<Void> run = openEndlessStream(endless);
+
+        task.setMode(EndpointMode.STREAM);
+        assertThat("kept open in stream mode", endless.isClosed(), is(false));
+
+        task.setMode(EndpointMode.POLL);
+
+        run.get(1, TimeUnit.SECONDS);
+        assertThat("closed", endless.isClosed(), is(true));
+        verify(mockedPollingExceptionHandler, never()).handle(any(Exception.class));
+    }
+
+    @Test
+    public void runAsync_completesQuietly_ifWorkersShutDownDuringBurst() throws Exception {
+        CompletableFuture<FetchResponse> pending = new CompletableFuture<>();
+        ExecutorService workers = Executors.newSingleThreadExecutor();
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setFetchExecutor(workers);
+        task.setMaxBurstPages(100);
+        when(mockedFetchEngine.fetch(any(FetchRequest.class))).thenReturn(pending);
+
+        CompletableFuture<Void> run = task.runAsync();
+        task.stop();
+        workers.shutdown();
+        pending.complete(new FetchResponse(200, stream(PAGE), StandardCharsets.UTF_8));
+
+        run.get(1, TimeUnit.SECONDS);
+        assertThat("page is handled", task.getNextUri(), equalTo(NEXT_URI));
+        verify(mockedPollingExceptionHandler, never()).handle(any(Exception.class));
+    }
+
+    @Test
+    public void runAsync_completes_afterPendingFetchCompletes() throws Exception {
+        CompletableFuture<FetchResponse> pending = new CompletableFuture<>();
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        when(mockedFetchEngine.fetch(any(FetchRequest.class))).thenReturn(pending);
+
+        CompletableFuture<Void> run = task.runAsync();
+
+        assertThat("run is pending", run.isDone(), is(false));
+        verify(mockedNewFeedHandler, never()).receiveNewFeed(anyString());
+
+        pending.complete(new FetchResponse(200, stream(PAGE), StandardCharsets.UTF_8));
+
+        assertThat("run is done", run.isDone(), is(true));
+        assertThat("next uri is set", task.getNextUri(), equalTo(NEXT_URI));
+    }
+
+    @Test
+    public void pollingExceptionHandler_processException_ifFetchFailsAsynchronously() throws Exception {
+        IOException failure = new IOException();
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        when(mockedFetchEngine.fetch(any(FetchRequest.class))).thenReturn(CompletableFuture.<FetchResponse>failedFuture(failure));
+
+        task.run();
+
+        verify(mockedPollingExceptionHandler).handle(failure);
+        assertThat("uri is not changed", task.getNextUri(), equalTo(INITIAL_URI));
+    }
+
+    @Test
+    public void pollingExceptionHandler_processException_ifStatusIsUnexpected() throws Exception {
+        when(mockedClientResponse.getStatus()).thenReturn(400);
+
+        task.run();
+
+        verify(mockedPollingExceptionHandler).handle(any(UnexpectedStatusException.class));
+        verify(mockedNewFeedHandler, never()).receiveNewFeed(anyString());
+    }
+
+    @Test
+    public void streamingFeedHandler_readsLiveBody_andResponseIsClosed() throws Exception {
+        final boolean[] closed = new boolean[1];
+        InputStream body = new ByteArrayInputStream(PAGE.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+            }
+        };
+        when(mockedFetchEngine.fetch(any(FetchRequest.class))).thenReturn(CompletableFuture.completedFuture(new FetchResponse(200, body, StandardCharsets.UTF_8)));
+
+        StreamingFeedHandler streamingFeedHandler = new StreamingFeedHandler() {
+            @Override
+            public String receiveNewFeed(InputStream page, Charset charset) throws Exception {
+                assertThat("first byte is streamed", (char) page.read(), equalTo(PAGE.charAt(0)));
+                return NEXT_URI;
+            }
+        };
+        task = new PollingTask(mockedFetchEngine, streamingFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+
+        task.run();
+
+        assertThat("next uri is set", task.getNextUri(), equalTo(NEXT_URI));
+        assertThat("response is closed", closed[0], is(true));
+    }
+
+    private static CompletableFuture<FetchResponse> response(int status, String etag, String page) {
+        return CompletableFuture.completedFuture(new FetchResponse(status, Collections.singletonMap(Validators.ETAG, etag), stream(page), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void task_sendsConditionalGet_whenTheSameUriIsReadAgain() throws Exception {
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setConditionalGet(true);
+        when(mockedFetchEngine.fetch(any(FetchRequest.class))).thenReturn(response(200, "v1", PAGE), response(FetchResponse.NOT_MODIFIED, "v1", ""));
+        doThrow(mockedEmptyFeedException).when(mockedNewFeedHandler).receiveNewFeed(PAGE);
+
+        task.run();
+        task.run();
+
+        ArgumentCaptor<FetchRequest> requests = ArgumentCaptor.forClass(FetchRequest.class);
+        verify(mockedFetchEngine, times(2)).fetch(requests.capture());
+        List<FetchRequest> sent = requests.getAllValues();
+
+        assertThat("first request is unconditional", sent.get(0).getHeaders().get(Validators.IF_NONE_MATCH), nullValue());
+        assertThat("second request is conditional", sent.get(1).getHeaders().get(Validators.IF_NONE_MATCH), equalTo("v1"));
+    }
+
+    @Test
+    public void newFeedHandler_isSkipped_ifNotModified() throws Exception {
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setConditionalGet(true);
+        when(mockedFetchEngine.fetch(any(FetchRequest.class))).thenReturn(response(FetchResponse.NOT_MODIFIED, "v1", ""));
+
+        task.run();
+
+        verify(mockedNewFeedHandler, never()).receiveNewFeed(anyString());
+        verify(mockedPollingExceptionHandler, never()).handle(any(Exception.class));
+        assertThat("uri is not changed", task.getNextUri(), equalTo(INITIAL_URI));
+    }
+
+    @Test
+    public void task_sendsUnconditionalGet_ifConditionalGetIsDisabled() throws Exception {
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        when(mockedFetchEngine.fetch(any(FetchRequest.class))).thenReturn(response(200, "v1", PAGE), response(200, "v1", PAGE));
+        doThrow(mockedEmptyFeedException).when(mockedNewFeedHandler).receiveNewFeed(PAGE);
+
+        task.run();
+        task.run();
+
+        ArgumentCaptor<FetchRequest> requests = ArgumentCaptor.forClass(FetchRequest.class);
+        verify(mockedFetchEngine, times(2)).fetch(requests.capture());
+
+        assertThat("second request is unconditional", requests.getAllValues().get(1).getHeaders().isEmpty(), is(true));
+    }
+
+    @Test
+    public void task_asksForCompression_ifCompressionIsEnabled() throws Exception {
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setCompression(true);
+        when(mockedFetchEngine.fetch(any(FetchRequest.class))).thenReturn(response(PAGE));
+
+        task.run();
+
+        ArgumentCaptor<FetchRequest> request = ArgumentCaptor.forClass(FetchRequest.class);
+        verify(mockedFetchEngine).fetch(request.capture());
+
+        assertThat("accept encoding", request.getValue().getHeaders().get(ContentDecoding.ACCEPT_ENCODING), equalTo(ContentDecoding.SUPPORTED_ENCODINGS));
+    }
+
+    @Test
+    public void task_decodesGzipPage_andCountsBytes() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(PAGE.getBytes(StandardCharsets.UTF_8));
+        }
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setCompression(true);
+        when(mockedFetchEngine.fetch(any(FetchRequest.class))).thenReturn(CompletableFuture.completedFuture(new FetchResponse(200,
+                Collections.singletonMap(ContentDecoding.CONTENT_ENCODING, "gzip"), new ByteArrayInputStream(compressed.toByteArray()), StandardCharsets.UTF_8)));
+
+        task.run();
+
+        verify(mockedNewFeedHandler).receiveNewFeed(PAGE);
+        assertThat("received bytes", task.getReceivedBytes(), equalTo((long) compressed.size()));
+        assertThat("decoded bytes", task.getDecodedBytes(), equalTo((long) PAGE.length()));
+    }
+
+    @Test
+    public void nextPeriod_isZero_withoutInterval() throws Exception {
+        assertThat("scheduled period is kept", task.nextPeriod(), equalTo(0L));
+    }
+
+    @Test
+    public void nextPeriod_isOneTick_ifPolledAgainDuringRun() throws Exception {
+        task.setInterval(new AdaptiveInterval(1000L, 1000L, 1000L, 2.0));
+
+        task.pollAgain();
+        assertThat("polls again at once", task.nextPeriod(), equalTo(1L));
+
+        task.run();
+        assertThat("trigger is covered by the run", task.nextPeriod(), equalTo(1000L));
+    }
+
+    @Test
+    public void interval_backsOff_onEmptyFeed() throws Exception {
+        task.setInterval(new AdaptiveInterval(1000L, 100L, 10000L, 2.0));
+        doThrow(mockedEmptyFeedException).when(mockedNewFeedHandler).receiveNewFeed(PAGE);
+
+        task.run();
+
+        assertThat("period backs off", task.nextPeriod(), equalTo(2000L));
+    }
+
+    @Test
+    public void interval_tightens_onNewFeed() throws Exception {
+        task.setInterval(new AdaptiveInterval(1000L, 100L, 10000L, 2.0));
+
+        task.run();
+
+        assertThat("period tightens", task.nextPeriod(), equalTo(500L));
+    }
+
+    @Test
+    public void interval_isUnchanged_onFailure() throws Exception {
+        task.setInterval(new AdaptiveInterval(1000L, 100L, 10000L, 2.0));
+        doThrow(mockedRuntimeException).when(mockedBuilder).get(ClientResponse.class);
+
+        task.run();
+
+        assertThat("period is unchanged", task.nextPeriod(), equalTo(1000L));
+    }
+
+    @Test
+    public void nextPeriod_isJittered_aroundInterval() throws Exception {
+        task.setInterval(new AdaptiveInterval(1000L, 1000L, 1000L, 2.0));
+        task.setJitter(0.2);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat("within 20% of the period", Math.abs(task.nextPeriod() - 1000L), lessThanOrEqualTo(200L));
+        }
+    }
+
+    @Test
+    public void circuitBreaker_skipsFetching_onceOpen() throws Exception {
+        task.setCircuitBreaker(new CircuitBreaker(2, 10000L, 10000L));
+        task.setInterval(new AdaptiveInterval(1000L, 1000L, 1000L, 2.0));
+        doThrow(mockedRuntimeException).when(mockedBuilder).get(ClientResponse.class);
+
+        task.run();
+        task.run();
+        task.run();
+
+        verify(mockedBuilder, times(2)).get(ClientResponse.class);
+        assertThat("circuit opened once", task.getMetrics().getCircuitOpens(), equalTo(1L));
+        assertThat("open run is skipped", task.getMetrics().getSkippedPolls(), equalTo(1L));
+        assertThat("next run waits for the probe", task.nextPeriod() > 5000L, is(true));
+    }
+
+    @Test
+    public void circuitBreaker_ignoresHandlerFailures() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 10000L, 10000L);
+        task.setCircuitBreaker(breaker);
+        doThrow(mockedRuntimeException).when(mockedNewFeedHandler).receiveNewFeed(PAGE);
+
+        task.run();
+
+        assertThat("upstream answered", breaker.getState(), equalTo(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void hostCircuitBreaker_isProbed_onlyIfEndpointAllows() throws Exception {
+        CircuitBreaker endpoint = new CircuitBreaker(1, 10000L, 10000L);
+        CircuitBreaker host = new CircuitBreaker(1, 1L, 1L);
+        task.setCircuitBreaker(endpoint);
+        task.setHostCircuitBreaker(host);
+        endpoint.onFailure(System.nanoTime());
+        host.onFailure(System.nanoTime());
+        TimeUnit.MILLISECONDS.sleep(5);
+
+        task.run();
+
+        verify(mockedBuilder, never()).get(ClientResponse.class);
+        assertThat("host probe is left for other endpoints", host.getState(), equalTo(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    public void hostCircuitBreaker_getsProbeBack_ifTaskStopsDuringProbe() throws Exception {
+        CompletableFuture<FetchResponse> pending = new CompletableFuture<>();
+        CircuitBreaker host = new CircuitBreaker(1, 1L, 1L);
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setHostCircuitBreaker(host);
+        when(mockedFetchEngine.fetch(any(FetchRequest.class))).thenReturn(pending);
+        host.onFailure(System.nanoTime());
+        TimeUnit.MILLISECONDS.sleep(5);
+
+        task.runAsync();
+        assertThat("endpoint holds the probe", host.getState(), equalTo(CircuitBreaker.State.HALF_OPEN));
+        task.stop();
+        pending.completeExceptionally(new IOException("closed"));
+
+        assertThat("probe is handed back", host.getState(), equalTo(CircuitBreaker.State.OPEN));
+        assertThat("another endpoint may probe", host.tryAcquire(System.nanoTime()), is(true));
+    }
+
+    @Test
+    public void contentDigest_skipsHandler_forUnchangedPage() throws Exception {
+        task.setContentDigest(true);
+        doThrow(mockedEmptyFeedException).when(mockedNewFeedHandler).receiveNewFeed(PAGE);
+        when(mockedClientResponse.getEntityInputStream()).thenReturn(stream(PAGE), stream(PAGE), stream("CHANGED PAGE"));
+
+        task.run();
+        task.run();
+        task.run();
+
+        verify(mockedNewFeedHandler, times(1)).receiveNewFeed(PAGE);
+        verify(mockedNewFeedHandler, times(1)).receiveNewFeed("CHANGED PAGE");
+        assertThat("unchanged page still counts as empty", task.getMetrics().getEmptyFeeds(), equalTo(3L));
+    }
+
+    @Test
+    public void contentDigest_isNotKept_ifHandlerFails() throws Exception {
+        task.setContentDigest(true);
+        doThrow(mockedRuntimeException).when(mockedNewFeedHandler).receiveNewFeed(PAGE);
+        when(mockedClientResponse.getEntityInputStream()).thenReturn(stream(PAGE), stream(PAGE));
+
+        task.run();
+        task.run();
+
+        verify(mockedNewFeedHandler, times(2)).receiveNewFeed(PAGE);
+    }
+
+    private void mockFeed(int pages) throws Exception {
+        for (int i = 0; i < pages; i++) {
+            String uri = i == 0 ? INITIAL_URI : "page/" + i;
+            when(mockedFetchEngine.fetch(argThat(new RequestFor(uri)))).thenAnswer(invocation -> response(uri));
+            when(mockedNewFeedHandler.receiveNewFeed(uri)).thenReturn("page/" + (i + 1));
+        }
+        String last = "page/" + pages;
+        when(mockedFetchEngine.fetch(argThat(new RequestFor(last)))).thenAnswer(invocation -> response(""));
+        doThrow(mockedEmptyFeedException).when(mockedNewFeedHandler).receiveNewFeed("");
+    }
+
+    private static class RequestFor implements ArgumentMatcher<FetchRequest> {
+        private final String uri;
+
+        RequestFor(String uri) {
+            this.uri = uri;
+        }
+
+        @Override
+        public boolean matches(FetchRequest request) {
+            return request != null && request.getUri().equals(uri);
+        }
+    }
+
+    @Test
+    public void task_readsOnePage_ifDrainIsDisabled() throws Exception {
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        mockFeed(5);
+
+        task.run();
+
+        assertThat("one page is read", task.getNextUri(), equalTo("page/1"));
+    }
+
+    @Test
+    public void task_drainsFeed_untilItIsEmpty() throws Exception {
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setMaxBurstPages(100);
+        mockFeed(5);
+
+        task.run();
+
+        assertThat("every page is read", task.getNextUri(), equalTo("page/5"));
+        verify(mockedFetchEngine, times(6)).fetch(any(FetchRequest.class));
+    }
+
+    @Test
+    public void task_stopsDraining_atBurstCap() throws Exception {
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setMaxBurstPages(3);
+        mockFeed(5);
+
+        task.run();
+
+        assertThat("3 pages are read", task.getNextUri(), equalTo("page/3"));
+    }
+
+    @Test
+    public void task_drainsFeed_acrossAsynchronousFetches() throws Exception {
+        final CompletableFuture<FetchResponse> pending = new CompletableFuture<>();
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setMaxBurstPages(100);
+        mockFeed(3);
+        when(mockedFetchEngine.fetch(argThat(new RequestFor("page/1")))).thenReturn(pending);
+
+        CompletableFuture<Void> run = task.runAsync();
+        assertThat("run waits for page 1", run.isDone(), is(false));
+
+        pending.complete(new FetchResponse(200, stream("page/1"), StandardCharsets.UTF_8));
+
+        assertThat("run is done", run.isDone(), is(true));
+        assertThat("every page is read", task.getNextUri(), equalTo("page/3"));
+    }
+
+    @Test
+    public void task_stopsDraining_afterStop() throws Exception {
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setMaxBurstPages(100);
+        mockFeed(5);
+        task.stop();
+
+        task.run();
+
+        assertThat("one page is read", task.getNextUri(), equalTo("page/1"));
+    }
+
+    private static String predictUpTo(String uri, int lastPage) {
+        if (uri.equals(INITIAL_URI)) {
+            return "page/1";
+        }
+        int page = Integer.parseInt(uri.substring("page/".length()));
+        return page < lastPage ? "page/" + (page + 1) : null;
+    }
+
+    @Test
+    public void task_usesPrefetchedPages_ifPredictionHolds() throws Exception {
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setMaxBurstPages(100);
+        task.setNextUriPredictor(uri -> predictUpTo(uri, 3));
+        mockFeed(3);
+
+        task.run();
+
+        assertThat("every page is read", task.getNextUri(), equalTo("page/3"));
+        assertThat("every prediction is used", task.getPrefetchHits(), equalTo(3L));
+        assertThat("nothing is discarded", task.getPrefetchMisses(), equalTo(0L));
+        verify(mockedFetchEngine, times(1)).fetch(argThat(new RequestFor("page/1")));
+        verify(mockedFetchEngine, times(4)).fetch(any(FetchRequest.class));
+    }
+
+    @Test
+    public void task_discardsPrefetchedPages_ifFeedMovesElsewhere() throws Exception {
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setMaxBurstPages(100);
+        task.setNextUriPredictor(uri -> "page/9");
+        mockFeed(2);
+        when(mockedFetchEngine.fetch(argThat(new RequestFor("page/9")))).thenAnswer(invocation -> response("SPECULATIVE"));
+
+        task.run();
+
+        assertThat("every page is read", task.getNextUri(), equalTo("page/2"));
+        assertThat("no prediction is used", task.getPrefetchHits(), equalTo(0L));
+        assertThat("every prediction is discarded", task.getPrefetchMisses(), equalTo(3L));
+        verify(mockedNewFeedHandler, never()).receiveNewFeed("SPECULATIVE");
+    }
+
+    @Test
+    public void task_doesNotPrefetch_ifDrainIsDisabled() throws Exception {
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setNextUriPredictor(uri -> predictUpTo(uri, 3));
+        mockFeed(3);
+
+        task.run();
+
+        verify(mockedFetchEngine, never()).fetch(argThat(new RequestFor("page/1")));
+    }
+
+    @Test
+    public void task_handlesPages_onHandleStage() throws Exception {
+        ExecutorService handlers = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "handler"));
+        final String[] handlerThread = new String[1];
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setHandleStage(new HandleStage(handlers, 1));
+        when(mockedFetchEngine.fetch(any(FetchRequest.class))).thenReturn(response(PAGE));
+        when(mockedNewFeedHandler.receiveNewFeed(PAGE)).thenAnswer(invocation -> {
+            handlerThread[0] = Thread.currentThread().getName();
+            return NEXT_URI;
+        });
+
+        task.run();
+        handlers.shutdown();
+
+        assertThat("handled on the stage", handlerThread[0], equalTo("handler"));
+        assertThat("nextUri is updated", task.getNextUri(), equalTo(NEXT_URI));
+    }
+
+    @Test
+    public void task_waitsToHandle_whileHandlersAreBehind() throws Exception {
+        ExecutorService handlers = Executors.newSingleThreadExecutor();
+        HandleStage stage = new HandleStage(handlers, 1);
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setHandleStage(stage);
+        when(mockedFetchEngine.fetch(any(FetchRequest.class))).thenReturn(response(PAGE));
+
+        // another endpoint holds the only slot
+        stage.reserve();
+        CompletableFuture<Void> run = task.runAsync();
+
+        assertThat("run waits for a slot", run.isDone(), is(false));
+        verify(mockedNewFeedHandler, never()).receiveNewFeed(anyString());
+
+        stage.release();
+        run.get(1, TimeUnit.SECONDS);
+        handlers.shutdown();
+
+        verify(mockedFetchEngine, times(1)).fetch(any(FetchRequest.class));
+        assertThat("nextUri is updated", task.getNextUri(), equalTo(NEXT_URI));
+    }
+
+    @Test
+    public void tasks_fetchConcurrently_beyondHandleStageCapacity() throws Exception {
+        ExecutorService handlers = Executors.newSingleThreadExecutor();
+        HandleStage stage = new HandleStage(handlers, 2);
+        List<CompletableFuture<FetchResponse>> slowResponses = new ArrayList<>();
+        List<CompletableFuture<Void>> runs = new ArrayList<>();
+        when(mockedFetchEngine.fetch(any(FetchRequest.class))).thenAnswer(invocation -> {
+            CompletableFuture<FetchResponse> slow = new CompletableFuture<>();
+            slowResponses.add(slow);
+            return slow;
+        });
+
+        for (int i = 0; i < 5; i++) {
+            PollingTask endpoint = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY + i, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+            endpoint.setHandleStage(stage);
+            runs.add(endpoint.runAsync());
+        }
+
+        assertThat("slow upstreams do not take slots", slowResponses.size(), equalTo(5));
+        assertThat("no slot is taken yet", stage.getReserved(), equalTo(0));
+
+        for (CompletableFuture<FetchResponse> slow : slowResponses) {
+            slow.complete(new FetchResponse(200, stream(PAGE), StandardCharsets.UTF_8));
+        }
+        for (CompletableFuture<Void> run : runs) {
+            run.get(1, TimeUnit.SECONDS);
+        }
+        handlers.shutdown();
+
+        verify(mockedNewFeedHandler, times(5)).receiveNewFeed(PAGE);
+        assertThat("every slot is freed", stage.getReserved(), equalTo(0));
+    }
+
+    @Test
+    public void task_drainsFeed_acrossStages_inOrder() throws Exception {
+        ExecutorService workers = Executors.newFixedThreadPool(2);
+        ExecutorService handlers = Executors.newFixedThreadPool(2);
+        task = new PollingTask(mockedFetchEngine, mockedNewFeedHandler, KEY, INITIAL_URI, ACCEPT, mockedPollingExceptionHandler);
+        task.setFetchExecutor(workers);
+        task.setHandleStage(new HandleStage(handlers, 1));
+        task.setMaxBurstPages(100);
+        mockFeed(5);
+
+        task.runAsync().get(1, TimeUnit.SECONDS);
+        workers.shutdown();
+        handlers.shutdown();
+
+        assertThat("every page is read", task.getNextUri(), equalTo("page/5"));
+        InOrder inOrder = inOrder(mockedNewFeedHandler);
+        inOrder.verify(mockedNewFeedHandler).receiveNewFeed(INITIAL_URI);
+        for (int i = 1; i < 5; i++) {
+            inOrder.verify(mockedNewFeedHandler).receiveNewFeed("page/" + i);
+        }
+    }
+
+    @Test
+    public void task_handsPageToBatch_andAdvancesWithItsResult() throws Exception {
+        BatchFeedHandler batchFeedHandler = mock(BatchFeedHandler.class);
+        when(batchFeedHandler.receiveNewFeeds(anyList())).thenReturn(Collections.singletonList(NEXT_URI));
+        task.setPageBatcher(new PageBatcher(batchFeedHandler, 1, 1000L, Runnable::run));
+
+        task.run();
+
+        ArgumentCaptor<List> pages = ArgumentCaptor.forClass(List.class);
+        verify(batchFeedHandler).receiveNewFeeds(pages.capture());
+        FeedPage page = (FeedPage) pages.getValue().get(0);
+        assertThat("key", page.getKey(), equalTo(KEY));
+        assertThat("uri", page.getUri(), equalTo(INITIAL_URI));
+        assertThat("page", page.getPage(), equalTo(PAGE));
+        assertThat("nextUri is updated", task.getNextUri(), equalTo(NEXT_URI));
+        verify(mockedNewFeedHandler, never()).receiveNewFeed(anyString());
+    }
+
+    @Test
+    public void task_keepsNextUri_ifBatchMarksFeedEmpty() throws Exception {
+        BatchFeedHandler batchFeedHandler = mock(BatchFeedHandler.class);
+        when(batchFeedHandler.receiveNewFeeds(anyList())).thenReturn(Collections.singletonList((String) null));
+        task.setPageBatcher(new PageBatcher(batchFeedHandler, 1, 1000L, Runnable::run));
+
+        task.run();
+
+        assertThat("nextUri is unchanged", task.getNextUri(), equalTo(INITIAL_URI));
+        verify(mockedPollingExceptionHandler, never()).handle(any(Exception.class));
+    }
+
+    @Test
+    public void task_callsPollingExceptionHandler_ifBatchFails() throws Exception {
+        RuntimeException failure = new RuntimeException("commit failed");
+        BatchFeedHandler batchFeedHandler = mock(BatchFeedHandler.class);
+        when(batchFeedHandler.receiveNewFeeds(anyList())).thenThrow(failure);
+        task.setPageBatcher(new PageBatcher(batchFeedHandler, 1, 1000L, Runnable::run));
+
+        task.run();
+
+        assertThat("nextUri is unchanged", task.getNextUri(), equalTo(INITIAL_URI));
+        verify(mockedPollingExceptionHandler, times(1)).handle(failure);
+    }
+
+    @Test
+    public void task_recordsCheckpoint_whenFeedAdvances() throws Exception {
+        CheckpointStore checkpointStore = mock(CheckpointStore.class);
+        task.setCheckpointStore(checkpointStore);
+
+        task.run();
+
+        verify(checkpointStore, times(1)).record(KEY, NEXT_URI);
+    }
+
+    @Test
+    public void task_doesNotRecordCheckpoint_forEmptyFeed() throws Exception {
+        CheckpointStore checkpointStore = mock(CheckpointStore.class);
+        task.setCheckpointStore(checkpointStore);
+        doThrow(mockedEmptyFeedException).when(mockedNewFeedHandler).receiveNewFeed(PAGE);
+
+        task.run();
+
+        verify(checkpointStore, never()).record(anyString(), anyString());
+    }
+
+    @Test
+    public void task_callsPollingExceptionHandler_ifCheckpointFails() throws Exception {
+        IOException failure = new IOException("disk full");
+        CheckpointStore checkpointStore = mock(CheckpointStore.class);
+        doThrow(failure).when(checkpointStore).record(KEY, NEXT_URI);
+        task.setCheckpointStore(checkpointStore);
+
+        task.run();
+
+        assertThat("feed still advances", task.getNextUri(), equalTo(NEXT_URI));
+        verify(mockedPollingExceptionHandler, times(1)).handle(failure);
+    }
+
+    @Test
+    public void task_countsPolls_inMetrics() throws Exception {
+        task.run();
+
+        doThrow(mockedEmptyFeedException).when(mockedNewFeedHandler).receiveNewFeed(PAGE);
+        when(mockedClient.resource(NEXT_URI)).thenReturn(mockedWebResource);
+        when(mockedClientResponse.getEntityInputStream()).thenReturn(stream(PAGE));
+        task.run();
+
+        when(mockedClient.resource(NEXT_URI)).thenThrow(mockedRuntimeException);
+        task.run();
+
+        EndpointMetrics metrics = task.getMetrics();
+        assertThat("polls", metrics.getPolls(), equalTo(3L));
+        assertThat("new feeds", metrics.getNewFeeds(), equalTo(1L));
+        assertThat("empty feeds", metrics.getEmptyFeeds(), equalTo(1L));
+        assertThat("errors", metrics.getErrors(), equalTo(1L));
+        assertThat("bytes", metrics.getReceivedBytes(), equalTo(2L * PAGE.length()));
+        assertThat("latency is recorded", metrics.getPollLatency().getCount(), equalTo(3L));
+    }
+}
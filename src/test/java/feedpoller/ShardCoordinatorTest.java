@@ -0,0 +1,177 @@
+package feedpoller;
+
+import feedpoller.domain.EndpointConfig;
+import feedpoller.domain.PollingResult;
+import feedpoller.shard.ConsistentHashRing;
+import feedpoller.shard.CoordinationStore;
+import feedpoller.shard.FileCoordinationStore;
+import feedpoller.shard.Lease;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class ShardCoordinatorTest {
+    private static final long LEASE_TTL = 60000L;
+    private static final int ENDPOINT_COUNT = 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<EndpointConfig> endpointConfigs;
+    private FileCoordinationStore store;
+    private FeedPoller feedPoller1;
+    private FeedPoller feedPoller2;
+
+    @Before
+    public void setUp() throws Exception {
+        endpointConfigs = new ArrayList<>();
+        for (int i = 0; i < ENDPOINT_COUNT; i++) {
+            endpointConfigs.add(new EndpointConfig("feed-" + i, "http://feed/" + i + "/1", 1000L));
+        }
+
+        store = new FileCoordinationStore(folder.getRoot().toPath());
+        feedPoller1 = mockFeedPoller();
+        feedPoller2 = mockFeedPoller();
+    }
+
+    // every endpoint has moved on to page 2
+    private FeedPoller mockFeedPoller() {
+        FeedPoller feedPoller = mock(FeedPoller.class);
+        for (EndpointConfig endpointConfig : endpointConfigs) {
+            PollingResult result = new PollingResult(endpointConfig.getKey(), endpointConfig.getStart(), positionOf(endpointConfig), 0L, 0L);
+            when(feedPoller.getResult(endpointConfig.getKey())).thenReturn(result);
+            when(feedPoller.removeEndpoint(endpointConfig.getKey())).thenReturn(result);
+        }
+        return feedPoller;
+    }
+
+    private static String positionOf(EndpointConfig endpointConfig) {
+        return endpointConfig.getStart().replace("/1", "/2");
+    }
+
+    private ShardCoordinator coordinatorOf(FeedPoller feedPoller, String nodeId) {
+        return new ShardCoordinator(feedPoller, endpointConfigs, store, nodeId, LEASE_TTL);
+    }
+
+    @Test
+    public void run_takesEveryEndpoint_whenAlone() throws Exception {
+        coordinatorOf(feedPoller1, "node-1").run();
+
+        for (EndpointConfig endpointConfig : endpointConfigs) {
+            verify(feedPoller1).addEndpoint(endpointConfig, null);
+        }
+        assertThat(store.getLiveNodes(), equalTo(Collections.singleton("node-1")));
+    }
+
+    @Test
+    public void run_renewsLeases_withCurrentPosition() throws Exception {
+        ShardCoordinator coordinator = coordinatorOf(feedPoller1, "node-1");
+        coordinator.run();
+        coordinator.run();
+
+        Lease lease = store.acquire("feed-0", "node-1", LEASE_TTL);
+        assertThat(lease.getPosition(), equalTo("http://feed/0/2"));
+    }
+
+    @Test
+    public void run_waitsForLeases_heldByAnotherNode() throws Exception {
+        coordinatorOf(feedPoller1, "node-1").run();
+
+        // node-1 disappears without releasing, so its leases are held until they expire
+        store.leave("node-1");
+        coordinatorOf(feedPoller2, "node-2").run();
+
+        verify(feedPoller2, never()).addEndpoint(eq(endpointConfigs.get(0)), anyString());
+        verify(feedPoller2, never()).addEndpoint(endpointConfigs.get(0), null);
+    }
+
+    @Test
+    public void run_handsEndpointsOver_whenNodeJoins() throws Exception {
+        ShardCoordinator coordinator1 = coordinatorOf(feedPoller1, "node-1");
+        ShardCoordinator coordinator2 = coordinatorOf(feedPoller2, "node-2");
+        coordinator1.run();
+
+        // node-2 announces itself, node-1 releases its share, then node-2 takes it
+        coordinator2.run();
+        coordinator1.run();
+        coordinator2.run();
+
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("node-1", "node-2"));
+        int moved = 0;
+        for (EndpointConfig endpointConfig : endpointConfigs) {
+            if (ring.nodeOf(endpointConfig.getKey()).equals("node-2")) {
+                verify(feedPoller1).removeEndpoint(endpointConfig.getKey());
+                verify(feedPoller2).addEndpoint(endpointConfig, positionOf(endpointConfig));
+                moved++;
+            } else {
+                verify(feedPoller1, never()).removeEndpoint(endpointConfig.getKey());
+                verify(feedPoller2, never()).addEndpoint(eq(endpointConfig), anyString());
+            }
+        }
+        assertThat("some endpoints move", moved, greaterThan(0));
+    }
+
+    @Test
+    public void leave_releasesLeases_withFinalPositions() throws Exception {
+        ShardCoordinator coordinator = coordinatorOf(feedPoller1, "node-1");
+        coordinator.run();
+
+        Map<String, String> positions = new HashMap<>();
+        positions.put("feed-0", "http://feed/0/7");
+        coordinator.leave(positions);
+
+        Lease lease = store.acquire("feed-0", "node-2", LEASE_TTL);
+        assertThat("released", lease, is(notNullValue()));
+        assertThat(lease.getPosition(), equalTo("http://feed/0/7"));
+        assertThat("node left", store.getLiveNodes().isEmpty(), is(true));
+    }
+
+    @Test
+    public void run_stopsPolling_whenLeaseIsTaken() throws Exception {
+        CoordinationStore coordinationStore = mock(CoordinationStore.class);
+        when(coordinationStore.getLiveNodes()).thenReturn(Collections.singleton("node-1"));
+        when(coordinationStore.acquire(anyString(), eq("node-1"), anyLong())).thenReturn(new Lease("feed", "node-1", null, 0L));
+        when(coordinationStore.renew(anyString(), eq("node-1"), anyString(), anyLong())).thenReturn(false);
+
+        ShardCoordinator coordinator = new ShardCoordinator(feedPoller1, endpointConfigs, coordinationStore, "node-1", LEASE_TTL);
+        coordinator.run();
+        coordinator.run();
+
+        for (EndpointConfig endpointConfig : endpointConfigs) {
+            verify(feedPoller1).removeEndpoint(endpointConfig.getKey());
+            verify(coordinationStore, never()).release(eq(endpointConfig.getKey()), anyString(), anyString());
+        }
+    }
+
+    @Test
+    public void run_doesNothing_afterStop() throws Exception {
+        ShardCoordinator coordinator = coordinatorOf(feedPoller1, "node-1");
+        coordinator.stop();
+        coordinator.run();
+
+        verifyZeroInteractions(feedPoller1);
+        assertThat("no heartbeat", store.getLiveNodes().isEmpty(), is(true));
+    }
+}
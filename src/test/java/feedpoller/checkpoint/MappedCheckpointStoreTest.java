@@ -0,0 +1,81 @@
+package feedpoller.checkpoint;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MappedCheckpointStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path log() {
+        return folder.getRoot().toPath().resolve("checkpoints.log");
+    }
+
+    @Test
+    public void store_keepsLatestPosition_acrossReopen() throws Exception {
+        MappedCheckpointStore store = new MappedCheckpointStore(log());
+        store.record("foo", "http://foo/1");
+        store.record("bar", "http://bar/1");
+        store.record("foo", "http://foo/2");
+        // no close, as if the process is killed
+
+        Map<String, String> positions = new MappedCheckpointStore(log()).load();
+
+        assertThat("foo", positions.get("foo"), equalTo("http://foo/2"));
+        assertThat("bar", positions.get("bar"), equalTo("http://bar/1"));
+    }
+
+    @Test
+    public void store_compacts_whenLogIsFull() throws Exception {
+        MappedCheckpointStore store = new MappedCheckpointStore(log(), 256);
+        for (int i = 0; i < 1000; i++) {
+            store.record("foo", "http://foo/" + i);
+            store.record("bar", "http://bar/" + i);
+        }
+        store.close();
+
+        Map<String, String> positions = new MappedCheckpointStore(log(), 256).load();
+
+        assertThat("log stays small", Files.size(log()), equalTo(256L));
+        assertThat("foo", positions.get("foo"), equalTo("http://foo/999"));
+        assertThat("bar", positions.get("bar"), equalTo("http://bar/999"));
+    }
+
+    @Test
+    public void store_ignoresTornRecord() throws Exception {
+        MappedCheckpointStore store = new MappedCheckpointStore(log(), 256);
+        store.record("foo", "http://foo/1");
+        store.close();
+
+        // a record of the right length whose payload never made it to disk
+        try (RandomAccessFile file = new RandomAccessFile(log().toFile(), "rw")) {
+            long end = 8 + 4 + "foo".length() + "http://foo/1".length();
+            file.seek(end);
+            file.writeInt(20);
+            file.writeInt(12345);
+        }
+
+        Map<String, String> positions = new MappedCheckpointStore(log(), 256).load();
+
+        assertThat("one endpoint", positions.size(), equalTo(1));
+        assertThat("foo", positions.get("foo"), equalTo("http://foo/1"));
+    }
+
+    @Test
+    public void store_startsEmpty_withoutLog() throws Exception {
+        MappedCheckpointStore store = new MappedCheckpointStore(log());
+
+        assertThat("no position", store.load().isEmpty(), is(true));
+        assertThat("log is created", Files.exists(log()), is(true));
+    }
+}
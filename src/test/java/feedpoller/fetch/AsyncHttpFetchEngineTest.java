@@ -0,0 +1,134 @@
+package feedpoller.fetch;
+
+import feedpoller.stub.SimpleHandler;
+import feedpoller.stub.SimpleServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.fail;
+
+public class AsyncHttpFetchEngineTest {
+    private static final String FOO_URI = "http://localhost:9090/foo";
+    private static final String BAD_URI = "http://localhost:9090/bad";
+    private static final long RESPONSE_DELAY = 100L;
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 2;
+
+    SimpleServer simpleServer;
+    SimpleHandler simpleHandler;
+
+    AsyncHttpFetchEngine engine;
+
+    @Before
+    public void setUp() throws Exception {
+        simpleHandler = new SimpleHandler();
+        simpleHandler.mapRequestToResponse(FOO_URI, "foo page", 200);
+        simpleHandler.mapRequestToResponse(BAD_URI, "bad request", 400);
+
+        simpleServer = new SimpleServer(simpleHandler, 9090);
+        simpleServer.start();
+
+        engine = new AsyncHttpFetchEngine(1, MAX_CONNECTIONS_PER_ROUTE, 5000L);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        engine.close();
+        simpleServer.stop();
+    }
+
+    private static String read(FetchResponse response) {
+        try {
+            return response.readBody();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    public void fetch_returnsBody() throws Exception {
+        FetchResponse response = engine.fetch(new FetchRequest(FOO_URI, MediaType.TEXT_PLAIN)).get(5, TimeUnit.SECONDS);
+
+        assertThat("status", response.getStatus(), equalTo(200));
+        assertThat("body", response.readBody().trim(), equalTo("foo page"));
+    }
+
+    @Test
+    public void fetch_returnsNotModified_forMatchingETag() throws Exception {
+        simpleHandler.mapRequestToETag(FOO_URI, "\"v1\"");
+
+        FetchResponse first = engine.fetch(new FetchRequest(FOO_URI, MediaType.TEXT_PLAIN)).get(5, TimeUnit.SECONDS);
+        read(first);
+        Validators validators = Validators.of(FOO_URI, first);
+
+        FetchResponse second = engine.fetch(new FetchRequest(FOO_URI, MediaType.TEXT_PLAIN, validators.toConditionalHeaders())).get(5, TimeUnit.SECONDS);
+        second.close();
+
+        assertThat("etag", validators.getEtag(), equalTo("\"v1\""));
+        assertThat("not modified", second.isNotModified(), equalTo(true));
+    }
+
+    @Test
+    public void fetch_failsWithUnexpectedStatus() throws Exception {
+        try {
+            engine.fetch(new FetchRequest(BAD_URI, MediaType.TEXT_PLAIN)).get(5, TimeUnit.SECONDS);
+            fail("exception is expected");
+        } catch (ExecutionException e) {
+            assertThat("cause", e.getCause(), instanceOf(UnexpectedStatusException.class));
+            assertThat("status", ((UnexpectedStatusException) e.getCause()).getStatus(), equalTo(400));
+        }
+    }
+
+    @Test
+    public void fetch_capsRequestsPerRoute() throws Exception {
+        simpleHandler.setResponseDelay(RESPONSE_DELAY);
+        RouteLimiter route = engine.routeOf(URI.create(FOO_URI));
+
+        long start = System.nanoTime();
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(engine.fetch(new FetchRequest(FOO_URI, MediaType.TEXT_PLAIN)).thenApply(AsyncHttpFetchEngineTest::read));
+            assertThat("active requests are capped", route.getActive(), lessThanOrEqualTo(MAX_CONNECTIONS_PER_ROUTE));
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat("6 requests over 2 connections take 3 rounds", elapsed, greaterThanOrEqualTo(3 * RESPONSE_DELAY));
+        assertThat("no request is left waiting", route.getWaiting(), equalTo(0));
+        assertThat("every connection is released", route.getActive(), equalTo(0));
+    }
+
+    @Test
+    public void connection_isHeld_untilBodyIsClosed() throws Exception {
+        RouteLimiter route = engine.routeOf(URI.create(FOO_URI));
+
+        FetchResponse first = engine.fetch(new FetchRequest(FOO_URI, MediaType.TEXT_PLAIN)).get(5, TimeUnit.SECONDS);
+        FetchResponse second = engine.fetch(new FetchRequest(FOO_URI, MediaType.TEXT_PLAIN)).get(5, TimeUnit.SECONDS);
+        CompletableFuture<FetchResponse> third = engine.fetch(new FetchRequest(FOO_URI, MediaType.TEXT_PLAIN));
+
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertThat("third request waits for a connection", third.isDone(), equalTo(false));
+
+        first.close();
+
+        assertThat("third request gets the released connection", read(third.get(5, TimeUnit.SECONDS)).trim(), equalTo("foo page"));
+        second.close();
+        assertThat("every connection is released", route.getActive(), equalTo(0));
+    }
+}
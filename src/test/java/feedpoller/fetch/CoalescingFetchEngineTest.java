@@ -0,0 +1,124 @@
+package feedpoller.fetch;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class CoalescingFetchEngineTest {
+    private static final String FOO_URI = "http://foo.com/feed/1";
+    private static final String BAR_URI = "http://foo.com/feed/2";
+
+    @Mock
+    FetchEngine mockedFetchEngine;
+
+    CompletableFuture<FetchResponse> pending;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        pending = new CompletableFuture<>();
+        given(mockedFetchEngine.fetch(any(FetchRequest.class))).willReturn(pending);
+    }
+
+    private static FetchRequest request(String uri) {
+        return new FetchRequest(uri, MediaType.TEXT_PLAIN);
+    }
+
+    private static FetchResponse page(String body) {
+        return new FetchResponse(200, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+    }
+
+    private static String read(CompletableFuture<FetchResponse> response) throws Exception {
+        return response.get(1, TimeUnit.SECONDS).readBody();
+    }
+
+    @Test
+    public void fetch_sharesRequest_inFlight() throws Exception {
+        CoalescingFetchEngine engine = new CoalescingFetchEngine(mockedFetchEngine, 0, Runnable::run);
+
+        CompletableFuture<FetchResponse> first = engine.fetch(request(FOO_URI));
+        CompletableFuture<FetchResponse> second = engine.fetch(request(FOO_URI));
+        pending.complete(page("foo page"));
+
+        assertThat("first gets the body", read(first), equalTo("foo page"));
+        assertThat("second gets its own copy", read(second), equalTo("foo page"));
+        verify(mockedFetchEngine, times(1)).fetch(any(FetchRequest.class));
+        assertThat("coalesced", engine.getCoalesced(), equalTo(1L));
+    }
+
+    @Test
+    public void fetch_sendsAgain_afterFlightWithoutTtl() throws Exception {
+        CoalescingFetchEngine engine = new CoalescingFetchEngine(mockedFetchEngine, 0, Runnable::run);
+        pending.complete(page("foo page"));
+
+        read(engine.fetch(request(FOO_URI)));
+        given(mockedFetchEngine.fetch(any(FetchRequest.class))).willReturn(CompletableFuture.completedFuture(page("newer page")));
+
+        assertThat("fresh response", read(engine.fetch(request(FOO_URI))), equalTo("newer page"));
+    }
+
+    @Test
+    public void fetch_reusesResponse_withinTtl() throws Exception {
+        CoalescingFetchEngine engine = new CoalescingFetchEngine(mockedFetchEngine, 100L, Runnable::run);
+        pending.complete(page("foo page"));
+
+        read(engine.fetch(request(FOO_URI)));
+        assertThat("cached", read(engine.fetch(request(FOO_URI))), equalTo("foo page"));
+        verify(mockedFetchEngine, times(1)).fetch(any(FetchRequest.class));
+
+        TimeUnit.MILLISECONDS.sleep(300);
+        given(mockedFetchEngine.fetch(any(FetchRequest.class))).willReturn(CompletableFuture.completedFuture(page("newer page")));
+        assertThat("expired", read(engine.fetch(request(FOO_URI))), equalTo("newer page"));
+    }
+
+    @Test
+    public void fetch_keepsRequests_withDifferentUrisOrHeadersApart() throws Exception {
+        CoalescingFetchEngine engine = new CoalescingFetchEngine(mockedFetchEngine, 0, Runnable::run);
+
+        engine.fetch(request(FOO_URI));
+        engine.fetch(request(BAR_URI));
+        engine.fetch(new FetchRequest(FOO_URI, MediaType.TEXT_PLAIN, Collections.singletonMap("If-None-Match", "\"1\"")));
+
+        verify(mockedFetchEngine, times(3)).fetch(any(FetchRequest.class));
+    }
+
+    @Test
+    public void fetch_sharesFailure_butDoesNotCacheIt() throws Exception {
+        CoalescingFetchEngine engine = new CoalescingFetchEngine(mockedFetchEngine, 10000L, Runnable::run);
+
+        CompletableFuture<FetchResponse> first = engine.fetch(request(FOO_URI));
+        CompletableFuture<FetchResponse> second = engine.fetch(request(FOO_URI));
+        pending.completeExceptionally(new IOException("down"));
+
+        for (CompletableFuture<FetchResponse> response : new CompletableFuture[]{first, second}) {
+            try {
+                response.get(1, TimeUnit.SECONDS);
+                fail("exception is expected");
+            } catch (ExecutionException e) {
+                assertThat("cause", e.getCause(), instanceOf(IOException.class));
+            }
+        }
+
+        given(mockedFetchEngine.fetch(any(FetchRequest.class))).willReturn(CompletableFuture.completedFuture(page("foo page")));
+        assertThat("sent again", read(engine.fetch(request(FOO_URI))), equalTo("foo page"));
+    }
+}
@@ -0,0 +1,103 @@
+package feedpoller.fetch;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+public class ContentDecodingTest {
+    private static final String PAGE;
+
+    static {
+        StringBuilder page = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            page.append("{\"id\":").append(i).append(",\"next\":\"http://localhost/feed/").append(i + 1).append("\"}\n");
+        }
+        PAGE = page.toString();
+    }
+
+    private AtomicLong receivedBytes;
+    private AtomicLong decodedBytes;
+
+    @Before
+    public void setUp() throws Exception {
+        receivedBytes = new AtomicLong();
+        decodedBytes = new AtomicLong();
+    }
+
+    private static FetchResponse response(String encoding, byte[] body) {
+        return new FetchResponse(200,
+                encoding == null ? Collections.<String, String>emptyMap() : Collections.singletonMap(ContentDecoding.CONTENT_ENCODING, encoding),
+                new ByteArrayInputStream(body), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(String page) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(page.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(String page, boolean raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, raw))) {
+            deflate.write(page.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void decode_passesIdentityThrough_andCountsBytes() throws Exception {
+        byte[] body = PAGE.getBytes(StandardCharsets.UTF_8);
+
+        String decoded = ContentDecoding.decode(response(null, body), receivedBytes, decodedBytes).readBody();
+
+        assertThat("page", decoded, equalTo(PAGE));
+        assertThat("received", receivedBytes.get(), equalTo((long) body.length));
+        assertThat("decoded", decodedBytes.get(), equalTo((long) body.length));
+    }
+
+    @Test
+    public void decode_gzip() throws Exception {
+        byte[] body = gzip(PAGE);
+
+        String decoded = ContentDecoding.decode(response("gzip", body), receivedBytes, decodedBytes).readBody();
+
+        assertThat("page", decoded, equalTo(PAGE));
+        assertThat("received", receivedBytes.get(), equalTo((long) body.length));
+        assertThat("decoded", decodedBytes.get(), equalTo((long) PAGE.length()));
+        assertThat("compressed on the wire", receivedBytes.get(), lessThan(decodedBytes.get()));
+    }
+
+    @Test
+    public void decode_zlibDeflate() throws Exception {
+        String decoded = ContentDecoding.decode(response("deflate", deflate(PAGE, false)), receivedBytes, decodedBytes).readBody();
+
+        assertThat("page", decoded, equalTo(PAGE));
+    }
+
+    @Test
+    public void decode_rawDeflate() throws Exception {
+        String decoded = ContentDecoding.decode(response("deflate", deflate(PAGE, true)), receivedBytes, decodedBytes).readBody();
+
+        assertThat("page", decoded, equalTo(PAGE));
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_throwsException_forUnsupportedEncoding() throws Exception {
+        ContentDecoding.decode(response("br", new byte[0]), receivedBytes, decodedBytes);
+    }
+}
@@ -0,0 +1,68 @@
+package feedpoller.fetch;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class EventStreamReaderTest {
+    private static EventStreamReader reader(String body, boolean serverSentEvents) {
+        return new EventStreamReader(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8, serverSentEvents);
+    }
+
+    @Test
+    public void next_readsServerSentEvents() throws Exception {
+        EventStreamReader events = reader(": keep-alive\r\n"
+                + "id: 1\r\ndata: first\r\ndata: line\r\n\r\n"
+                + "event: update\ndata:second\nretry: 3000\n\n"
+                + "id: 3\n\n", true);
+
+        EventStreamReader.Event first = events.next();
+        assertThat("multi-line data", first.getData(), equalTo("first\nline"));
+        assertThat("id", first.getId(), equalTo("1"));
+        assertThat("no retry", first.getRetry(), equalTo(-1L));
+
+        EventStreamReader.Event second = events.next();
+        assertThat("no space after colon", second.getData(), equalTo("second"));
+        assertThat("no id", second.getId(), is(nullValue()));
+        assertThat("retry", second.getRetry(), equalTo(3000L));
+
+        EventStreamReader.Event idOnly = events.next();
+        assertThat("id without data", idOnly.getData(), is(nullValue()));
+        assertThat(idOnly.getId(), equalTo("3"));
+
+        assertThat("end of stream", events.next(), is(nullValue()));
+    }
+
+    @Test
+    public void next_dropsEvent_cutOffByEndOfStream() throws Exception {
+        EventStreamReader events = reader("data: complete\n\ndata: cut off", true);
+
+        assertThat(events.next().getData(), equalTo("complete"));
+        assertThat(events.next(), is(nullValue()));
+    }
+
+    @Test
+    public void next_readsOneEventPerLine_ifNotServerSentEvents() throws Exception {
+        EventStreamReader events = reader("{\"a\":1}\n\n{\"b\":2}", false);
+
+        assertThat(events.next().getData(), equalTo("{\"a\":1}"));
+        assertThat(events.next().getData(), equalTo("{\"b\":2}"));
+        assertThat(events.next(), is(nullValue()));
+    }
+
+    @Test
+    public void isEventStream_checksContentType() throws Exception {
+        FetchResponse sse = new FetchResponse(200, Collections.singletonMap("Content-Type", "text/event-stream; charset=utf-8"), null, StandardCharsets.UTF_8);
+        FetchResponse plain = new FetchResponse(200, Collections.singletonMap("Content-Type", "application/x-ndjson"), null, StandardCharsets.UTF_8);
+
+        assertThat(EventStreamReader.isEventStream(sse), is(true));
+        assertThat(EventStreamReader.isEventStream(plain), is(false));
+    }
+}
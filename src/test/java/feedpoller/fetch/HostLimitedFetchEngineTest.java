@@ -0,0 +1,230 @@
+package feedpoller.fetch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.fail;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class HostLimitedFetchEngineTest {
+    private static final String FOO_URI = "http://foo.com/feed";
+    private static final String BAR_URI = "http://bar.com:8080/feed";
+
+    @Mock
+    FetchEngine mockedFetchEngine;
+
+    ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        executor = Executors.newFixedThreadPool(2);
+
+        given(mockedFetchEngine.fetch(any(FetchRequest.class))).willAnswer(invocation ->
+                CompletableFuture.completedFuture(new FetchResponse(200, new ByteArrayInputStream("page".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8)));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    private HostLimitedFetchEngine engine(HostLimits defaultLimits, Map<String, HostLimits> hostLimits) {
+        return new HostLimitedFetchEngine(mockedFetchEngine, defaultLimits, hostLimits, executor);
+    }
+
+    private static CompletableFuture<FetchResponse> fetch(FetchEngine engine, String uri) {
+        return engine.fetch(new FetchRequest(uri, MediaType.TEXT_PLAIN));
+    }
+
+    @Test
+    public void fetch_defersRequests_overConcurrencyCap_untilBodyIsClosed() throws Exception {
+        HostLimitedFetchEngine engine = engine(new HostLimits(2, 1000.0, 10), Collections.<String, HostLimits>emptyMap());
+
+        FetchResponse first = fetch(engine, FOO_URI).get(1, TimeUnit.SECONDS);
+        FetchResponse second = fetch(engine, FOO_URI).get(1, TimeUnit.SECONDS);
+        CompletableFuture<FetchResponse> third = fetch(engine, FOO_URI);
+
+        TimeUnit.MILLISECONDS.sleep(50);
+        assertThat("third request is deferred", third.isDone(), equalTo(false));
+
+        first.close();
+
+        assertThat("third request is sent once a slot is free", third.get(1, TimeUnit.SECONDS).readBody(), equalTo("page"));
+        second.close();
+        assertThat("no request is in flight", engine.hostOf(FOO_URI).concurrency.getActive(), equalTo(0));
+        assertThat("deferral is counted", engine.getDeferred(), equalTo(1L));
+    }
+
+    @Test
+    public void fetch_pacesRequests_byTokenBucket() throws Exception {
+        HostLimitedFetchEngine engine = engine(new HostLimits(10, 20.0, 1), Collections.<String, HostLimits>emptyMap());
+
+        long start = System.nanoTime();
+        List<CompletableFuture<FetchResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            responses.add(fetch(engine, FOO_URI));
+        }
+        for (CompletableFuture<FetchResponse> response : responses) {
+            response.get(2, TimeUnit.SECONDS).close();
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat("5 requests at 20 per second take 4 intervals", elapsed, greaterThanOrEqualTo(190L));
+        assertThat("none is dropped", responses.size(), equalTo(5));
+    }
+
+    @Test
+    public void fetch_limitsHostsIndependently() throws Exception {
+        HostLimitedFetchEngine engine = engine(new HostLimits(1, 1000.0, 10), Collections.singletonMap("bar.com:8080", new HostLimits(1, 1000.0, 10)));
+
+        FetchResponse foo = fetch(engine, FOO_URI).get(1, TimeUnit.SECONDS);
+        CompletableFuture<FetchResponse> bar = fetch(engine, BAR_URI);
+
+        assertThat("another host is not held up", bar.isDone(), equalTo(true));
+        foo.close();
+        bar.get().close();
+    }
+
+    @Test
+    public void whenReady_waitsForThrottledHost_only() throws Exception {
+        HostLimitedFetchEngine engine = engine(new HostLimits(1, 1000.0, 10), Collections.<String, HostLimits>emptyMap());
+
+        FetchResponse foo = fetch(engine, FOO_URI).get(1, TimeUnit.SECONDS);
+        CompletableFuture<Void> fooReady = engine.whenReady(FOO_URI);
+
+        assertThat("busy host is not ready", fooReady.isDone(), equalTo(false));
+        assertThat("another host is ready", engine.whenReady(BAR_URI).isDone(), equalTo(true));
+
+        foo.close();
+        fooReady.get(1, TimeUnit.SECONDS);
+        assertThat("nothing is taken while waiting", engine.hostOf(FOO_URI).concurrency.getActive(), equalTo(0));
+    }
+
+    @Test
+    public void whenReady_waitsForToken_withoutTakingIt() throws Exception {
+        HostLimitedFetchEngine engine = engine(new HostLimits(10, 20.0, 1), Collections.<String, HostLimits>emptyMap());
+
+        fetch(engine, FOO_URI).get(1, TimeUnit.SECONDS).close();
+        long start = System.nanoTime();
+        engine.whenReady(FOO_URI).get(1, TimeUnit.SECONDS);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat("waits for the next token", elapsed, greaterThanOrEqualTo(40L));
+        assertThat("token is left for the request", engine.hostOf(FOO_URI).rate.reserve(System.nanoTime()), equalTo(0L));
+    }
+
+    @Test
+    public void paceOnly_takesToken_butNoSlot() throws Exception {
+        HostLimitedFetchEngine engine = engine(new HostLimits(1, 20.0, 1), Collections.<String, HostLimits>emptyMap());
+        FetchEngine streams = engine.paceOnly();
+
+        FetchResponse first = streams.fetch(new FetchRequest(FOO_URI, MediaType.TEXT_PLAIN)).get(1, TimeUnit.SECONDS);
+        assertThat("no slot is held while open", engine.hostOf(FOO_URI).concurrency.getActive(), equalTo(0));
+
+        long start = System.nanoTime();
+        streams.fetch(new FetchRequest(FOO_URI, MediaType.TEXT_PLAIN)).get(1, TimeUnit.SECONDS).close();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat("next connect waits for a token", elapsed, greaterThanOrEqualTo(40L));
+        first.close();
+    }
+
+    @Test
+    public void fetch_passesThrough_unlimitedHosts() throws Exception {
+        HostLimitedFetchEngine engine = engine(null, Collections.singletonMap("bar.com:8080", new HostLimits(1, 1.0)));
+
+        for (int i = 0; i < 5; i++) {
+            assertThat("unlimited host is not deferred", fetch(engine, FOO_URI).isDone(), equalTo(true));
+        }
+        assertThat("no deferral", engine.getDeferred(), equalTo(0L));
+    }
+
+    @Test
+    public void fetch_releasesSlot_andDrainsBucket_onTooManyRequests() throws Exception {
+        given(mockedFetchEngine.fetch(any(FetchRequest.class)))
+                .willReturn(CompletableFuture.<FetchResponse>failedFuture(new UnexpectedStatusException(FOO_URI, 429)));
+        HostLimitedFetchEngine engine = engine(new HostLimits(1, 10.0, 5), Collections.<String, HostLimits>emptyMap());
+
+        try {
+            fetch(engine, FOO_URI).get(1, TimeUnit.SECONDS);
+            fail("exception is expected");
+        } catch (ExecutionException e) {
+            assertThat("cause", e.getCause(), instanceOf(UnexpectedStatusException.class));
+        }
+
+        assertThat("slot is released", engine.hostOf(FOO_URI).concurrency.getActive(), equalTo(0));
+        assertThat("next request waits for a fresh token", engine.hostOf(FOO_URI).rate.reserve(System.nanoTime()), greaterThan(0L));
+    }
+
+    @Test
+    public void fetch_failsPacedRequest_andReleasesSlot_onceExecutorIsShutDown() throws Exception {
+        HostLimitedFetchEngine engine = engine(new HostLimits(10, 20.0, 1), Collections.<String, HostLimits>emptyMap());
+
+        fetch(engine, FOO_URI).get(1, TimeUnit.SECONDS).close();
+        CompletableFuture<FetchResponse> paced = fetch(engine, FOO_URI);
+        executor.shutdown();
+
+        try {
+            paced.get(1, TimeUnit.SECONDS);
+            fail("exception is expected");
+        } catch (ExecutionException e) {
+            assertThat("cause", e.getCause(), instanceOf(RejectedExecutionException.class));
+        }
+        assertThat("slot is released", engine.hostOf(FOO_URI).concurrency.getActive(), equalTo(0));
+    }
+
+    @Test
+    public void fetch_failsDeferredRequest_onceExecutorIsShutDown() throws Exception {
+        HostLimitedFetchEngine engine = engine(new HostLimits(1, 1000.0, 10), Collections.<String, HostLimits>emptyMap());
+
+        FetchResponse first = fetch(engine, FOO_URI).get(1, TimeUnit.SECONDS);
+        CompletableFuture<FetchResponse> deferred = fetch(engine, FOO_URI);
+        executor.shutdown();
+        first.close();
+
+        try {
+            deferred.get(1, TimeUnit.SECONDS);
+            fail("exception is expected");
+        } catch (ExecutionException e) {
+            assertThat("cause", e.getCause(), instanceOf(RejectedExecutionException.class));
+        }
+        assertThat("slot is released", engine.hostOf(FOO_URI).concurrency.getActive(), equalTo(0));
+    }
+
+    @Test
+    public void tokenBucket_allowsBurst_thenReservesInOrder() throws Exception {
+        TokenBucket bucket = new TokenBucket(10.0, 2);
+        long now = System.nanoTime();
+
+        assertThat("first of burst", bucket.reserve(now), equalTo(0L));
+        assertThat("second of burst", bucket.reserve(now), equalTo(0L));
+        assertThat("third waits one interval", bucket.reserve(now), equalTo(TimeUnit.MILLISECONDS.toNanos(100)));
+        assertThat("fourth waits two intervals", bucket.reserve(now), equalTo(TimeUnit.MILLISECONDS.toNanos(200)));
+        assertThat("refilled after waiting", bucket.reserve(now + TimeUnit.MILLISECONDS.toNanos(300)), lessThan(TimeUnit.MILLISECONDS.toNanos(100)));
+    }
+}
@@ -0,0 +1,32 @@
+package feedpoller.handler;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PaginationPredictorTest {
+    private final PaginationPredictor predictor = new PaginationPredictor();
+
+    @Test
+    public void predictor_incrementsPathNumber() throws Exception {
+        assertThat(predictor.predictNextUri("http://localhost/feed/41"), equalTo("http://localhost/feed/42"));
+        assertThat(predictor.predictNextUri("http://localhost/feed/41/"), equalTo("http://localhost/feed/42/"));
+    }
+
+    @Test
+    public void predictor_incrementsQueryNumber() throws Exception {
+        assertThat(predictor.predictNextUri("http://localhost/feed?page=9"), equalTo("http://localhost/feed?page=10"));
+    }
+
+    @Test
+    public void predictor_keepsZeroPadding() throws Exception {
+        assertThat(predictor.predictNextUri("http://localhost/feed/007"), equalTo("http://localhost/feed/008"));
+    }
+
+    @Test
+    public void predictor_givesUp_withoutNumber() throws Exception {
+        assertThat(predictor.predictNextUri("http://localhost/feed/latest"), nullValue());
+    }
+}
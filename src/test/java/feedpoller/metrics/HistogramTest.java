@@ -0,0 +1,59 @@
+package feedpoller.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class HistogramTest {
+    @Test
+    public void bucket_boundsContainValue() throws Exception {
+        long[] values = {0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789L, Long.MAX_VALUE};
+
+        for (long value : values) {
+            int index = Histogram.indexOf(value);
+            assertThat("lower bound of " + value, Histogram.lowerBoundOf(index), lessThanOrEqualTo(value));
+            if (value < Long.MAX_VALUE && index + 1 < new Histogram().getBuckets()) {
+                assertThat("next bucket of " + value, Histogram.lowerBoundOf(index + 1), greaterThanOrEqualTo(value + 1));
+            }
+        }
+    }
+
+    @Test
+    public void histogram_reportsPercentiles_withinPrecision() throws Exception {
+        Histogram histogram = new Histogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        assertThat("count", histogram.getCount(), equalTo(1000L));
+        assertThat("max", histogram.getMax(), equalTo(1000L));
+        assertThat("mean", histogram.getMean(), equalTo(500.5));
+        assertThat("p50", histogram.getPercentile(50), allOf(greaterThanOrEqualTo(500L), lessThanOrEqualTo(563L)));
+        assertThat("p99", histogram.getPercentile(99), allOf(greaterThanOrEqualTo(990L), lessThanOrEqualTo(1000L)));
+    }
+
+    @Test
+    public void histogram_countsValuesAboveRange_inLastBucket() throws Exception {
+        Histogram histogram = new Histogram(3600000L);
+        histogram.record(10L);
+        histogram.record(TimeUnit.DAYS.toMillis(1));
+
+        assertThat("buckets up to an hour", histogram.getBuckets(), equalTo(158));
+        assertThat("p99 is the exact max", histogram.getPercentile(99), equalTo(TimeUnit.DAYS.toMillis(1)));
+        assertThat("p50", histogram.getPercentile(50), equalTo(10L));
+    }
+
+    @Test
+    public void histogram_isEmpty_withoutValues() throws Exception {
+        Histogram histogram = new Histogram();
+
+        assertThat("p99", histogram.getPercentile(99), equalTo(0L));
+        assertThat("mean", histogram.getMean(), equalTo(0.0));
+    }
+}
@@ -0,0 +1,105 @@
+package feedpoller.metrics;
+
+import feedpoller.domain.Priority;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MetricsRegistryTest {
+    private final MetricsRegistry registry = new MetricsRegistry();
+
+    @After
+    public void tearDown() throws Exception {
+        registry.unregisterMBeans();
+    }
+
+    @Test
+    public void registry_aggregatesEndpoints() throws Exception {
+        registry.forEndpoint("foo").onPoll(TimeUnit.MILLISECONDS.toNanos(10), 100);
+        registry.forEndpoint("foo").onNewFeed();
+        registry.forEndpoint("bar").onPoll(TimeUnit.MILLISECONDS.toNanos(30), 300);
+        registry.forEndpoint("bar").onEmptyFeed();
+
+        EndpointMetrics aggregate = registry.getAggregate();
+        assertThat("polls", aggregate.getPolls(), equalTo(2L));
+        assertThat("bytes", aggregate.getReceivedBytes(), equalTo(400L));
+        assertThat("empty ratio", aggregate.getEmptyPollRatio(), equalTo(0.5));
+        assertThat("foo alone", registry.get("foo").getPolls(), equalTo(1L));
+        assertThat("same instance per key", registry.forEndpoint("foo") == registry.get("foo"), is(true));
+    }
+
+    @Test
+    public void registry_exposesMetrics_overJmx() throws Exception {
+        registry.forEndpoint("foo").onPoll(TimeUnit.MILLISECONDS.toNanos(10), 100);
+
+        registry.registerMBeans("test");
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName foo = new ObjectName("feedpoller:poller=" + ObjectName.quote("test") + ",type=Endpoint,key=" + ObjectName.quote("foo"));
+        ObjectName aggregate = new ObjectName("feedpoller:poller=" + ObjectName.quote("test") + ",type=Aggregate");
+        assertThat("foo polls", server.getAttribute(foo, "Polls"), equalTo((Object) 1L));
+        assertThat("aggregate polls", server.getAttribute(aggregate, "Polls"), equalTo((Object) 1L));
+
+        registry.unregisterMBeans();
+        assertThat("unregistered", server.isRegistered(foo), is(false));
+    }
+
+    @Test
+    public void registry_registersAndRemovesEndpoints_afterMBeansAreRegistered() throws Exception {
+        registry.registerMBeans("test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName bar = new ObjectName("feedpoller:poller=" + ObjectName.quote("test") + ",type=Endpoint,key=" + ObjectName.quote("bar"));
+
+        registry.forEndpoint("bar").onPoll(TimeUnit.MILLISECONDS.toNanos(10), 100);
+        assertThat("added endpoint is registered", server.isRegistered(bar), is(true));
+
+        registry.remove("bar");
+        assertThat("removed endpoint is unregistered", server.isRegistered(bar), is(false));
+        assertThat("removed endpoint is dropped", registry.get("bar") == null, is(true));
+        assertThat("aggregate keeps its polls", registry.getAggregate().getPolls(), equalTo(1L));
+    }
+
+    @Test
+    public void registry_keepsAggregate_ofEndpointKeyedLikeAggregate() throws Exception {
+        registry.registerMBeans("test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName aggregate = new ObjectName("feedpoller:poller=" + ObjectName.quote("test") + ",type=Aggregate");
+        ObjectName normal = new ObjectName("feedpoller:poller=" + ObjectName.quote("test") + ",type=Priority,priority=NORMAL");
+
+        registry.forEndpoint(MetricsRegistry.AGGREGATE_KEY);
+        registry.forEndpoint(MetricsRegistry.AGGREGATE_KEY + "NORMAL");
+        registry.remove(MetricsRegistry.AGGREGATE_KEY);
+        registry.remove(MetricsRegistry.AGGREGATE_KEY + "NORMAL");
+
+        assertThat("aggregate stays registered", server.isRegistered(aggregate), is(true));
+        assertThat("class stays registered", server.isRegistered(normal), is(true));
+
+        registry.unregisterMBeans();
+        assertThat("aggregate is unregistered", server.isRegistered(aggregate), is(false));
+    }
+
+    @Test
+    public void registry_aggregatesDeadlineMisses_perPriorityClass() throws Exception {
+        registry.forEndpoint("foo", Priority.CRITICAL).onDeadlineMiss();
+        registry.forEndpoint("bar", Priority.BULK).onDeadlineMiss();
+        registry.forEndpoint("bar").onShedPoll();
+
+        assertThat("critical misses", registry.getAggregate(Priority.CRITICAL).getDeadlineMisses(), equalTo(1L));
+        assertThat("bulk misses", registry.getAggregate(Priority.BULK).getDeadlineMisses(), equalTo(1L));
+        assertThat("bulk sheds", registry.getAggregate(Priority.BULK).getShedPolls(), equalTo(1L));
+        assertThat("no normal misses", registry.getAggregate(Priority.NORMAL).getDeadlineMisses(), equalTo(0L));
+        assertThat("all misses", registry.getAggregate().getDeadlineMisses(), equalTo(2L));
+
+        registry.registerMBeans("test");
+        ObjectName bulk = new ObjectName("feedpoller:poller=" + ObjectName.quote("test") + ",type=Priority,priority=BULK");
+        assertThat("bulk over jmx", ManagementFactory.getPlatformMBeanServer().getAttribute(bulk, "ShedPolls"), equalTo((Object) 1L));
+    }
+}
@@ -0,0 +1,54 @@
+package feedpoller.scheduler;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class AdaptiveIntervalTest {
+    private static final long PERIOD = 1000L;
+    private static final long MIN_PERIOD = 250L;
+    private static final long MAX_PERIOD = 8000L;
+
+    @Test
+    public void interval_backsOffExponentially_onEmptyFeed_upToMax() throws Exception {
+        AdaptiveInterval interval = new AdaptiveInterval(PERIOD, MIN_PERIOD, MAX_PERIOD, 2.0);
+
+        interval.onEmptyFeed();
+        assertThat("doubled", interval.getCurrent(), equalTo(2000L));
+
+        interval.onEmptyFeed();
+        interval.onEmptyFeed();
+        interval.onEmptyFeed();
+        assertThat("capped at max", interval.getCurrent(), equalTo(MAX_PERIOD));
+    }
+
+    @Test
+    public void interval_tightens_onNewFeed_downToMin() throws Exception {
+        AdaptiveInterval interval = new AdaptiveInterval(PERIOD, MIN_PERIOD, MAX_PERIOD, 2.0);
+
+        interval.onNewFeed();
+        assertThat("halved", interval.getCurrent(), equalTo(500L));
+
+        interval.onNewFeed();
+        interval.onNewFeed();
+        assertThat("capped at min", interval.getCurrent(), equalTo(MIN_PERIOD));
+    }
+
+    @Test
+    public void interval_isFixed_ifBoundsAreEqual() throws Exception {
+        AdaptiveInterval interval = new AdaptiveInterval(PERIOD, PERIOD, PERIOD, 2.0);
+
+        interval.onEmptyFeed();
+        interval.onNewFeed();
+        interval.onNewFeed();
+
+        assertThat("fixed", interval.isFixed(), equalTo(true));
+        assertThat("period is unchanged", interval.getCurrent(), equalTo(PERIOD));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void interval_throwsException_ifPeriodIsOutOfBounds() throws Exception {
+        new AdaptiveInterval(PERIOD, 2000L, MAX_PERIOD, 2.0);
+    }
+}
@@ -0,0 +1,96 @@
+package feedpoller.scheduler;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class CircuitBreakerTest {
+    private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final CircuitBreaker breaker = new CircuitBreaker(3, 1000L, 4000L);
+
+    private void fail(int times, long now) {
+        for (int i = 0; i < times; i++) {
+            breaker.onFailure(now);
+        }
+    }
+
+    @Test
+    public void breaker_opens_afterFailureThreshold() throws Exception {
+        fail(2, 0);
+        assertThat("still closed", breaker.getState(), equalTo(CircuitBreaker.State.CLOSED));
+
+        assertThat("third failure opens", breaker.onFailure(0), equalTo(true));
+        assertThat("open", breaker.getState(), equalTo(CircuitBreaker.State.OPEN));
+        assertThat("no request while open", breaker.tryAcquire(500 * MILLISECOND), equalTo(false));
+        assertThat("backoff is jittered around the base", breaker.getRemainingOpen(0), greaterThanOrEqualTo(800L));
+        assertThat("backoff is jittered around the base", breaker.getRemainingOpen(0), lessThanOrEqualTo(1200L));
+    }
+
+    @Test
+    public void breaker_resetsFailures_onSuccess() throws Exception {
+        fail(2, 0);
+        breaker.onSuccess();
+        fail(2, 0);
+
+        assertThat("failures in a row only", breaker.getState(), equalTo(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void breaker_letsOneProbeThrough_afterBackoff() throws Exception {
+        fail(3, 0);
+        long later = 2000 * MILLISECOND;
+
+        assertThat("allowed after backoff", breaker.isAllowed(later), equalTo(true));
+        assertThat("first caller probes", breaker.tryAcquire(later), equalTo(true));
+        assertThat("half-open", breaker.getState(), equalTo(CircuitBreaker.State.HALF_OPEN));
+        assertThat("second caller waits for the probe", breaker.tryAcquire(later), equalTo(false));
+
+        breaker.onSuccess();
+        assertThat("successful probe closes", breaker.getState(), equalTo(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void breaker_handsProbeToNextCaller_onceAbandoned() throws Exception {
+        fail(3, 0);
+        long later = 2000 * MILLISECOND;
+        breaker.tryAcquire(later);
+
+        breaker.onAbandoned(later);
+
+        assertThat("reopened without a longer backoff", breaker.getRemainingOpen(later), equalTo(0L));
+        assertThat("next caller probes", breaker.tryAcquire(later), equalTo(true));
+    }
+
+    @Test
+    public void breaker_givesUpLostProbe_afterMaxBackoff() throws Exception {
+        fail(3, 0);
+        long later = 2000 * MILLISECOND;
+        breaker.tryAcquire(later);
+
+        assertThat("probe is still pending", breaker.tryAcquire(later + 3999 * MILLISECOND), equalTo(false));
+        assertThat("lost probe is replaced", breaker.tryAcquire(later + 4000 * MILLISECOND), equalTo(true));
+        assertThat("half-open", breaker.getState(), equalTo(CircuitBreaker.State.HALF_OPEN));
+    }
+
+    @Test
+    public void breaker_doublesBackoff_onFailedProbe_upToMax() throws Exception {
+        fail(3, 0);
+        long now = 0;
+
+        long[] bases = {2000L, 4000L, 4000L};
+        for (long base : bases) {
+            now += 5000 * MILLISECOND;
+            breaker.tryAcquire(now);
+            assertThat("failed probe reopens", breaker.onFailure(now), equalTo(true));
+
+            assertThat("backoff doubles", breaker.getRemainingOpen(now), greaterThanOrEqualTo(base * 8 / 10));
+            assertThat("backoff is capped", breaker.getRemainingOpen(now), lessThanOrEqualTo(base * 12 / 10));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package feedpoller.scheduler;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class PhaseSpreadingTest {
+    @Test
+    public void phaseOf_isStable_andWithinPeriod() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            long phase = PhaseSpreading.phaseOf("feed-" + i, 1000L);
+
+            assertThat("not negative", phase, greaterThanOrEqualTo(0L));
+            assertThat("within period", phase, lessThan(1000L));
+            assertThat("same on every call", PhaseSpreading.phaseOf("feed-" + i, 1000L), equalTo(phase));
+        }
+    }
+
+    @Test
+    public void phaseOf_spreadsSimilarKeys_evenly() throws Exception {
+        int[] slots = new int[10];
+        for (int i = 0; i < 10000; i++) {
+            slots[(int) (PhaseSpreading.phaseOf("feed-" + i, 1000L) / 100)]++;
+        }
+
+        for (int slot : slots) {
+            assertThat("every tenth of the period gets about a tenth of the keys", slot, greaterThan(800));
+            assertThat("no tenth gets much more", slot, lessThan(1200));
+        }
+    }
+
+    @Test
+    public void jitter_keepsPeriod_withinFraction() throws Exception {
+        boolean moved = false;
+        for (int i = 0; i < 1000; i++) {
+            long period = PhaseSpreading.jitter(1000L, 0.1);
+
+            assertThat("not shorter than 10% less", period, greaterThanOrEqualTo(900L));
+            assertThat("not longer than 10% more", period, lessThanOrEqualTo(1100L));
+            moved |= period != 1000L;
+        }
+
+        assertThat("period is moved", moved, equalTo(true));
+        assertThat("no jitter keeps the period", PhaseSpreading.jitter(1000L, 0), equalTo(1000L));
+    }
+}
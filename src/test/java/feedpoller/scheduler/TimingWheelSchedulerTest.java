@@ -0,0 +1,465 @@
+package feedpoller.scheduler;
+
+import feedpoller.domain.Priority;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class TimingWheelSchedulerTest {
+    private static final long TICK_DURATION = 5L;
+    private static final int TICKS_PER_WHEEL = 8;
+
+    private TimingWheelScheduler scheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new TimingWheelScheduler(Executors.newFixedThreadPool(2), TICK_DURATION, TICKS_PER_WHEEL);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdownNow();
+        scheduler.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void scheduler_runsTask_repeatedly() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(3);
+
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        }, 0, 20, TimeUnit.MILLISECONDS);
+
+        assertThat("task runs 3 times", latch.await(1, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void scheduler_respectsInitialDelay_longerThanOneRound() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        // 8 ticks of 5 ms per round, so 100 ms wraps the wheel more than twice
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        }, 100, 1000, TimeUnit.MILLISECONDS);
+
+        assertThat("task runs", latch.await(1, TimeUnit.SECONDS), is(true));
+        assertThat("task waits for initial delay", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), greaterThanOrEqualTo(100L));
+    }
+
+    @Test
+    public void scheduler_runsManyTasks_withBoundedWorkers() throws Exception {
+        int taskCount = 1000;
+        final CountDownLatch latch = new CountDownLatch(taskCount);
+
+        for (int i = 0; i < taskCount; i++) {
+            final AtomicInteger runs = new AtomicInteger();
+            scheduler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    if (runs.incrementAndGet() == 1) {
+                        latch.countDown();
+                    }
+                }
+            }, i % 50, 100, TimeUnit.MILLISECONDS);
+        }
+
+        assertThat("every task runs", latch.await(2, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void scheduler_neverRunsTheSameTaskConcurrently() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(5);
+
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                int current = running.incrementAndGet();
+                maxRunning.set(Math.max(maxRunning.get(), current));
+                try {
+                    TimeUnit.MILLISECONDS.sleep(30);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                latch.countDown();
+            }
+        }, 0, 5, TimeUnit.MILLISECONDS);
+
+        assertThat("task runs 5 times", latch.await(2, TimeUnit.SECONDS), is(true));
+        assertThat("no overlapping runs", maxRunning.get(), lessThanOrEqualTo(1));
+    }
+
+    @Test
+    public void scheduler_reschedulesAsyncTask_onlyAfterItCompletes() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        final CompletableFuture<Void> pending = new CompletableFuture<>();
+
+        scheduler.scheduleAtFixedRate(new AsyncTask() {
+            @Override
+            public CompletionStage<?> runAsync() {
+                return runs.incrementAndGet() == 1 ? pending : CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public void run() {
+                runAsync();
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertThat("first run is still pending", runs.get(), equalTo(1));
+
+        pending.complete(null);
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        assertThat("task runs again after completion", runs.get(), greaterThanOrEqualTo(3));
+    }
+
+    @Test
+    public void scheduler_usesPeriod_ofAdaptiveTask() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+
+        scheduler.scheduleAtFixedRate(new AdaptiveTask() {
+            @Override
+            public long nextPeriod() {
+                return 500L;
+            }
+
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        assertThat("second run waits for the adapted period", runs.get(), equalTo(1));
+    }
+
+    @Test
+    public void scheduler_reportsLag_toLagAwareTask() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicLong lag = new AtomicLong(-1);
+
+        scheduler.scheduleAtFixedRate(new LagAwareTask() {
+            @Override
+            public void recordLag(long lagInNanoseconds) {
+                lag.set(lagInNanoseconds);
+            }
+
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        }, 20, 1000, TimeUnit.MILLISECONDS);
+
+        assertThat("task runs", latch.await(1, TimeUnit.SECONDS), is(true));
+        assertThat("lag is reported before the run", lag.get(), greaterThanOrEqualTo(0L));
+        assertThat("lag is within a few ticks", lag.get(), lessThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(200)));
+    }
+
+    @Test
+    public void scheduler_dispatchesByPriorityThenDeadline_whenSaturated() throws Exception {
+        TimingWheelScheduler saturated = new TimingWheelScheduler(Executors.newFixedThreadPool(2), TICK_DURATION, TICKS_PER_WHEEL, 1);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch latch = new CountDownLatch(4);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        try {
+            // takes the only slot until released
+            saturated.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        blocker.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, 0, 10000, TimeUnit.MILLISECONDS);
+            TimeUnit.MILLISECONDS.sleep(30);
+
+            saturated.scheduleAtFixedRate(new RecordingTask("bulk", Priority.BULK, 0L, order, latch), 0, 10000, TimeUnit.MILLISECONDS);
+            saturated.scheduleAtFixedRate(new RecordingTask("normal", Priority.NORMAL, 0L, order, latch), 0, 10000, TimeUnit.MILLISECONDS);
+            saturated.scheduleAtFixedRate(new RecordingTask("critical-late", Priority.CRITICAL, 5000L, order, latch), 0, 10000, TimeUnit.MILLISECONDS);
+            saturated.scheduleAtFixedRate(new RecordingTask("critical-soon", Priority.CRITICAL, 1000L, order, latch), 0, 10000, TimeUnit.MILLISECONDS);
+            TimeUnit.MILLISECONDS.sleep(30);
+
+            blocker.countDown();
+
+            assertThat("every task runs", latch.await(1, TimeUnit.SECONDS), is(true));
+            assertThat("priority, then earliest deadline", order, equalTo(Arrays.asList("critical-soon", "critical-late", "normal", "bulk")));
+        } finally {
+            saturated.shutdownNow();
+        }
+    }
+
+    @Test
+    public void scheduler_capsRunsInFlight() throws Exception {
+        TimingWheelScheduler capped = new TimingWheelScheduler(Executors.newFixedThreadPool(4), TICK_DURATION, TICKS_PER_WHEEL, 2);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(8);
+
+        try {
+            for (int i = 0; i < 8; i++) {
+                capped.scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        try {
+                            TimeUnit.MILLISECONDS.sleep(20);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        running.decrementAndGet();
+                        latch.countDown();
+                    }
+                }, 0, 10000, TimeUnit.MILLISECONDS);
+            }
+
+            assertThat("every task runs", latch.await(1, TimeUnit.SECONDS), is(true));
+            assertThat("at most 2 at once", maxRunning.get(), lessThanOrEqualTo(2));
+        } finally {
+            capped.shutdownNow();
+        }
+    }
+
+    @Test
+    public void scheduler_runsControlTask_outsideCap() throws Exception {
+        TimingWheelScheduler saturated = new TimingWheelScheduler(Executors.newFixedThreadPool(2), TICK_DURATION, TICKS_PER_WHEEL, 1);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch controlled = new CountDownLatch(1);
+
+        try {
+            // takes the only slot until released
+            saturated.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        blocker.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, 0, 10000, TimeUnit.MILLISECONDS);
+            TimeUnit.MILLISECONDS.sleep(30);
+
+            saturated.scheduleAtFixedRate((ControlTask) controlled::countDown, 0, 10000, TimeUnit.MILLISECONDS);
+
+            assertThat("control task does not wait for the slot", controlled.await(1, TimeUnit.SECONDS), is(true));
+        } finally {
+            blocker.countDown();
+            saturated.shutdownNow();
+        }
+    }
+
+    @Test
+    public void scheduler_runsDeadlineTask_outsideCap_ifItTakesNoSlot() throws Exception {
+        TimingWheelScheduler saturated = new TimingWheelScheduler(Executors.newFixedThreadPool(2), TICK_DURATION, TICKS_PER_WHEEL, 1);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        try {
+            // stays open without a slot, as a stream does
+            saturated.scheduleAtFixedRate(new RecordingTask("stream", Priority.NORMAL, 0L, order, new CountDownLatch(1)) {
+                @Override
+                public boolean takesSlot() {
+                    return false;
+                }
+
+                @Override
+                public void run() {
+                    try {
+                        blocker.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, 0, 10000, TimeUnit.MILLISECONDS);
+            TimeUnit.MILLISECONDS.sleep(30);
+
+            saturated.scheduleAtFixedRate(new RecordingTask("poll", Priority.NORMAL, 0L, order, latch), 0, 10000, TimeUnit.MILLISECONDS);
+
+            assertThat("poll gets the slot", latch.await(1, TimeUnit.SECONDS), is(true));
+        } finally {
+            blocker.countDown();
+            saturated.shutdownNow();
+        }
+    }
+
+    @Test
+    public void scheduler_holdsNoSlot_forTaskThatIsNotReady() throws Exception {
+        TimingWheelScheduler saturated = new TimingWheelScheduler(Executors.newFixedThreadPool(2), TICK_DURATION, TICKS_PER_WHEEL, 1);
+        final CompletableFuture<Void> hostFree = new CompletableFuture<>();
+        final CountDownLatch throttledRan = new CountDownLatch(1);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        try {
+            // waits for its throttled host
+            saturated.scheduleAtFixedRate(new RecordingTask("throttled", Priority.CRITICAL, 0L, order, throttledRan) {
+                @Override
+                public CompletionStage<?> whenReady() {
+                    return hostFree;
+                }
+            }, 0, 10000, TimeUnit.MILLISECONDS);
+            TimeUnit.MILLISECONDS.sleep(30);
+
+            saturated.scheduleAtFixedRate(new RecordingTask("other", Priority.NORMAL, 0L, order, latch), 0, 10000, TimeUnit.MILLISECONDS);
+
+            assertThat("task of another host gets the slot", latch.await(1, TimeUnit.SECONDS), is(true));
+            assertThat("throttled task waits", order, equalTo(Collections.singletonList("other")));
+
+            hostFree.complete(null);
+            assertThat("throttled task runs once its host is free", throttledRan.await(1, TimeUnit.SECONDS), is(true));
+        } finally {
+            saturated.shutdownNow();
+        }
+    }
+
+    @Test
+    public void scheduler_shedsLateBulkRun_andRunsLateCriticalRun() throws Exception {
+        TimingWheelScheduler single = new TimingWheelScheduler(Executors.newFixedThreadPool(1), TICK_DURATION, TICKS_PER_WHEEL);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        RecordingTask bulk = new RecordingTask("bulk", Priority.BULK, 20L, order, new CountDownLatch(1));
+        RecordingTask critical = new RecordingTask("critical", Priority.CRITICAL, 20L, order, latch);
+
+        try {
+            // holds the only worker past both deadlines
+            single.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, 0, 10000, TimeUnit.MILLISECONDS);
+            TimeUnit.MILLISECONDS.sleep(20);
+            single.scheduleAtFixedRate(bulk, 0, 10000, TimeUnit.MILLISECONDS);
+            single.scheduleAtFixedRate(critical, 0, 10000, TimeUnit.MILLISECONDS);
+
+            assertThat("critical runs", latch.await(1, TimeUnit.SECONDS), is(true));
+            assertThat("bulk is shed", order, equalTo(Collections.singletonList("critical")));
+            assertThat("bulk miss", bulk.misses, equalTo(Collections.singletonList(true)));
+            assertThat("critical miss", critical.misses, equalTo(Collections.singletonList(false)));
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    private static class RecordingTask implements DeadlineTask {
+        private final String name;
+        private final Priority priority;
+        private final long deadline;
+        private final List<String> order;
+        private final CountDownLatch latch;
+        private final List<Boolean> misses = Collections.synchronizedList(new ArrayList<Boolean>());
+
+        RecordingTask(String name, Priority priority, long deadline, List<String> order, CountDownLatch latch) {
+            this.name = name;
+            this.priority = priority;
+            this.deadline = deadline;
+            this.order = order;
+            this.latch = latch;
+        }
+
+        @Override
+        public long getDeadline() {
+            return deadline;
+        }
+
+        @Override
+        public Priority getPriority() {
+            return priority;
+        }
+
+        @Override
+        public void onDeadlineMiss(boolean shed) {
+            misses.add(shed);
+        }
+
+        @Override
+        public void run() {
+            order.add(name);
+            latch.countDown();
+        }
+    }
+
+    @Test
+    public void cancel_stopsTask() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+
+        ScheduledPoll poll = scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+
+        TimeUnit.MILLISECONDS.sleep(50);
+        poll.cancel();
+        TimeUnit.MILLISECONDS.sleep(20);
+        int runsAfterCancel = runs.get();
+        TimeUnit.MILLISECONDS.sleep(50);
+
+        assertThat("cancelled", poll.isCancelled(), is(true));
+        assertThat("no more runs", runs.get(), equalTo(runsAfterCancel));
+    }
+
+    @Test
+    public void shutdown_terminatesScheduler() throws Exception {
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+
+        scheduler.shutdown();
+
+        assertThat("terminated", scheduler.awaitTermination(1, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void schedule_throwsException_afterShutdown() throws Exception {
+        scheduler.shutdown();
+
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,83 @@
+package feedpoller.shard;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+public class ConsistentHashRingTest {
+    private static final int KEY_COUNT = 10000;
+
+    private static List<String> keys() {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys.add("feed-" + i);
+        }
+        return keys;
+    }
+
+    @Test
+    public void nodeOf_isTheSame_whateverTheOrderOfNodes() throws Exception {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("a", "b", "c"));
+        ConsistentHashRing reordered = new ConsistentHashRing(Arrays.asList("c", "a", "b"));
+
+        for (String key : keys()) {
+            assertThat(key, reordered.nodeOf(key), equalTo(ring.nodeOf(key)));
+        }
+    }
+
+    @Test
+    public void nodeOf_spreadsKeys_evenly() throws Exception {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("node-1", "node-2", "node-3", "node-4"));
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (String key : keys()) {
+            counts.merge(ring.nodeOf(key), 1, Integer::sum);
+        }
+
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            // a quarter each, give or take a third
+            assertThat(count.getKey(), count.getValue(), greaterThan(KEY_COUNT / 6));
+            assertThat(count.getKey(), count.getValue(), lessThan(KEY_COUNT / 3));
+        }
+    }
+
+    @Test
+    public void nodeOf_movesKeys_onlyToJoiningNode() throws Exception {
+        ConsistentHashRing before = new ConsistentHashRing(Arrays.asList("node-1", "node-2", "node-3"));
+        ConsistentHashRing after = new ConsistentHashRing(Arrays.asList("node-1", "node-2", "node-3", "node-4"));
+
+        int moved = 0;
+        for (String key : keys()) {
+            String owner = after.nodeOf(key);
+            if (!owner.equals(before.nodeOf(key))) {
+                assertThat(key, owner, equalTo("node-4"));
+                moved++;
+            }
+        }
+
+        assertThat("about a quarter moves", moved, lessThan(KEY_COUNT / 3));
+        assertThat("some keys move", moved, greaterThan(KEY_COUNT / 6));
+    }
+
+    @Test
+    public void nodeOf_returnsNull_withoutNodes() throws Exception {
+        assertThat(new ConsistentHashRing(Collections.<String>emptyList()).nodeOf("feed"), is(nullValue()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ring_rejectsZeroVirtualNodes() throws Exception {
+        new ConsistentHashRing(Arrays.asList("a"), 0);
+    }
+}
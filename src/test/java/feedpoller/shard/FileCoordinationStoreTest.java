@@ -0,0 +1,112 @@
+package feedpoller.shard;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class FileCoordinationStoreTest {
+    private static final long TTL = 1000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicLong now = new AtomicLong(1000000L);
+
+    private FileCoordinationStore node1;
+    private FileCoordinationStore node2;
+
+    @Before
+    public void setUp() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        // two stores of the same directory, as two nodes would open it
+        node1 = new FileCoordinationStore(directory, now::get);
+        node2 = new FileCoordinationStore(directory, now::get);
+    }
+
+    @Test
+    public void getLiveNodes_dropsNode_whenHeartbeatExpires() throws Exception {
+        node1.heartbeat("node-1", TTL);
+        node2.heartbeat("node-2", TTL * 2);
+
+        assertThat("both alive", node1.getLiveNodes(), equalTo(new HashSet<>(asList("node-1", "node-2"))));
+
+        now.addAndGet(TTL);
+
+        assertThat("node-1 expired", node2.getLiveNodes(), equalTo(Collections.singleton("node-2")));
+    }
+
+    @Test
+    public void getLiveNodes_dropsNode_whenItLeaves() throws Exception {
+        node1.heartbeat("node-1", TTL);
+        node1.leave("node-1");
+
+        assertThat(node2.getLiveNodes().isEmpty(), is(true));
+    }
+
+    @Test
+    public void acquire_isExclusive_untilLeaseExpires() throws Exception {
+        assertThat("free lease", node1.acquire("feed", "node-1", TTL), is(notNullValue()));
+        assertThat("held by node-1", node2.acquire("feed", "node-2", TTL), is(nullValue()));
+        assertThat("reacquired by its owner", node1.acquire("feed", "node-1", TTL), is(notNullValue()));
+
+        now.addAndGet(TTL);
+
+        assertThat("expired lease", node2.acquire("feed", "node-2", TTL), is(notNullValue()));
+        assertThat("old owner loses it", node1.renew("feed", "node-1", "http://feed/2", TTL), is(false));
+    }
+
+    @Test
+    public void acquire_returnsPosition_ofLastRenewal_afterOwnerDies() throws Exception {
+        node1.acquire("feed", "node-1", TTL);
+        assertThat(node1.renew("feed", "node-1", "http://feed/2", TTL), is(true));
+
+        now.addAndGet(TTL);
+        Lease lease = node2.acquire("feed", "node-2", TTL);
+
+        assertThat(lease.getOwner(), equalTo("node-2"));
+        assertThat(lease.getPosition(), equalTo("http://feed/2"));
+    }
+
+    @Test
+    public void release_freesLease_andKeepsPosition() throws Exception {
+        node1.acquire("feed", "node-1", TTL);
+        node1.release("feed", "node-1", "http://feed/3");
+
+        Lease lease = node2.acquire("feed", "node-2", TTL);
+
+        assertThat("taken before expiry", lease, is(notNullValue()));
+        assertThat(lease.getPosition(), equalTo("http://feed/3"));
+    }
+
+    @Test
+    public void release_ignoresNode_thatDoesNotHoldLease() throws Exception {
+        node1.acquire("feed", "node-1", TTL);
+        node2.release("feed", "node-2", "http://feed/9");
+
+        assertThat(node1.read("feed").getOwner(), equalTo("node-1"));
+        assertThat(node1.read("feed").getPosition(), is(nullValue()));
+    }
+
+    @Test
+    public void acquire_handlesKeys_thatAreNotFileNames() throws Exception {
+        String key = "feeds/../a b?c";
+
+        node1.acquire(key, "node-1", TTL);
+        node1.renew(key, "node-1", "http://feed/1", TTL);
+
+        assertThat(node2.read(key).getPosition(), equalTo("http://feed/1"));
+    }
+}
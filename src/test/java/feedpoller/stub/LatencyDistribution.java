@@ -0,0 +1,29 @@
+package feedpoller.stub;
+
+import java.util.Random;
+
+/**
+ * Delay in milliseconds before a synthetic response is sent.
+ */
+public interface LatencyDistribution {
+    long nextDelay(Random random);
+
+    static LatencyDistribution none() {
+        return random -> 0;
+    }
+
+    static LatencyDistribution fixed(long delayInMilliseconds) {
+        return random -> delayInMilliseconds;
+    }
+
+    static LatencyDistribution uniform(long minInMilliseconds, long maxInMilliseconds) {
+        return random -> minInMilliseconds + (long) (random.nextDouble() * (maxInMilliseconds - minInMilliseconds));
+    }
+
+    /**
+     * Mostly fast with a long tail, like most upstreams.
+     */
+    static LatencyDistribution exponential(long meanInMilliseconds) {
+        return random -> (long) (-meanInMilliseconds * Math.log(1 - random.nextDouble()));
+    }
+}
@@ -0,0 +1,41 @@
+package feedpoller.stub;
+
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * Jetty with room for many concurrent pollers. Port 0 picks a free port.
+ */
+public class LoadServer {
+    private final Server server;
+    private final ServerConnector connector;
+
+    public LoadServer(Handler handler, int port, int maxThreads) {
+        server = new Server(new QueuedThreadPool(maxThreads));
+
+        connector = new ServerConnector(server);
+        connector.setPort(port);
+        connector.setAcceptQueueSize(1024);
+        server.addConnector(connector);
+
+        server.setHandler(handler);
+    }
+
+    public void start() throws Exception {
+        server.start();
+    }
+
+    public void stop() throws Exception {
+        server.stop();
+    }
+
+    public int getPort() {
+        return connector.getLocalPort();
+    }
+
+    public String getBaseUri() {
+        return "http://localhost:" + getPort();
+    }
+}
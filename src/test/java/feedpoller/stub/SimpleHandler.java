@@ -15,8 +15,11 @@ import java.util.Map;
 public class SimpleHandler extends AbstractHandler {
     private final Map<String, ResponseClass> handlerMap = new HashMap<>();
 
+    private final Map<String, String> etagMap = new HashMap<>();
+
     private final List<String> requestedURLs = new ArrayList<>();
 
+    private volatile long responseDelayInMilliseconds;
 
     /**
      * Tells this handler to serve the specified <param>responseAsString</file> when
@@ -30,6 +33,26 @@ public class SimpleHandler extends AbstractHandler {
         handlerMap.put(requestURL, new ResponseClass(responseAsString, responseCode));
     }
 
+    /**
+     * Sends <param>etag</param> with the response for <param>requestURL</param> and answers
+     * a matching If-None-Match with 304 Not Modified.
+     *
+     * @param requestURL
+     * @param etag
+     */
+    public void mapRequestToETag(final String requestURL, final String etag) {
+        etagMap.put(requestURL, etag);
+    }
+
+    /**
+     * Delays every response to simulate a slow upstream.
+     *
+     * @param responseDelayInMilliseconds
+     */
+    public void setResponseDelay(final long responseDelayInMilliseconds) {
+        this.responseDelayInMilliseconds = responseDelayInMilliseconds;
+    }
+
     public void handle(@SuppressWarnings("unused") final String target, final HttpServletRequest httpServletRequest,
                        final HttpServletResponse httpServletResponse, final String responseBody) throws IOException,
             ServletException {
@@ -51,19 +74,46 @@ public class SimpleHandler extends AbstractHandler {
             requestURL = requestURL + "?" + queryString;
         }
 
+        synchronized (requestedURLs) {
+            requestedURLs.add(requestURL);
+        }
+
+        final String etag = etagMap.get(requestURL);
+        if (etag != null) {
+            httpServletResponse.setHeader("ETag", etag);
+
+            if (etag.equals(httpServletRequest.getHeader("If-None-Match"))) {
+                httpServletResponse.setStatus(304);
+                ((Request) httpServletRequest).setHandled(true);
+                return;
+            }
+        }
+
         final ResponseClass responseClass = handlerMap.get(requestURL);
         String responseAsString = responseClass.responseAsString;
         httpServletResponse.setStatus(responseClass.responseCode);
 
+        if (responseDelayInMilliseconds > 0) {
+            try {
+                Thread.sleep(responseDelayInMilliseconds);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
         handle(target, httpServletRequest, httpServletResponse, responseAsString);
     }
 
     public void clearHistory() {
-        requestedURLs.clear();
+        synchronized (requestedURLs) {
+            requestedURLs.clear();
+        }
     }
 
     public List<String> getHistory() {
-        return requestedURLs;
+        synchronized (requestedURLs) {
+            return new ArrayList<>(requestedURLs);
+        }
     }
 
     class ResponseClass {
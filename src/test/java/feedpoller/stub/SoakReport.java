@@ -0,0 +1,70 @@
+package feedpoller.stub;
+
+import feedpoller.domain.PollingResult;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@AllArgsConstructor
+@Getter
+public class SoakReport {
+    private List<Sample> samples;
+    private long polls;
+    private long errors;
+    private List<PollingResult> results;
+
+    /**
+     * @return Polls per second averaged over every sample but the first, which includes start up
+     */
+    public double getSustainedPollsPerSecond() {
+        double sum = 0;
+        int counted = 0;
+        for (int i = samples.size() > 1 ? 1 : 0; i < samples.size(); i++) {
+            sum += samples.get(i).getPollsPerSecond();
+            counted++;
+        }
+        return counted == 0 ? 0 : sum / counted;
+    }
+
+    public long getPeakHeapBytes() {
+        long peak = 0;
+        for (Sample sample : samples) {
+            peak = Math.max(peak, sample.getHeapBytes());
+        }
+        return peak;
+    }
+
+    public int getPeakThreads() {
+        int peak = 0;
+        for (Sample sample : samples) {
+            peak = Math.max(peak, sample.getThreads());
+        }
+        return peak;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d polls, %d errors, %.1f polls/s sustained, peak heap %d MB, peak threads +%d",
+                polls, errors, getSustainedPollsPerSecond(), getPeakHeapBytes() >> 20, getPeakThreads());
+    }
+
+    @AllArgsConstructor
+    @Getter
+    public static class Sample {
+        private long elapsedMilliseconds;
+        private double pollsPerSecond;
+        private long heapBytes;
+        /**
+         * Threads started since the soak began
+         */
+        private int threads;
+        private long schedulingLagP99;
+
+        @Override
+        public String toString() {
+            return String.format("%6d ms: %8.1f polls/s, heap %4d MB, threads +%d, lag p99 %d ms",
+                    elapsedMilliseconds, pollsPerSecond, heapBytes >> 20, threads, schedulingLagP99);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package feedpoller.stub;
+
+import feedpoller.FeedPoller;
+import feedpoller.domain.PollingResult;
+import feedpoller.metrics.EndpointMetrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a poller for a while and samples its throughput, heap and threads at a fixed interval.
+ */
+public class SoakRunner {
+    private final FeedPoller feedPoller;
+    private final long durationInMilliseconds;
+    private final long sampleIntervalInMilliseconds;
+
+    public SoakRunner(FeedPoller feedPoller, long durationInMilliseconds, long sampleIntervalInMilliseconds) {
+        this.feedPoller = feedPoller;
+        this.durationInMilliseconds = durationInMilliseconds;
+        this.sampleIntervalInMilliseconds = sampleIntervalInMilliseconds;
+    }
+
+    public SoakReport run() throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Runtime runtime = Runtime.getRuntime();
+        EndpointMetrics metrics = feedPoller.getMetrics().getAggregate();
+
+        List<SoakReport.Sample> samples = new ArrayList<>();
+        int baselineThreads = threads.getThreadCount();
+
+        feedPoller.start();
+        long start = System.nanoTime();
+        long lastPolls = 0;
+        long lastTime = start;
+
+        while (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(durationInMilliseconds)) {
+            TimeUnit.MILLISECONDS.sleep(sampleIntervalInMilliseconds);
+
+            long now = System.nanoTime();
+            long polls = metrics.getPolls();
+            SoakReport.Sample sample = new SoakReport.Sample(
+                    TimeUnit.NANOSECONDS.toMillis(now - start),
+                    (polls - lastPolls) / ((now - lastTime) / 1e9),
+                    runtime.totalMemory() - runtime.freeMemory(),
+                    threads.getThreadCount() - baselineThreads,
+                    metrics.getSchedulingLagP99());
+            samples.add(sample);
+            System.out.println("soak " + sample);
+
+            lastPolls = polls;
+            lastTime = now;
+        }
+
+        List<PollingResult> results = feedPoller.shutdown();
+        return new SoakReport(samples, metrics.getPolls(), metrics.getErrors(), results);
+    }
+}
@@ -0,0 +1,247 @@
+package feedpoller.stub;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves {@code feedCount} generated feeds of {@code pagesPerFeed} pages each at {@code /feeds/<feed>/<page>}.
+ * A page starts with the uri of the next page on its own line and is padded to {@code pageSize} bytes. Pages past the last one are empty.
+ * <p>
+ * Delayed responses are completed asynchronously, so thousands of slow feeds do not need thousands of server threads.
+ */
+public class SyntheticFeedHandler extends AbstractHandler {
+    public static final String PATH = "/feeds/";
+
+    public enum ETagMode {
+        /**
+         * No ETag is sent.
+         */
+        NONE,
+        /**
+         * Every page keeps its ETag, and a matching If-None-Match is answered with 304.
+         */
+        STABLE,
+        /**
+         * Every response gets a new ETag, so conditional requests never match.
+         */
+        ROTATING
+    }
+
+    private final int feedCount;
+    private final int pagesPerFeed;
+
+    private volatile byte[] padding = new byte[0];
+    private volatile LatencyDistribution latency = LatencyDistribution.none();
+    private volatile double errorRate;
+    private volatile double emptyPageRate;
+    private volatile ETagMode eTagMode = ETagMode.NONE;
+
+    private final ScheduledExecutorService delays = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "synthetic-feed-delays");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong emptyPages = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    public SyntheticFeedHandler(int feedCount, int pagesPerFeed) {
+        this.feedCount = feedCount;
+        this.pagesPerFeed = pagesPerFeed;
+    }
+
+    public SyntheticFeedHandler withPageSize(int pageSize) {
+        byte[] filler = new byte[pageSize];
+        Arrays.fill(filler, (byte) 'x');
+        this.padding = filler;
+        return this;
+    }
+
+    public SyntheticFeedHandler withLatency(LatencyDistribution latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * @param errorRate Share of requests answered with 500
+     */
+    public SyntheticFeedHandler withErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * @param emptyPageRate Share of pages that are empty although the feed goes on, as if nothing new was published yet
+     */
+    public SyntheticFeedHandler withEmptyPageRate(double emptyPageRate) {
+        this.emptyPageRate = emptyPageRate;
+        return this;
+    }
+
+    public SyntheticFeedHandler withETagMode(ETagMode eTagMode) {
+        this.eTagMode = eTagMode;
+        return this;
+    }
+
+    /**
+     * @param baseUri E.g. {@code http://localhost:8080}
+     * @return First page of every feed
+     */
+    public List<String> startUris(String baseUri) {
+        List<String> uris = new ArrayList<>(feedCount);
+        for (int feed = 0; feed < feedCount; feed++) {
+            uris.add(baseUri + PATH + feed + "/1");
+        }
+        return uris;
+    }
+
+    @Override
+    public void handle(final String target, final Request baseRequest, final HttpServletRequest request, final HttpServletResponse response)
+            throws IOException {
+        baseRequest.setHandled(true);
+        requests.incrementAndGet();
+
+        int[] feedAndPage = parse(target);
+        if (feedAndPage == null) {
+            response.setStatus(404);
+            return;
+        }
+
+        final Random random = ThreadLocalRandom.current();
+        final long delay = latency.nextDelay(random);
+        final Reply reply = reply(request, feedAndPage[0], feedAndPage[1], random);
+
+        if (delay <= 0) {
+            reply.send(response);
+            return;
+        }
+
+        final AsyncContext async = baseRequest.startAsync();
+        async.setTimeout(0);
+        delays.schedule(() -> {
+            try {
+                reply.send((HttpServletResponse) async.getResponse());
+            } catch (IOException e) {
+                // the poller gave up on the request
+            } finally {
+                async.complete();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private int[] parse(String target) {
+        if (!target.startsWith(PATH)) {
+            return null;
+        }
+
+        String[] parts = target.substring(PATH.length()).split("/");
+        try {
+            int feed = Integer.parseInt(parts[0]);
+            int page = Integer.parseInt(parts[1]);
+            return feed >= 0 && feed < feedCount && page > 0 ? new int[]{feed, page} : null;
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private Reply reply(HttpServletRequest request, int feed, int page, Random random) {
+        if (random.nextDouble() < errorRate) {
+            errors.incrementAndGet();
+            return new Reply(500, null, null, false);
+        }
+
+        boolean empty = page > pagesPerFeed || random.nextDouble() < emptyPageRate;
+
+        String eTag = null;
+        if (eTagMode == ETagMode.STABLE) {
+            eTag = "\"" + feed + "-" + page + (empty ? "-empty" : "") + "\"";
+            if (eTag.equals(request.getHeader("If-None-Match"))) {
+                notModified.incrementAndGet();
+                return new Reply(304, eTag, null, false);
+            }
+        } else if (eTagMode == ETagMode.ROTATING) {
+            eTag = "\"" + Long.toHexString(random.nextLong()) + "\"";
+        }
+
+        if (empty) {
+            emptyPages.incrementAndGet();
+            return new Reply(200, eTag, new byte[0], false);
+        }
+
+        String base = request.getScheme() + "://" + request.getServerName() + ":" + request.getServerPort();
+        String next = base + PATH + feed + "/" + (page + 1) + "\n";
+        return new Reply(200, eTag, next.getBytes(StandardCharsets.UTF_8), true);
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getEmptyPages() {
+        return emptyPages.get();
+    }
+
+    public long getNotModified() {
+        return notModified.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    private class Reply {
+        private final int status;
+        private final String eTag;
+        private final byte[] head;
+        private final boolean padded;
+
+        Reply(int status, String eTag, byte[] head, boolean padded) {
+            this.status = status;
+            this.eTag = eTag;
+            this.head = head;
+            this.padded = padded;
+        }
+
+        void send(HttpServletResponse response) throws IOException {
+            response.setStatus(status);
+            if (eTag != null) {
+                response.setHeader("ETag", eTag);
+            }
+            if (head == null) {
+                return;
+            }
+
+            byte[] filler = padded ? padding : new byte[0];
+            response.setContentType("text/plain");
+            response.setContentLength(head.length + filler.length);
+
+            OutputStream out = response.getOutputStream();
+            out.write(head);
+            out.write(filler);
+            bytes.addAndGet(head.length + filler.length);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package feedpoller.trigger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TriggerListenerTest {
+    private final List<String> triggered = new CopyOnWriteArrayList<>();
+
+    private TriggerListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        listener = new TriggerListener(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), key -> {
+            if (key.equals("unknown")) {
+                throw new IllegalArgumentException("Unknown key");
+            }
+            triggered.add(key);
+        });
+        listener.start();
+    }
+
+    @After
+    public void tearDown() {
+        listener.stop();
+    }
+
+    @Test
+    public void post_triggersEndpoint_byKey() throws Exception {
+        assertThat("status", request("POST", "foo"), equalTo(202));
+        assertThat("triggered", triggered, equalTo(singletonList("foo")));
+    }
+
+    @Test
+    public void post_isNotFound_ifKeyIsUnknown() throws Exception {
+        assertThat("status", request("POST", "unknown"), equalTo(404));
+    }
+
+    @Test
+    public void get_isNotAllowed() throws Exception {
+        assertThat("status", request("GET", "foo"), equalTo(405));
+        assertThat("nothing triggered", triggered.isEmpty(), equalTo(true));
+    }
+
+    private int request(String method, String key) throws Exception {
+        InetSocketAddress address = listener.getAddress();
+        URL url = new URL("http", address.getHostString(), address.getPort(), TriggerListener.PATH + key);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setRequestMethod(method);
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}